@@ -0,0 +1,23 @@
+package com.example.emailapp.reactive;
+
+import com.example.emailapp.security.JwtConfig;
+import com.example.emailapp.security.JwtTokenProvider;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * The {@code /api/auth} and {@code /api/emails} contract served by WebFlux and R2DBC against the
+ * database of the servlet application. Only this package is scanned; the key ring and token
+ * provider are taken over from the servlet application unchanged, so tokens work on both.
+ */
+@SpringBootApplication
+@EnableScheduling
+@Import({JwtConfig.class, JwtTokenProvider.class})
+public class ReactiveEmailApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(ReactiveEmailApplication.class, args);
+    }
+}
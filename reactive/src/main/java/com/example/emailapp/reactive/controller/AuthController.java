@@ -0,0 +1,155 @@
+package com.example.emailapp.reactive.controller;
+
+import com.example.emailapp.dto.ApiResponse;
+import com.example.emailapp.dto.JwtAuthResponse;
+import com.example.emailapp.dto.LoginRequest;
+import com.example.emailapp.dto.RefreshTokenRequest;
+import com.example.emailapp.dto.RegisterRequest;
+import com.example.emailapp.exception.BadRequestException;
+import com.example.emailapp.exception.ConflictException;
+import com.example.emailapp.exception.UnauthorizedException;
+import com.example.emailapp.reactive.model.User;
+import com.example.emailapp.reactive.repository.UserRepository;
+import com.example.emailapp.reactive.security.RefreshTokenService;
+import com.example.emailapp.reactive.security.SecurityConfig;
+import com.example.emailapp.reactive.security.TokenRevocationService;
+import com.example.emailapp.security.JwtTokenProvider;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+@RestController
+@RequestMapping("/api/auth")
+public class AuthController {
+
+    private final ReactiveAuthenticationManager authenticationManager;
+    private final UserRepository userRepository;
+    private final PasswordEncoder passwordEncoder;
+    private final Scheduler passwordHashingScheduler;
+    private final JwtTokenProvider tokenProvider;
+    private final TokenRevocationService revocationService;
+    private final RefreshTokenService refreshTokenService;
+
+    public AuthController(ReactiveAuthenticationManager authenticationManager,
+                          UserRepository userRepository,
+                          PasswordEncoder passwordEncoder,
+                          @Qualifier(SecurityConfig.PASSWORD_HASHING) Scheduler passwordHashingScheduler,
+                          JwtTokenProvider tokenProvider,
+                          TokenRevocationService revocationService,
+                          RefreshTokenService refreshTokenService) {
+        this.authenticationManager = authenticationManager;
+        this.userRepository = userRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.passwordHashingScheduler = passwordHashingScheduler;
+        this.tokenProvider = tokenProvider;
+        this.revocationService = revocationService;
+        this.refreshTokenService = refreshTokenService;
+    }
+
+    // The password is checked on the password-hashing scheduler, not on the event loop
+    @PostMapping("/login")
+    public Mono<ResponseEntity<JwtAuthResponse>> authenticateUser(@Valid @RequestBody LoginRequest loginRequest) {
+        return authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(
+                        loginRequest.getUsername(),
+                        loginRequest.getPassword()))
+                .flatMap(authentication -> {
+                    User user = (User) authentication.getPrincipal();
+                    String token = tokenProvider.generateToken(authentication);
+                    return refreshTokenService.issue(user)
+                            .map(refreshToken -> ResponseEntity.ok(toResponse(token, refreshToken, user)));
+                });
+    }
+
+    // Exchanges a refresh token for a new access token; no password check, so no BCrypt cost
+    @PostMapping("/refresh")
+    public Mono<ResponseEntity<JwtAuthResponse>> refreshToken(@Valid @RequestBody RefreshTokenRequest refreshRequest) {
+        return refreshTokenService.rotate(refreshRequest.getRefreshToken())
+                .map(rotation -> ResponseEntity.ok(toResponse(
+                        tokenProvider.generateToken(rotation.user().getUsername()),
+                        rotation.refreshToken(),
+                        rotation.user())));
+    }
+
+    // One insert; the unique constraints on users reject a taken username or email, even under a race
+    @PostMapping("/register")
+    public Mono<ResponseEntity<ApiResponse>> registerUser(@Valid @RequestBody RegisterRequest registerRequest) {
+        Mono<String> encodedPassword = Mono.fromCallable(() -> passwordEncoder.encode(registerRequest.getPassword()))
+                .subscribeOn(passwordHashingScheduler);
+
+        // Create new user's account
+        return encodedPassword
+                .flatMap(password -> userRepository.save(User.builder()
+                        .name(registerRequest.getName())
+                        .username(registerRequest.getUsername())
+                        .email(registerRequest.getEmail())
+                        .password(password)
+                        .build()))
+                .onErrorMap(DataIntegrityViolationException.class, ConflictException::forUserInsert)
+                .thenReturn(new ResponseEntity<>(new ApiResponse(true, "User registered successfully"), HttpStatus.CREATED));
+    }
+
+    @PostMapping("/logout")
+    public Mono<ResponseEntity<ApiResponse>> logout(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @RequestBody(required = false) RefreshTokenRequest refreshRequest) {
+        if (!StringUtils.hasText(authorization) || !authorization.startsWith("Bearer ")) {
+            return Mono.error(new BadRequestException("A bearer token is required to log out"));
+        }
+
+        Claims claims;
+        try {
+            claims = tokenProvider.parseToken(authorization.substring(7));
+        } catch (ExpiredJwtException e) {
+            // An expired access token is refused anyway, so only the refresh token is left to revoke
+            claims = null;
+        } catch (JwtException | IllegalArgumentException e) {
+            return Mono.error(new UnauthorizedException("Invalid access token"));
+        }
+
+        Mono<Void> revocation = Mono.empty();
+        if (claims != null && claims.getId() == null) {
+            // Tokens issued before token ids existed can only be revoked per user
+            revocation = revocationService.revokeAllForUser(claims.getSubject());
+        } else if (claims != null) {
+            revocation = revocationService.revokeToken(claims.getId(), claims.getExpiration());
+        }
+
+        if (refreshRequest != null && StringUtils.hasText(refreshRequest.getRefreshToken())) {
+            revocation = revocation.then(refreshTokenService.revoke(refreshRequest.getRefreshToken()));
+        }
+
+        return revocation.thenReturn(ResponseEntity.ok(new ApiResponse(true, "Logged out successfully")));
+    }
+
+    @GetMapping("/current-user")
+    public Mono<ResponseEntity<User>> getCurrentUser(@AuthenticationPrincipal User user) {
+        // Don't return the password
+        user.setPassword(null);
+        return Mono.just(ResponseEntity.ok(user));
+    }
+
+    private static JwtAuthResponse toResponse(String token, String refreshToken, User user) {
+        return new JwtAuthResponse(
+                token,
+                refreshToken,
+                user.getId(),
+                user.getUsername(),
+                user.getEmail(),
+                user.getName()
+        );
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.emailapp.reactive.controller;
+
+import com.example.emailapp.dto.ApiResponse;
+import com.example.emailapp.dto.EmailRequest;
+import com.example.emailapp.dto.EmailResponse;
+import com.example.emailapp.exception.ResourceNotFoundException;
+import com.example.emailapp.reactive.model.Email;
+import com.example.emailapp.reactive.model.User;
+import com.example.emailapp.reactive.repository.EmailRepository;
+import com.example.emailapp.reactive.service.EmailService;
+import com.example.emailapp.reactive.service.MailboxPlacementService;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+@RestController
+@RequestMapping("/api/emails")
+public class EmailController {
+
+    private final EmailRepository emailRepository;
+    private final EmailService emailService;
+    private final MailboxPlacementService placementService;
+
+    public EmailController(EmailRepository emailRepository, EmailService emailService,
+                           MailboxPlacementService placementService) {
+        this.emailRepository = emailRepository;
+        this.emailService = emailService;
+        this.placementService = placementService;
+    }
+
+    // Rows are encoded as they arrive from the database
+    @GetMapping
+    public Flux<EmailResponse> getUserEmails(
+            @RequestParam(value = "status", defaultValue = "inbox") String status,
+            @AuthenticationPrincipal User user) {
+        Flux<Email> emails = status.equals("starred")
+                ? emailRepository.findByUserIdAndStarredTrueOrderById(user.getId())
+                : emailRepository.findByUserIdAndStatusOrderById(user.getId(), status);
+        return placementService.requireOnMain(user.getId()).thenMany(emails.map(this::mapToEmailResponse));
+    }
+
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<EmailResponse>> getEmailById(@PathVariable Long id, @AuthenticationPrincipal User user) {
+        return findOwned(id, user, Mono::just);
+    }
+
+    @PostMapping
+    public Mono<ResponseEntity<EmailResponse>> createEmail(
+            @Valid @RequestBody EmailRequest emailRequest,
+            @AuthenticationPrincipal User user) {
+        return placementService.requireOnMain(user.getId())
+                .then(emailService.send(user, emailRequest))
+                .map(savedEmail -> new ResponseEntity<>(mapToEmailResponse(savedEmail), HttpStatus.CREATED));
+    }
+
+    @PutMapping("/{id}/status")
+    public Mono<ResponseEntity<EmailResponse>> updateEmailStatus(
+            @PathVariable Long id,
+            @RequestParam String status,
+            @AuthenticationPrincipal User user) {
+        return updateOwned(id, user, email -> {
+            if (status.equals("trash") && !"trash".equals(email.getStatus())) {
+                email.setTrashedAt(LocalDateTime.now());
+            } else if (!status.equals("trash")) {
+                email.setTrashedAt(null);
+            }
+            email.setStatus(status);
+        });
+    }
+
+    @PutMapping("/{id}/read")
+    public Mono<ResponseEntity<EmailResponse>> markEmailAsRead(
+            @PathVariable Long id,
+            @RequestParam boolean read,
+            @AuthenticationPrincipal User user) {
+        return updateOwned(id, user, email -> email.setRead(read));
+    }
+
+    @PutMapping("/{id}/star")
+    public Mono<ResponseEntity<EmailResponse>> starEmail(
+            @PathVariable Long id,
+            @RequestParam boolean starred,
+            @AuthenticationPrincipal User user) {
+        return updateOwned(id, user, email -> email.setStarred(starred));
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<ApiResponse>> deleteEmail(@PathVariable Long id, @AuthenticationPrincipal User user) {
+        return placementService.requireOnMain(user.getId())
+                .then(emailRepository.findById(id))
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("Email", "id", id)))
+                .flatMap(email -> {
+                    // Check if the email belongs to the authenticated user
+                    if (!email.getUserId().equals(user.getId())) {
+                        return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).<ApiResponse>build());
+                    }
+                    return emailService.delete(email)
+                            .thenReturn(ResponseEntity.ok(new ApiResponse(true, "Email deleted successfully")));
+                });
+    }
+
+    private Mono<ResponseEntity<EmailResponse>> updateOwned(Long id, User user, Consumer<Email> update) {
+        return findOwned(id, user, email -> {
+            update.accept(email);
+            return emailRepository.save(email);
+        });
+    }
+
+    // Answers 404 for a missing email and 403 for someone else's, like the servlet controller
+    private Mono<ResponseEntity<EmailResponse>> findOwned(Long id, User user,
+                                                          Function<Email, Mono<Email>> action) {
+        return placementService.requireOnMain(user.getId())
+                .then(emailRepository.findById(id))
+                .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("Email", "id", id)))
+                .flatMap(email -> {
+                    // Check if the email belongs to the authenticated user
+                    if (!email.getUserId().equals(user.getId())) {
+                        return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).<EmailResponse>build());
+                    }
+                    return action.apply(email).map(result -> ResponseEntity.ok(mapToEmailResponse(result)));
+                });
+    }
+
+    private EmailResponse mapToEmailResponse(Email email) {
+        return EmailResponse.builder()
+                .id(email.getId())
+                .userId(email.getUserId())
+                .fromEmail(email.getFromEmail())
+                .fromName(email.getFromName())
+                .toEmail(email.getToEmail())
+                .subject(email.getSubject())
+                .body(email.getBody())
+                .status(email.getStatus())
+                .read(email.isRead())
+                .starred(email.isStarred())
+                .createdAt(email.getCreatedAt())
+                .deliveryStatus(email.getDeliveryStatus())
+                .build();
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.emailapp.reactive.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * Row of {@code emails}, mirroring {@link com.example.emailapp.model.Email}; the owner is held as
+ * an id since R2DBC does not load associations.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("emails")
+public class Email {
+
+    @Id
+    private Long id;
+
+    private Long userId;
+
+    private String fromEmail;
+
+    private String fromName;
+
+    private String toEmail;
+
+    private String subject;
+
+    private String body;
+
+    private String status;  // "inbox", "sent", "archived", "trash", "starred"
+
+    private boolean read;
+
+    private boolean starred;
+
+    private LocalDateTime createdAt;
+
+    // Set when the email is moved to trash; drives the retention purge
+    private LocalDateTime trashedAt;
+
+    // "queued", "deferred", "delivered" or "failed" for outbound mail; null otherwise
+    private String deliveryStatus;
+}
@@ -0,0 +1,20 @@
+package com.example.emailapp.reactive.repository;
+
+import com.example.emailapp.reactive.model.Email;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface EmailRepository extends R2dbcRepository<Email, Long> {
+
+    // Same order as the servlet listing, so both return a mailbox identically
+    Flux<Email> findByUserIdAndStatusOrderById(Long userId, String status);
+
+    Flux<Email> findByUserIdAndStarredTrueOrderById(Long userId);
+
+    @Query("SELECT EXISTS (SELECT 1 FROM attachments WHERE email_id = :emailId)")
+    Mono<Boolean> hasAttachments(Long emailId);
+}
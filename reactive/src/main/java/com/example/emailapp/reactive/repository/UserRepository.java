@@ -0,0 +1,12 @@
+package com.example.emailapp.reactive.repository;
+
+import com.example.emailapp.reactive.model.User;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface UserRepository extends R2dbcRepository<User, Long> {
+
+    Mono<User> findByUsername(String username);
+}
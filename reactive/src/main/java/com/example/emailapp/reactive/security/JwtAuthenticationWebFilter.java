@@ -0,0 +1,80 @@
+package com.example.emailapp.reactive.security;
+
+import com.example.emailapp.reactive.repository.UserRepository;
+import com.example.emailapp.security.JwtTokenProvider;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive counterpart of {@link com.example.emailapp.security.JwtAuthenticationFilter}. Token
+ * parsing and the revocation check are the same in-memory work as on the servlet side; only the
+ * user lookup goes to the database, without holding a thread while it waits.
+ * <p>
+ * Not a bean: WebFlux would otherwise also apply it to every request outside the security chain.
+ */
+public class JwtAuthenticationWebFilter implements WebFilter {
+
+    private final JwtTokenProvider tokenProvider;
+    private final UserRepository userRepository;
+    private final TokenRevocationService revocationService;
+
+    public JwtAuthenticationWebFilter(JwtTokenProvider tokenProvider,
+                                      UserRepository userRepository,
+                                      TokenRevocationService revocationService) {
+        this.tokenProvider = tokenProvider;
+        this.userRepository = userRepository;
+        this.revocationService = revocationService;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String token = getJwtFromRequest(exchange.getRequest());
+        if (!StringUtils.hasText(token)) {
+            return chain.filter(exchange);
+        }
+
+        // Rejected tokens go on unauthenticated like in the servlet filter: /api/auth still works with
+        // an expired token, and every other endpoint answers 401 through the entry point
+        Claims claims;
+        try {
+            claims = tokenProvider.parseToken(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            return chain.filter(exchange);
+        }
+
+        // Revoked tokens are treated like missing ones
+        if (revocationService.isRevoked(claims.getId(), claims.getSubject(), claims.getIssuedAt())) {
+            return chain.filter(exchange);
+        }
+
+        return userRepository.findByUsername(claims.getSubject())
+                .map(user -> (Authentication) new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()))
+                .flatMap(authentication -> chain.filter(exchange)
+                        .contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication))
+                        .thenReturn(true))
+                // A deleted user is treated like a missing token
+                .switchIfEmpty(Mono.defer(() -> chain.filter(exchange).thenReturn(true)))
+                .then();
+    }
+
+    // Bearer <access_token>
+    private String getJwtFromRequest(ServerHttpRequest request) {
+        String bearerToken = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+
+        if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
+            return bearerToken.substring(7);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.emailapp.reactive.security;
+
+import com.example.emailapp.exception.UnauthorizedException;
+import com.example.emailapp.reactive.model.User;
+import com.example.emailapp.reactive.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Reactive counterpart of {@link com.example.emailapp.security.RefreshTokenService}, on the same
+ * {@code refresh_tokens} table: a refresh token issued by either application can be rotated by
+ * the other, and reuse is detected across both.
+ */
+@Service
+public class RefreshTokenService {
+
+    public record Rotation(User user, String refreshToken) {
+    }
+
+    private record Stored(long id, long userId, String familyId, OffsetDateTime expiresAt) {
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private final DatabaseClient databaseClient;
+    private final UserRepository userRepository;
+    private final TokenRevocationService revocationService;
+    private final TransactionalOperator transactionalOperator;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    @Value("${app.jwt.refresh-expiration-milliseconds}")
+    private long refreshExpirationInMs;
+
+    public RefreshTokenService(DatabaseClient databaseClient,
+                               UserRepository userRepository,
+                               TokenRevocationService revocationService,
+                               TransactionalOperator transactionalOperator) {
+        this.databaseClient = databaseClient;
+        this.userRepository = userRepository;
+        this.revocationService = revocationService;
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    public Mono<String> issue(User user) {
+        return issue(user.getId(), UUID.randomUUID().toString());
+    }
+
+    /**
+     * Exchanges a refresh token for a new one in the same family; fails with
+     * {@link UnauthorizedException} if the token is unknown, expired, revoked or already used.
+     */
+    public Mono<Rotation> rotate(String refreshToken) {
+        String tokenHash = hash(refreshToken);
+        return find(tokenHash)
+                .switchIfEmpty(Mono.error(() -> new UnauthorizedException("Invalid refresh token")))
+                .filter(stored -> stored.expiresAt().toInstant().isAfter(Instant.now()))
+                .switchIfEmpty(Mono.error(() -> new UnauthorizedException("Refresh token is expired")))
+                // Nothing is issued when the token was used before; that is handled outside the transaction
+                .flatMap(stored -> markUsed(stored.id())
+                        .flatMap(marked -> marked
+                                ? issue(stored.userId(), stored.familyId()).map(Optional::of)
+                                : Mono.just(Optional.<String>empty()))
+                        .zipWith(userRepository.findById(stored.userId())))
+                .as(transactionalOperator::transactional)
+                .flatMap(issued -> {
+                    User user = issued.getT2();
+                    if (issued.getT1().isEmpty()) {
+                        return handleReuse(tokenHash, user)
+                                .then(Mono.<Rotation>error(new UnauthorizedException("Refresh token has already been used")));
+                    }
+                    return Mono.just(new Rotation(user, issued.getT1().get()));
+                });
+    }
+
+    public Mono<Void> revoke(String refreshToken) {
+        return find(hash(refreshToken))
+                .flatMap(stored -> revokeFamily(stored.familyId()))
+                .then();
+    }
+
+    private Mono<Void> handleReuse(String tokenHash, User user) {
+        return find(tokenHash)
+                .flatMap(stored -> revokeFamily(stored.familyId()))
+                .then(revocationService.revokeAllForUser(user.getUsername()))
+                .doOnSuccess(ignored ->
+                        logger.warn("Refresh token reuse detected for user {}; token family revoked", user.getUsername()));
+    }
+
+    private Mono<Stored> find(String tokenHash) {
+        return databaseClient.sql("SELECT id, user_id, family_id, expires_at FROM refresh_tokens WHERE token_hash = :tokenHash")
+                .bind("tokenHash", tokenHash)
+                .map(row -> new Stored(
+                        row.get("id", Long.class),
+                        row.get("user_id", Long.class),
+                        row.get("family_id", String.class),
+                        row.get("expires_at", OffsetDateTime.class)))
+                .one();
+    }
+
+    private Mono<Boolean> markUsed(long id) {
+        return databaseClient.sql("UPDATE refresh_tokens SET used_at = now() WHERE id = :id AND used_at IS NULL AND revoked_at IS NULL")
+                .bind("id", id)
+                .fetch()
+                .rowsUpdated()
+                .map(updated -> updated > 0);
+    }
+
+    private Mono<Long> revokeFamily(String familyId) {
+        return databaseClient.sql("UPDATE refresh_tokens SET revoked_at = now() WHERE family_id = :familyId AND revoked_at IS NULL")
+                .bind("familyId", familyId)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private Mono<String> issue(long userId, String familyId) {
+        byte[] secret = new byte[32];
+        secureRandom.nextBytes(secret);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+
+        return databaseClient.sql("INSERT INTO refresh_tokens (user_id, token_hash, family_id, expires_at, created_at) "
+                        + "VALUES (:userId, :tokenHash, :familyId, :expiresAt, now())")
+                .bind("userId", userId)
+                .bind("tokenHash", hash(token))
+                .bind("familyId", familyId)
+                .bind("expiresAt", OffsetDateTime.now(ZoneOffset.UTC).plus(Duration.ofMillis(refreshExpirationInMs)))
+                .then()
+                .thenReturn(token);
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.emailapp.reactive.security;
+
+import com.example.emailapp.security.TokenDenylist;
+import com.example.emailapp.util.SequenceCursor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.spi.Readable;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+/**
+ * Reactive counterpart of {@link com.example.emailapp.security.TokenRevocationService}: the same
+ * {@link TokenDenylist} in front of the same {@code token_revocations} table, so a logout on a
+ * servlet node is honoured here within one poll interval and the other way round. Deleting
+ * expired rows is left to the servlet nodes.
+ */
+@Service
+public class TokenRevocationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    private static final int POLL_BATCH_SIZE = 500;
+
+    private static final String COLUMNS = "id, token_id, username, revoked_before, expires_at";
+
+    private record Revocation(long id, String tokenId, String username, Instant revokedBefore, Instant expiresAt) {
+    }
+
+    private final DatabaseClient databaseClient;
+    private final TokenDenylist denylist;
+
+    @Value("${app.jwt.expiration-milliseconds}")
+    private long jwtExpirationInMs;
+
+    @Value("${app.jwt.revocation.gap-timeout-ms:60000}")
+    private long gapTimeoutMs;
+
+    // Only used by the startup load and then by one poll at a time
+    private SequenceCursor cursor;
+
+    public TokenRevocationService(DatabaseClient databaseClient,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${app.jwt.revocation.expected-entries:100000}") long expectedEntries,
+                                  @Value("${app.jwt.revocation.false-positive-rate:0.001}") double falsePositiveRate,
+                                  @Value("${app.jwt.revocation.wheel-tick-ms:60000}") long wheelTickMs,
+                                  @Value("${app.jwt.revocation.wheel-size:512}") int wheelSize) {
+        this.databaseClient = databaseClient;
+        this.denylist = new TokenDenylist(expectedEntries, falsePositiveRate, wheelTickMs, wheelSize,
+                System.currentTimeMillis());
+        Gauge.builder("emailapp.tokens.revoked", denylist, TokenDenylist::size)
+                .description("Revocation entries held in memory")
+                .register(meterRegistry);
+    }
+
+    // Runs on the startup thread, before the server accepts requests, so blocking is fine here
+    @PostConstruct
+    void loadActiveRevocations() {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        // Rows older than the gap timeout have committed or never will; newer ones may still be in
+        // flight with an id below rows already visible, so polling resumes from before them
+        Long settled = databaseClient.sql("SELECT COALESCE(MAX(id), 0) AS id FROM token_revocations WHERE created_at < :before")
+                .bind("before", now.minus(Duration.ofMillis(gapTimeoutMs)))
+                .map(row -> row.get("id", Long.class))
+                .one()
+                .block();
+        cursor = new SequenceCursor(settled, gapTimeoutMs);
+        Long loaded = databaseClient.sql("SELECT " + COLUMNS + " FROM token_revocations WHERE expires_at > :now")
+                .bind("now", now)
+                .map(TokenRevocationService::toRevocation)
+                .all()
+                .doOnNext(revocation -> {
+                    apply(revocation);
+                    cursor.markProcessed(revocation.id());
+                })
+                .count()
+                .block();
+        cursor.advance(System.currentTimeMillis());
+        logger.info("Loaded {} active token revocations", loaded);
+    }
+
+    public boolean isRevoked(String tokenId, String username, Date issuedAt) {
+        return denylist.isRevoked(tokenId, username, issuedAt == null ? 0L : issuedAt.getTime());
+    }
+
+    public Mono<Void> revokeToken(String tokenId, Date expiresAt) {
+        return insert(tokenId, null, null, expiresAt.toInstant());
+    }
+
+    public Mono<Void> revokeAllForUser(String username) {
+        Instant now = Instant.now();
+        return insert(null, username, now, now.plusMillis(jwtExpirationInMs));
+    }
+
+    @Scheduled(fixedDelayString = "${app.jwt.revocation.poll-interval-ms:1000}")
+    public Mono<Void> pollRevocations() {
+        // Rows can commit out of id order, so the cursor polls from the first id not seen yet
+        return poll(cursor.position())
+                .then(Mono.fromRunnable(() -> cursor.advance(System.currentTimeMillis())));
+    }
+
+    @Scheduled(fixedDelayString = "${app.jwt.revocation.wheel-tick-ms:60000}")
+    public void expireRevocations() {
+        denylist.expire(System.currentTimeMillis());
+    }
+
+    private Mono<Void> poll(long after) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM token_revocations WHERE id > :after "
+                        + "ORDER BY id LIMIT " + POLL_BATCH_SIZE)
+                .bind("after", after)
+                .map(TokenRevocationService::toRevocation)
+                .all()
+                .doOnNext(revocation -> {
+                    if (cursor.markProcessed(revocation.id())) {
+                        apply(revocation);
+                    }
+                })
+                .collectList()
+                .flatMap(batch -> batch.size() == POLL_BATCH_SIZE
+                        ? poll(batch.get(batch.size() - 1).id())
+                        : Mono.empty());
+    }
+
+    private Mono<Void> insert(String tokenId, String username, Instant revokedBefore, Instant expiresAt) {
+        DatabaseClient.GenericExecuteSpec insert = databaseClient.sql("INSERT INTO token_revocations "
+                        + "(token_id, username, revoked_before, expires_at, created_at) "
+                        + "VALUES (:tokenId, :username, :revokedBefore, :expiresAt, now()) RETURNING " + COLUMNS)
+                .bind("expiresAt", expiresAt.atOffset(ZoneOffset.UTC));
+        insert = tokenId == null ? insert.bindNull("tokenId", String.class) : insert.bind("tokenId", tokenId);
+        insert = username == null ? insert.bindNull("username", String.class) : insert.bind("username", username);
+        insert = revokedBefore == null
+                ? insert.bindNull("revokedBefore", OffsetDateTime.class)
+                : insert.bind("revokedBefore", revokedBefore.atOffset(ZoneOffset.UTC));
+        return insert.map(TokenRevocationService::toRevocation)
+                .one()
+                .doOnNext(this::apply)
+                .then();
+    }
+
+    private void apply(Revocation revocation) {
+        long expiresAt = revocation.expiresAt().toEpochMilli();
+        if (revocation.tokenId() != null) {
+            denylist.revokeToken(revocation.tokenId(), expiresAt);
+        }
+        if (revocation.username() != null && revocation.revokedBefore() != null) {
+            denylist.revokeUser(revocation.username(), revocation.revokedBefore().toEpochMilli(), expiresAt);
+        }
+    }
+
+    private static Revocation toRevocation(Readable row) {
+        OffsetDateTime revokedBefore = row.get("revoked_before", OffsetDateTime.class);
+        return new Revocation(
+                row.get("id", Long.class),
+                row.get("token_id", String.class),
+                row.get("username", String.class),
+                revokedBefore == null ? null : revokedBefore.toInstant(),
+                row.get("expires_at", OffsetDateTime.class).toInstant());
+    }
+}
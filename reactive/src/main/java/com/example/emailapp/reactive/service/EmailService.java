@@ -0,0 +1,151 @@
+package com.example.emailapp.reactive.service;
+
+import com.example.emailapp.dto.EmailRequest;
+import com.example.emailapp.exception.BadRequestException;
+import com.example.emailapp.exception.QuotaExceededException;
+import com.example.emailapp.reactive.model.Email;
+import com.example.emailapp.reactive.model.User;
+import com.example.emailapp.reactive.repository.EmailRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Sending and deleting mail with the same side effects as the servlet application: the quota is
+ * checked with the user's {@code mailbox_usage} row locked, mail for external recipients is put in
+ * the {@code outbox} for the servlet nodes to deliver, and usage counters follow from the triggers
+ * on {@code emails}.
+ */
+@Service
+public class EmailService {
+
+    // Delivery status of outbound mail waiting in the outbox, as in OutboundMailService.QUEUED
+    private static final String QUEUED = "queued";
+
+    private final EmailRepository emailRepository;
+    private final DatabaseClient databaseClient;
+    private final Set<String> localDomains;
+
+    @Value("${app.mail.delivery.enabled:false}")
+    private boolean deliveryEnabled;
+
+    @Value("${app.quota.enabled:true}")
+    private boolean quotaEnabled;
+
+    @Value("${app.quota.max-messages:100000}")
+    private long maxMessages;
+
+    @Value("${app.quota.max-bytes:1073741824}")
+    private long maxBytes;
+
+    public EmailService(EmailRepository emailRepository,
+                        DatabaseClient databaseClient,
+                        @Value("${app.mail.local-domains:}") String localDomains) {
+        this.emailRepository = emailRepository;
+        this.databaseClient = databaseClient;
+        this.localDomains = Arrays.stream(localDomains.split(","))
+                .map(domain -> domain.trim().toLowerCase(Locale.ROOT))
+                .filter(domain -> !domain.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    @Transactional
+    public Mono<Email> send(User user, EmailRequest emailRequest) {
+        Email email = new Email();
+        email.setUserId(user.getId());
+        email.setFromEmail(user.getEmail());
+        email.setFromName(user.getName());
+        email.setToEmail(emailRequest.getToEmail());
+        email.setSubject(emailRequest.getSubject());
+        email.setBody(emailRequest.getBody());
+        email.setStatus("sent");
+        email.setRead(true);
+        email.setStarred(false);
+        email.setCreatedAt(LocalDateTime.now());
+
+        String domain = domainOf(email.getToEmail());
+        boolean outbound = deliveryEnabled && domain != null && !localDomains.contains(domain);
+        if (outbound) {
+            email.setDeliveryStatus(QUEUED);
+        }
+
+        // Concurrent sends of this user wait at the lock until this transaction ends
+        return checkQuota(user.getId(), sizeOf(email.getSubject()) + sizeOf(email.getBody()))
+                .then(emailRepository.save(email))
+                .flatMap(saved -> outbound ? enqueue(saved, domain).thenReturn(saved) : Mono.just(saved));
+    }
+
+    /**
+     * Deletes an email. Attachment files live in the servlet application's store, so an email
+     * with attachments has to be deleted there.
+     */
+    @Transactional
+    public Mono<Void> delete(Email email) {
+        return emailRepository.hasAttachments(email.getId())
+                .flatMap(hasAttachments -> hasAttachments
+                        ? Mono.<Void>error(new BadRequestException("Emails with attachments cannot be deleted through this API"))
+                        : emailRepository.delete(email));
+    }
+
+    private Mono<Void> checkQuota(long userId, long size) {
+        if (!quotaEnabled) {
+            return Mono.empty();
+        }
+        // The triggers only create a row on the first insert
+        return databaseClient.sql("INSERT INTO mailbox_usage (user_id, message_count, byte_count) VALUES (:userId, 0, 0) "
+                        + "ON CONFLICT (user_id) DO NOTHING")
+                .bind("userId", userId)
+                .then()
+                .then(databaseClient.sql("SELECT message_count, byte_count FROM mailbox_usage WHERE user_id = :userId FOR UPDATE")
+                        .bind("userId", userId)
+                        .map(row -> new long[] {row.get("message_count", Long.class), row.get("byte_count", Long.class)})
+                        .one())
+                .flatMap(usage -> {
+                    if (usage[0] + 1 > maxMessages) {
+                        return Mono.<Void>error(new QuotaExceededException("Mailbox is full: it already holds " + usage[0] + " of "
+                                + maxMessages + " emails"));
+                    }
+                    if (usage[1] + size > maxBytes) {
+                        return Mono.<Void>error(new QuotaExceededException("Mailbox is full: " + usage[1] + " of " + maxBytes
+                                + " bytes are used and the email needs " + size));
+                    }
+                    return Mono.<Void>empty();
+                });
+    }
+
+    private Mono<Void> enqueue(Email email, String domain) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        return databaseClient.sql("INSERT INTO outbox (email_id, user_id, recipient, domain, status, attempts, "
+                        + "next_attempt_at, created_at) VALUES (:emailId, :userId, :recipient, :domain, 'pending', 0, :now, :now)")
+                .bind("emailId", email.getId())
+                .bind("userId", email.getUserId())
+                .bind("recipient", email.getToEmail())
+                .bind("domain", domain)
+                .bind("now", now)
+                .then();
+    }
+
+    // Bytes of the UTF-8 encoding, which is what the usage triggers count with octet_length
+    private static long sizeOf(String text) {
+        return text == null ? 0 : text.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static String domainOf(String address) {
+        int at = address == null ? -1 : address.lastIndexOf('@');
+        if (at < 0 || at == address.length() - 1) {
+            return null;
+        }
+        return address.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.emailapp.reactive.service;
+
+import com.example.emailapp.exception.ConflictException;
+import com.example.emailapp.exception.MailboxUnavailableException;
+import com.example.emailapp.sharding.ShardContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keeps this module to the mailboxes it can serve. It only connects to the main database, so a
+ * mailbox that the servlet application placed on another shard (see {@code user_shards}) would look
+ * empty here and mail sent here would land on the wrong database. Such mailboxes are refused with
+ * 409, and one that the rebalancer is moving with 503, before anything is read or written.
+ */
+@Service
+public class MailboxPlacementService {
+
+    private final DatabaseClient databaseClient;
+    private final long retryAfterSeconds;
+
+    public MailboxPlacementService(DatabaseClient databaseClient,
+                                   @Value("${app.sharding.rebalance.quiesce-ms:3000}") long quiesceMs) {
+        this.databaseClient = databaseClient;
+        this.retryAfterSeconds = Math.max(1, quiesceMs / 1000);
+    }
+
+    // A user without a row has never been placed anywhere but the main database
+    public Mono<Void> requireOnMain(long userId) {
+        return databaseClient.sql("SELECT shard, moving FROM user_shards WHERE user_id = :userId")
+                .bind("userId", userId)
+                .map(row -> {
+                    if (Boolean.TRUE.equals(row.get("moving", Boolean.class))) {
+                        throw new MailboxUnavailableException("This mailbox is being moved; please try again shortly",
+                                retryAfterSeconds);
+                    }
+                    if (!ShardContext.MAIN.equals(row.get("shard", String.class))) {
+                        throw new ConflictException("This mailbox is on a shard that only the servlet API serves");
+                    }
+                    return true;
+                })
+                .one()
+                .then();
+    }
+}
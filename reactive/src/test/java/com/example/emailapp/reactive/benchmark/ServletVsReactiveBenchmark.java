@@ -0,0 +1,207 @@
+package com.example.emailapp.reactive.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the servlet application and the reactive module side by side with the same workload: a
+ * fixed number of clients, each with its own connection, listing a mailbox in a loop. Reports
+ * throughput and latency per concurrency level, and how much the server's JVM memory and live
+ * thread count grow over idle while the clients are connected, divided by the number of clients.
+ * <p>
+ * Both servers must be running against the same database (see README). Run with:
+ * <pre>
+ * mvn -f reactive/pom.xml test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.example.emailapp.reactive.benchmark.ServletVsReactiveBenchmark \
+ *     -Dexec.args="http://localhost:8080 http://localhost:8081 50,200,1000"
+ * </pre>
+ */
+public class ServletVsReactiveBenchmark {
+
+    private static final String USERNAME = "benchmark";
+    private static final String PASSWORD = "benchmark-password";
+    private static final int SEEDED_EMAILS = 20;
+    private static final Duration WARM_UP = Duration.ofSeconds(5);
+    private static final Duration MEASURE = Duration.ofSeconds(20);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private record Result(long requests, long errors, double requestsPerSecond, long p50Micros, long p99Micros,
+                          long memoryPerClientBytes, double threadsPerClient) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String servletUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        String reactiveUrl = args.length > 1 ? args[1] : "http://localhost:8081";
+        String levels = args.length > 2 ? args[2] : "50,200,1000";
+
+        String token = prepare(servletUrl);
+        System.out.printf("%d s per level after %d s warm-up, GET /api/emails?status=sent (%d emails)%n",
+                MEASURE.toSeconds(), WARM_UP.toSeconds(), SEEDED_EMAILS);
+        System.out.printf("%-9s %8s %10s %8s %9s %9s %13s %13s%n",
+                "server", "clients", "req/s", "errors", "p50 us", "p99 us", "mem/client", "threads/client");
+        for (String level : levels.split(",")) {
+            int clients = Integer.parseInt(level.trim());
+            report("servlet", clients, run(servletUrl, token, clients));
+            report("reactive", clients, run(reactiveUrl, token, clients));
+        }
+    }
+
+    // Both servers share the database, so one user and one token serve for both
+    private static String prepare(String baseUrl) throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        post(client, baseUrl + "/api/auth/register", null, "{\"username\":\"" + USERNAME + "\",\"password\":\"" + PASSWORD
+                + "\",\"email\":\"" + USERNAME + "@example.com\",\"name\":\"Benchmark\"}");
+        HttpResponse<String> login = post(client, baseUrl + "/api/auth/login", null,
+                "{\"username\":\"" + USERNAME + "\",\"password\":\"" + PASSWORD + "\"}");
+        if (login.statusCode() != 200) {
+            throw new IllegalStateException("Login failed: " + login.statusCode() + " " + login.body());
+        }
+        String token = objectMapper.readTree(login.body()).get("token").asText();
+
+        HttpResponse<String> mailbox = client.send(get(baseUrl + "/api/emails?status=sent", token),
+                HttpResponse.BodyHandlers.ofString());
+        for (int i = objectMapper.readTree(mailbox.body()).size(); i < SEEDED_EMAILS; i++) {
+            post(client, baseUrl + "/api/emails", token, "{\"toEmail\":\"" + USERNAME + "@example.com\",\"subject\":\"Seed "
+                    + i + "\",\"body\":\"" + "Benchmark body. ".repeat(20) + "\"}");
+        }
+        return token;
+    }
+
+    private static Result run(String baseUrl, String token, int clients) throws Exception {
+        Server server = new Server(baseUrl, token);
+        long idleMemory = server.memoryUsed();
+        long idleThreads = server.liveThreads();
+
+        // HTTP/1.1 opens one connection per request in flight, so the server sees exactly this many
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        HttpRequest request = get(baseUrl + "/api/emails?status=sent", token);
+
+        Load warmUp = new Load(httpClient, request, System.nanoTime() + WARM_UP.toNanos(), false);
+        warmUp.start(clients).join();
+
+        Load load = new Load(httpClient, request, System.nanoTime() + MEASURE.toNanos(), true);
+        CompletableFuture<Void> running = load.start(clients);
+        Thread.sleep(MEASURE.toMillis() / 2);
+        long loadedMemory = server.memoryUsed();
+        long loadedThreads = server.liveThreads();
+        running.join();
+
+        long[] latencies = load.latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        return new Result(
+                load.completed.get(),
+                load.errors.get(),
+                load.completed.get() / (double) MEASURE.toSeconds(),
+                percentile(latencies, 0.50) / 1_000,
+                percentile(latencies, 0.99) / 1_000,
+                Math.max(0, loadedMemory - idleMemory) / clients,
+                Math.max(0, loadedThreads - idleThreads) / (double) clients);
+    }
+
+    // Each client sends its next request when the previous answer has arrived, until the deadline
+    private static final class Load {
+
+        private final HttpClient client;
+        private final HttpRequest request;
+        private final long deadline;
+        private final boolean record;
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+
+        Load(HttpClient client, HttpRequest request, long deadline, boolean record) {
+            this.client = client;
+            this.request = request;
+            this.deadline = deadline;
+            this.record = record;
+        }
+
+        CompletableFuture<Void> start(int clients) {
+            List<CompletableFuture<Void>> loops = new ArrayList<>(clients);
+            for (int i = 0; i < clients; i++) {
+                loops.add(loop());
+            }
+            return CompletableFuture.allOf(loops.toArray(CompletableFuture[]::new));
+        }
+
+        private CompletableFuture<Void> loop() {
+            if (System.nanoTime() >= deadline) {
+                return CompletableFuture.completedFuture(null);
+            }
+            long started = System.nanoTime();
+            return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .handle((response, failure) -> {
+                        if (record) {
+                            if (failure != null || response.statusCode() != 200) {
+                                errors.incrementAndGet();
+                            } else {
+                                completed.incrementAndGet();
+                                latencies.add(System.nanoTime() - started);
+                            }
+                        }
+                        return null;
+                    })
+                    .thenCompose(ignored -> loop());
+        }
+    }
+
+    // Reads the server's own gauges through the actuator
+    private record Server(String baseUrl, String token) {
+
+        long memoryUsed() throws Exception {
+            return (long) (metric("jvm.memory.used?tag=area:heap") + metric("jvm.memory.used?tag=area:nonheap"));
+        }
+
+        long liveThreads() throws Exception {
+            return (long) metric("jvm.threads.live");
+        }
+
+        private double metric(String name) throws Exception {
+            HttpResponse<String> response = HttpClient.newHttpClient().send(get(baseUrl + "/actuator/metrics/" + name, token),
+                    HttpResponse.BodyHandlers.ofString());
+            JsonNode measurements = objectMapper.readTree(response.body()).get("measurements");
+            return measurements == null ? 0 : measurements.get(0).get("value").asDouble();
+        }
+    }
+
+    private static HttpRequest get(String url, String token) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build();
+    }
+
+    private static HttpResponse<String> post(HttpClient client, String url, String token, String json) throws Exception {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+    }
+
+    private static void report(String server, int clients, Result result) {
+        System.out.printf("%-9s %8d %10.0f %8d %9d %9d %12dK %13.2f%n", server, clients, result.requestsPerSecond(),
+                result.errors(), result.p50Micros(), result.p99Micros(), result.memoryPerClientBytes() / 1024,
+                result.threadsPerClient());
+    }
+}
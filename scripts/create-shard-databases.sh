@@ -0,0 +1,22 @@
+#!/usr/bin/env bash
+#
+# Creates the shard databases used by the "sharded" profile (application-sharded.properties) on a
+# local PostgreSQL server. Their tables are created by the application on startup.
+#
+#   scripts/create-shard-databases.sh [count]
+#
+# Connection settings come from the usual PG* variables (PGHOST, PGPORT, PGUSER, PGPASSWORD).
+
+set -euo pipefail
+
+COUNT=${1:-2}
+
+for i in $(seq 1 "$COUNT"); do
+    name="emailapp_shard$i"
+    if psql -d postgres -tAc "SELECT 1 FROM pg_database WHERE datname = '$name'" | grep -q 1; then
+        echo "$name already exists"
+    else
+        createdb "$name"
+        echo "created $name"
+    fi
+done
@@ -0,0 +1,113 @@
+#!/usr/bin/env bash
+#
+# Measures startup time and time-to-first-request for each way of launching the application.
+#
+#   mvn -Pstartup package            # fat jar, AOT classes, thin-jar layout and CDS archive
+#   scripts/measure-startup.sh [runs]
+#
+# "startup" is what Spring Boot reports in its "Started ... in N seconds" line; "first request" is the
+# wall-clock time from launching the JVM until $PROBE_URL answers, i.e. when a new node can take
+# traffic. The database configured in application.properties (or SPRING_DATASOURCE_* variables) must
+# be reachable. A native executable at target/emailapp is measured too when present.
+
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+RUNS=${1:-5}
+PORT=${PORT:-18080}
+PROBE_PATH=${PROBE_PATH:-/actuator/health}
+TIMEOUT_SECONDS=${TIMEOUT_SECONDS:-120}
+
+FAT_JAR=$(ls target/emailapp-*.jar 2>/dev/null | grep -v -- '-startup' | head -1 || true)
+STARTUP_DIR=target/startup
+STARTUP_JAR=$(ls "$STARTUP_DIR"/emailapp-*-startup.jar 2>/dev/null | head -1 || true)
+NATIVE_BINARY=target/emailapp
+
+if [[ -z "$FAT_JAR" ]]; then
+    echo "No application jar in target/; run 'mvn -Pstartup package' first" >&2
+    exit 1
+fi
+
+LOG=$(mktemp)
+trap 'rm -f "$LOG"' EXIT
+
+now_ms() {
+    date +%s%3N
+}
+
+# Runs one launch; prints "<startup ms> <first request ms>"
+measure_once() {
+    local dir=$1
+    shift
+    local started
+    started=$(now_ms)
+    (cd "$dir" && exec "$@" --server.port="$PORT" >"$LOG" 2>&1) &
+    local pid=$!
+
+    local first_request=""
+    while (( $(now_ms) - started < TIMEOUT_SECONDS * 1000 )); do
+        if curl -s -o /dev/null "http://localhost:$PORT$PROBE_PATH"; then
+            first_request=$(( $(now_ms) - started ))
+            break
+        fi
+        if ! kill -0 "$pid" 2>/dev/null; then
+            break
+        fi
+        sleep 0.02
+    done
+
+    kill "$pid" 2>/dev/null || true
+    wait "$pid" 2>/dev/null || true
+
+    if [[ -z "$first_request" ]]; then
+        echo "Launch failed or timed out; last log lines:" >&2
+        tail -20 "$LOG" >&2
+        exit 1
+    fi
+
+    local startup
+    startup=$(sed -n 's/.*Started .* in \([0-9.]*\) seconds.*/\1/p' "$LOG" | head -1)
+    echo "$(awk -v s="$startup" 'BEGIN { printf "%d", s * 1000 }') $first_request"
+}
+
+measure() {
+    local name=$1
+    shift
+    local startups=() firsts=()
+    for ((i = 0; i < RUNS; i++)); do
+        read -r startup first < <(measure_once "$@")
+        startups+=("$startup")
+        firsts+=("$first")
+    done
+    printf '%-28s %12s %12s %18s %18s\n' "$name" \
+        "$(median "${startups[@]}")" "$(minimum "${startups[@]}")" \
+        "$(median "${firsts[@]}")" "$(minimum "${firsts[@]}")"
+}
+
+median() {
+    printf '%s\n' "$@" | sort -n | awk '{ v[NR] = $1 } END { print (NR % 2) ? v[(NR + 1) / 2] : int((v[NR / 2] + v[NR / 2 + 1]) / 2) }'
+}
+
+minimum() {
+    printf '%s\n' "$@" | sort -n | head -1
+}
+
+echo "Runs per configuration: $RUNS, probe: $PROBE_PATH (times in ms)"
+printf '%-28s %12s %12s %18s %18s\n' "configuration" "startup p50" "startup min" "first request p50" "first request min"
+
+measure "jar (default profile)" . java -jar "$FAT_JAR"
+measure "jar (prod profile)" . java -Dspring.profiles.active=prod -jar "$FAT_JAR"
+
+if [[ -n "$STARTUP_JAR" ]]; then
+    measure "AOT (prod profile)" "$STARTUP_DIR" java -Dspring.aot.enabled=true -Dspring.profiles.active=prod \
+        -jar "$(basename "$STARTUP_JAR")"
+    if [[ -f "$STARTUP_DIR/application.jsa" ]]; then
+        measure "AOT + CDS (prod profile)" "$STARTUP_DIR" java -XX:SharedArchiveFile=application.jsa -Xlog:cds=error \
+            -Dspring.aot.enabled=true -Dspring.profiles.active=prod -jar "$(basename "$STARTUP_JAR")"
+    fi
+fi
+
+if [[ -x "$NATIVE_BINARY" ]]; then
+    measure "native (prod profile)" . "$NATIVE_BINARY" -Dspring.profiles.active=prod
+fi
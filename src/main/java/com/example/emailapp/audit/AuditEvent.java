@@ -0,0 +1,11 @@
+package com.example.emailapp.audit;
+
+import java.time.Instant;
+
+/**
+ * One event read back from the audit journal. {@code userId} is null when the user was not known,
+ * such as for a failed login; {@code username} is null when not even the name was.
+ */
+public record AuditEvent(Instant timestamp, AuditEventType type, Long userId, String username, String address,
+                         String detail) {
+}
@@ -0,0 +1,41 @@
+package com.example.emailapp.audit;
+
+/**
+ * Kinds of security events in the audit journal. The code is what the journal stores, so a code is
+ * never changed or reused; new types get new codes.
+ */
+public enum AuditEventType {
+    LOGIN(1),
+    LOGIN_FAILED(2),
+    REGISTERED(3),
+    TOKEN_REJECTED(4),
+    EMAIL_DELETED(5);
+
+    private static final AuditEventType[] BY_CODE;
+
+    static {
+        int maxCode = 0;
+        for (AuditEventType type : values()) {
+            maxCode = Math.max(maxCode, type.code);
+        }
+        BY_CODE = new AuditEventType[maxCode + 1];
+        for (AuditEventType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final byte code;
+
+    AuditEventType(int code) {
+        this.code = (byte) code;
+    }
+
+    byte getCode() {
+        return code;
+    }
+
+    // Null for a code written by a newer version
+    static AuditEventType fromCode(byte code) {
+        return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+}
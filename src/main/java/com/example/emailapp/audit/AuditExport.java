@@ -0,0 +1,70 @@
+package com.example.emailapp.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Prints audit events from a journal directory as JSON lines, oldest first. Works on a copy of the
+ * directory as well as on the live one of a running node:
+ * <pre>
+ * mvn compile exec:java -Dexec.mainClass=com.example.emailapp.audit.AuditExport \
+ *     -Dexec.args="data/audit --user alice --from 2024-01-01T00:00:00Z --to 2024-02-01T00:00:00Z"
+ * </pre>
+ */
+public final class AuditExport {
+
+    private static final String USAGE =
+            "Usage: AuditExport <dir> [--user <username>] [--from <instant>] [--to <instant>] [--limit <n>]";
+
+    private AuditExport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args.length % 2 == 0) {
+            exit(USAGE);
+        }
+        Path dir = Path.of(args[0]);
+        String username = null;
+        Instant from = Instant.EPOCH;
+        Instant to = Instant.now();
+        int limit = Integer.MAX_VALUE;
+        try {
+            for (int i = 1; i < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--user" -> username = args[i + 1];
+                    case "--from" -> from = Instant.parse(args[i + 1]);
+                    case "--to" -> to = Instant.parse(args[i + 1]);
+                    case "--limit" -> limit = Integer.parseInt(args[i + 1]);
+                    default -> exit(USAGE);
+                }
+            }
+        } catch (DateTimeParseException | NumberFormatException e) {
+            exit(e.getMessage() + "\n" + USAGE);
+        }
+
+        ObjectMapper mapper = new ObjectMapper()
+                .findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        List<AuditEvent> events = AuditJournalReader.query(dir, username, from, to, limit);
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            for (AuditEvent event : events) {
+                out.write(mapper.writeValueAsString(event));
+                out.newLine();
+            }
+        }
+    }
+
+    private static void exit(String message) {
+        System.err.println(message);
+        System.exit(2);
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.emailapp.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only audit journal: a directory of fixed-size segment files, each memory-mapped while it is
+ * written. Only one thread may append, and only one process: the constructor takes an exclusive
+ * lock on {@code audit.lock} in the directory and fails while another journal holds it.
+ * <p>
+ * A segment starts with a 16-byte header (magic, format version, creation time in epoch millis)
+ * followed by records:
+ * <pre>
+ * int  body length (0 = no more records)
+ * int  CRC-32C of the body
+ * body: long timestamp, byte type code, long user id,
+ *       then username, address and detail, each a short byte length (-1 for null) and UTF-8 bytes
+ * </pre>
+ * The length is stored last, so a record becomes visible to readers whole, and a record torn by a
+ * crash fails its checksum and ends the segment. When a record does not fit, the next segment is
+ * started. Segments whose events are all older than the retention period are deleted on rotation.
+ * <p>
+ * Appending only copies bytes into the page cache. When they reach the disk depends on the
+ * {@link FsyncPolicy}: after every batch, at most every interval, or whenever the OS writes them.
+ */
+public final class AuditJournal implements Closeable {
+
+    public enum FsyncPolicy {
+        NONE, BATCH, INTERVAL;
+
+        public static FsyncPolicy parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    static final int MAGIC = 0x41554431;  // "AUD1"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_OVERHEAD = 8;
+    // Longer fields are cut; a character split at the cut reads back as U+FFFD
+    static final int MAX_FIELD_BYTES = 1024;
+    static final String LOCK_FILE = "audit.lock";
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditJournal.class);
+
+    private final Path dir;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+    private final long retentionMillis;
+    private final CRC32C crc = new CRC32C();
+    // Held until close; the OS releases it if the process dies
+    private final FileChannel lockChannel;
+
+    private long segmentIndex;
+    private MappedByteBuffer segment;
+    private int position;
+    private boolean dirty;
+    private long lastForced;
+
+    public AuditJournal(Path dir, int segmentSize, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis,
+                        long retentionMillis) throws IOException {
+        this.dir = dir;
+        this.segmentSize = Math.max(segmentSize, HEADER_SIZE + RECORD_OVERHEAD + 64 + 3 * MAX_FIELD_BYTES);
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.retentionMillis = retentionMillis;
+        Files.createDirectories(dir);
+        this.lockChannel = lock(dir);
+
+        try {
+            List<AuditJournalReader.SegmentFile> segments = AuditJournalReader.segments(dir);
+            if (segments.isEmpty()) {
+                create(1);
+            } else {
+                resume(segments.get(segments.size() - 1));
+            }
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends one event; matches {@link AuditRingBuffer.EventHandler} so the writer can drain
+     * straight into the journal.
+     *
+     * @throws UncheckedIOException if a new segment cannot be created
+     */
+    public void append(long timestamp, AuditEventType type, long userId, String username, String address,
+                       String detail) {
+        byte[] usernameBytes = encode(username);
+        byte[] addressBytes = encode(address);
+        byte[] detailBytes = encode(detail);
+        int bodyLength = 8 + 1 + 8 + fieldLength(usernameBytes) + fieldLength(addressBytes) + fieldLength(detailBytes);
+        if (position + RECORD_OVERHEAD + bodyLength > segment.capacity()) {
+            rotate();
+        }
+
+        int body = position + RECORD_OVERHEAD;
+        int offset = body;
+        segment.putLong(offset, timestamp);
+        offset += 8;
+        segment.put(offset, type.getCode());
+        offset += 1;
+        segment.putLong(offset, userId);
+        offset += 8;
+        offset = putField(offset, usernameBytes);
+        offset = putField(offset, addressBytes);
+        putField(offset, detailBytes);
+
+        crc.reset();
+        crc.update(segment.slice(body, bodyLength));
+        segment.putInt(position + 4, (int) crc.getValue());
+        segment.putInt(position, bodyLength);
+        position += RECORD_OVERHEAD + bodyLength;
+        dirty = true;
+    }
+
+    /**
+     * Applies the fsync policy; call after each batch of appends, and now and then when idle so
+     * that the interval policy catches up.
+     */
+    public void endBatch(long now) {
+        if (!dirty) {
+            return;
+        }
+        if (fsyncPolicy == FsyncPolicy.BATCH
+                || (fsyncPolicy == FsyncPolicy.INTERVAL && now - lastForced >= fsyncIntervalMillis)) {
+            force(now);
+        }
+    }
+
+    // Time until endBatch has records to force under the interval policy; Long.MAX_VALUE when none are waiting
+    public long millisUntilForce(long now) {
+        if (!dirty || fsyncPolicy != FsyncPolicy.INTERVAL) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, lastForced + fsyncIntervalMillis - now);
+    }
+
+    // Writes everything appended so far to the disk, whatever the policy
+    public void force(long now) {
+        segment.force();
+        dirty = false;
+        lastForced = now;
+    }
+
+    @Override
+    public void close() {
+        try {
+            force(System.currentTimeMillis());
+        } finally {
+            try {
+                lockChannel.close();
+            } catch (IOException e) {
+                logger.warn("Cannot release the audit journal lock in {}", dir, e);
+            }
+        }
+    }
+
+    // Two processes appending to the same segment would overwrite each other's records
+    private static FileChannel lock(Path dir) throws IOException {
+        FileChannel channel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.tryLock() != null) {
+                return channel;
+            }
+        } catch (OverlappingFileLockException e) {
+            // Held by another journal in this JVM
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        channel.close();
+        throw new IOException("The audit journal in " + dir + " is already in use");
+    }
+
+    private void rotate() {
+        if (fsyncPolicy != FsyncPolicy.NONE) {
+            segment.force();
+        }
+        try {
+            create(segmentIndex + 1);
+            deleteExpired(System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start audit segment " + (segmentIndex + 1), e);
+        }
+    }
+
+    private void create(long index) throws IOException {
+        Path file = dir.resolve(AuditJournalReader.fileName(index));
+        // Mapping past the end grows the file with zeros; the mapping outlives the channel
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        long now = System.currentTimeMillis();
+        writeHeader(now);
+        segment.force();
+        segmentIndex = index;
+        position = HEADER_SIZE;
+        dirty = false;
+        lastForced = now;
+        logger.info("Writing audit events to {}", file);
+    }
+
+    // Continues the newest segment after its last intact record
+    private void resume(AuditJournalReader.SegmentFile file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+        if (segment.capacity() < HEADER_SIZE + RECORD_OVERHEAD) {
+            // Crashed before the file was sized
+            Files.delete(file.path());
+            create(file.index());
+            return;
+        }
+        segmentIndex = file.index();
+        if (segment.getInt(0) != MAGIC) {
+            // Crashed before the header was written, so there are no records either
+            writeHeader(System.currentTimeMillis());
+        }
+        position = AuditJournalReader.endOfRecords(segment);
+        if (position + 4 <= segment.capacity() && segment.getInt(position) != 0) {
+            // Clear the torn record so that records appended from here read back
+            logger.warn("Discarding a torn audit record at offset {} of {}", position, file.path());
+            byte[] zeros = new byte[64 * 1024];
+            for (int offset = position; offset < segment.capacity(); offset += zeros.length) {
+                segment.put(offset, zeros, 0, Math.min(zeros.length, segment.capacity() - offset));
+            }
+        }
+        force(System.currentTimeMillis());
+    }
+
+    private void writeHeader(long createdAt) {
+        segment.putInt(0, MAGIC);
+        segment.putInt(4, VERSION);
+        segment.putLong(8, createdAt);
+    }
+
+    // A segment can only hold events older than the creation time of the segment after it
+    private void deleteExpired(long now) throws IOException {
+        List<AuditJournalReader.SegmentFile> segments = AuditJournalReader.segments(dir);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (segments.get(i + 1).createdAt() >= now - retentionMillis) {
+                break;
+            }
+            Files.deleteIfExists(segments.get(i).path());
+            logger.info("Deleted expired audit segment {}", segments.get(i).path());
+        }
+    }
+
+    private int putField(int offset, byte[] bytes) {
+        if (bytes == null) {
+            segment.putShort(offset, (short) -1);
+            return offset + 2;
+        }
+        segment.putShort(offset, (short) bytes.length);
+        segment.put(offset + 2, bytes);
+        return offset + 2 + bytes.length;
+    }
+
+    private static int fieldLength(byte[] bytes) {
+        return 2 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static byte[] encode(String value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= MAX_FIELD_BYTES ? bytes : Arrays.copyOf(bytes, MAX_FIELD_BYTES);
+    }
+}
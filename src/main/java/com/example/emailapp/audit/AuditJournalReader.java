@@ -0,0 +1,174 @@
+package com.example.emailapp.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads the segments written by {@link AuditJournal}. Safe to use while the journal is being
+ * appended to: a record only counts once its length is set, and everything after the first
+ * incomplete or corrupt record of a segment is ignored.
+ */
+public final class AuditJournalReader {
+
+    /**
+     * A segment file; {@code createdAt} is 0 when its header was never written.
+     */
+    public record SegmentFile(long index, Path path, long createdAt) {
+    }
+
+    private static final Pattern FILE_NAME = Pattern.compile("audit-(\\d{10})\\.seg");
+
+    private AuditJournalReader() {
+    }
+
+    static String fileName(long index) {
+        return String.format("audit-%010d.seg", index);
+    }
+
+    // Oldest first
+    public static List<SegmentFile> segments(Path dir) throws IOException {
+        List<SegmentFile> segments = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "audit-*.seg")) {
+            for (Path file : files) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    segments.add(new SegmentFile(Long.parseLong(matcher.group(1)), file, createdAt(file)));
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(SegmentFile::index));
+        return segments;
+    }
+
+    /**
+     * Events of {@code username} (or of everyone when null) with a timestamp in
+     * {@code [from, to)}, oldest first, at most {@code limit} of them.
+     */
+    public static List<AuditEvent> query(Path dir, String username, Instant from, Instant to, int limit)
+            throws IOException {
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        List<SegmentFile> segments = segments(dir);
+        List<AuditEvent> events = new ArrayList<>();
+        for (int i = 0; i < segments.size() && events.size() < limit; i++) {
+            // Everything in a segment was appended before the next one was created. The converse does
+            // not hold: an event can wait in the buffer while a segment is started, so a segment may
+            // hold events older than itself and no segment can be skipped for being too new.
+            if (i + 1 < segments.size() && segments.get(i + 1).createdAt() < fromMillis) {
+                continue;
+            }
+            ByteBuffer buffer = map(segments.get(i).path());
+            if (buffer != null) {
+                collect(buffer, username, fromMillis, toMillis, limit, events);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Offset just past the last intact record of a segment.
+     */
+    static int endOfRecords(ByteBuffer segment) {
+        CRC32C crc = new CRC32C();
+        int position = AuditJournal.HEADER_SIZE;
+        while (position + AuditJournal.RECORD_OVERHEAD <= segment.capacity()) {
+            int length = segment.getInt(position);
+            if (length <= 0 || length > segment.capacity() - position - AuditJournal.RECORD_OVERHEAD) {
+                break;
+            }
+            crc.reset();
+            crc.update(segment.slice(position + AuditJournal.RECORD_OVERHEAD, length));
+            if ((int) crc.getValue() != segment.getInt(position + 4)) {
+                break;
+            }
+            position += AuditJournal.RECORD_OVERHEAD + length;
+        }
+        return position;
+    }
+
+    private static void collect(ByteBuffer segment, String username, long fromMillis, long toMillis, int limit,
+                                List<AuditEvent> events) {
+        int end = endOfRecords(segment);
+        int position = AuditJournal.HEADER_SIZE;
+        while (position < end && events.size() < limit) {
+            int length = segment.getInt(position);
+            int offset = position + AuditJournal.RECORD_OVERHEAD;
+            position = offset + length;
+
+            long timestamp = segment.getLong(offset);
+            if (timestamp < fromMillis || timestamp >= toMillis) {
+                continue;
+            }
+            AuditEventType type = AuditEventType.fromCode(segment.get(offset + 8));
+            long userId = segment.getLong(offset + 9);
+            offset += 17;
+            String recordUsername = readField(segment, offset);
+            if (username != null && !username.equals(recordUsername)) {
+                continue;
+            }
+            offset += fieldLength(segment, offset);
+            String address = readField(segment, offset);
+            offset += fieldLength(segment, offset);
+            String detail = readField(segment, offset);
+            events.add(new AuditEvent(Instant.ofEpochMilli(timestamp), type, userId == 0 ? null : userId,
+                    recordUsername, address, detail));
+        }
+    }
+
+    private static String readField(ByteBuffer segment, int offset) {
+        short length = segment.getShort(offset);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        segment.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int fieldLength(ByteBuffer segment, int offset) {
+        return 2 + Math.max(0, segment.getShort(offset));
+    }
+
+    private static long createdAt(Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(AuditJournal.HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends
+            }
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        if (header.hasRemaining() || header.getInt(0) != AuditJournal.MAGIC) {
+            return 0;
+        }
+        return header.getLong(8);
+    }
+
+    // Null when the segment was deleted by rotation after it was listed
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.emailapp.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Security audit trail: logins, failed logins, registrations, rejected tokens and deleted emails.
+ * <p>
+ * {@link #record} only publishes the event into an {@link AuditRingBuffer}, so a request pays for a
+ * CAS and a few array stores, never for I/O. A single {@code audit-writer} thread drains the buffer
+ * in batches into the {@link AuditJournal} under {@code app.audit.dir} and applies the fsync policy
+ * after each batch. When the writer falls behind by {@code app.audit.buffer-size} events, new events
+ * are dropped and counted in {@code emailapp.audit.dropped} rather than slowing requests down; when
+ * the journal cannot be written, the writer keeps the events buffered and retries. An idle writer
+ * sleeps until an event is recorded or a pending fsync is due.
+ * <p>
+ * Each node writes its own journal. Events reach the disk according to {@code app.audit.fsync}, so
+ * those of the last interval can be lost in a crash of the machine, but not of the process.
+ */
+@Service
+public class AuditLog {
+
+    // The user id of events whose user is not known, such as a failed login
+    public static final long UNKNOWN_USER = 0;
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditLog.class);
+
+    private static final int DRAIN_BATCH_SIZE = 1024;
+    // While an event is being published; it is drained on the next pass
+    private static final long PUBLISH_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    // Only bounds the wait in case a wake-up is ever missed
+    private static final long MAX_IDLE_PARK_MILLIS = 10_000;
+    private static final long FAILURE_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long SHUTDOWN_WAIT_MILLIS = 5000;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final AuditRingBuffer buffer;
+    private final AuditJournal journal;
+    private final AuditRingBuffer.EventHandler appender;
+    private final Thread writer;
+    private final Counter droppedEvents;
+    private final Counter writeFailures;
+
+    private volatile boolean running;
+    // Set by the writer before it checks the buffer a last time and parks
+    private volatile boolean idle;
+
+    public AuditLog(MeterRegistry meterRegistry,
+                    @Value("${app.audit.enabled:true}") boolean enabled,
+                    @Value("${app.audit.dir:data/audit}") String dir,
+                    @Value("${app.audit.buffer-size:65536}") int bufferSize,
+                    @Value("${app.audit.segment-size-bytes:67108864}") int segmentSize,
+                    @Value("${app.audit.fsync:interval}") String fsyncPolicy,
+                    @Value("${app.audit.fsync-interval-ms:1000}") long fsyncIntervalMs,
+                    @Value("${app.audit.retention-days:90}") long retentionDays) throws IOException {
+        this.enabled = enabled;
+        this.dir = Paths.get(dir).toAbsolutePath().normalize();
+        this.buffer = new AuditRingBuffer(bufferSize);
+        this.journal = enabled
+                ? new AuditJournal(this.dir, segmentSize, AuditJournal.FsyncPolicy.parse(fsyncPolicy), fsyncIntervalMs,
+                        TimeUnit.DAYS.toMillis(retentionDays))
+                : null;
+        this.appender = enabled ? journal::append : null;
+        this.writer = new Thread(this::run, "audit-writer");
+        writer.setDaemon(true);
+
+        this.droppedEvents = Counter.builder("emailapp.audit.dropped")
+                .description("Audit events dropped because the buffer was full")
+                .register(meterRegistry);
+        this.writeFailures = Counter.builder("emailapp.audit.write.failures")
+                .description("Failed attempts to write buffered audit events to the journal")
+                .register(meterRegistry);
+        Gauge.builder("emailapp.audit.backlog", buffer, AuditRingBuffer::backlog)
+                .description("Audit events waiting to be written to the journal")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            running = true;
+            writer.start();
+        }
+    }
+
+    /**
+     * Records an event at the current time. Never blocks and never throws; {@code userId} is
+     * {@link #UNKNOWN_USER} when there is no user id, and the strings may be null.
+     */
+    public void record(AuditEventType type, long userId, String username, String address, String detail) {
+        if (!enabled) {
+            return;
+        }
+        if (!buffer.offer(System.currentTimeMillis(), type, userId, username, address, detail)) {
+            droppedEvents.increment();
+        } else if (idle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Events of {@code username} (everyone's when null) in {@code [from, to)}, oldest first. Events
+     * recorded in the last few milliseconds may not have been written yet.
+     */
+    public List<AuditEvent> query(String username, Instant from, Instant to, int limit) {
+        try {
+            return AuditJournalReader.query(dir, username, from, to, limit);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the audit journal in " + dir, e);
+        }
+    }
+
+    // Writes what is still buffered; the web server has stopped taking requests by now
+    @PreDestroy
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(SHUTDOWN_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            logger.error("The audit writer did not stop; {} audit events are lost", buffer.backlog());
+            return;
+        }
+        try {
+            while (buffer.drain(appender, DRAIN_BATCH_SIZE) > 0) {
+                // Until the buffer is empty
+            }
+            journal.close();
+        } catch (UncheckedIOException e) {
+            logger.error("Cannot write {} audit events before shutdown", buffer.backlog(), e);
+        }
+    }
+
+    // record() claims its slot before it reads idle, and the writer sets idle before it reads the
+    // backlog, so an event recorded meanwhile is either seen here or unparks the writer
+    private void park(long now) {
+        if (buffer.backlog() > 0) {
+            LockSupport.parkNanos(PUBLISH_WAIT_NANOS);
+            return;
+        }
+        idle = true;
+        try {
+            if (running && buffer.backlog() == 0) {
+                long millis = Math.min(journal.millisUntilForce(now), MAX_IDLE_PARK_MILLIS);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(Math.max(1, millis)));
+            }
+        } finally {
+            idle = false;
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                int drained = buffer.drain(appender, DRAIN_BATCH_SIZE);
+                // Also when idle, so that the interval policy forces the last batch in time
+                long now = System.currentTimeMillis();
+                journal.endBatch(now);
+                if (drained == 0) {
+                    park(now);
+                }
+            } catch (UncheckedIOException e) {
+                // The event being written stays buffered; a full buffer drops new events meanwhile
+                writeFailures.increment();
+                logger.error("Cannot write audit events to {}; retrying", dir, e);
+                LockSupport.parkNanos(FAILURE_BACKOFF_NANOS);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.emailapp.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded queue of audit events between request threads and the single journal writer.
+ * <p>
+ * Publishing is lock-free and allocation-free: a producer claims the next slot with one CAS on the
+ * tail, writes the event's fields into preallocated arrays and releases the slot by storing its
+ * sequence number (the bounded MPMC scheme of D. Vyukov, with a single consumer). Each slot's
+ * sequence says whose turn it is: {@code position} when a producer may fill it, {@code position + 1}
+ * once it holds an event, {@code position + capacity} after the consumer has taken it. A full buffer
+ * refuses the event instead of making the request wait.
+ */
+public final class AuditRingBuffer {
+
+    /**
+     * Receives drained events, one call per event, on the consumer thread.
+     */
+    @FunctionalInterface
+    public interface EventHandler {
+        void onEvent(long timestamp, AuditEventType type, long userId, String username, String address, String detail);
+    }
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final long[] timestamps;
+    private final AuditEventType[] types;
+    private final long[] userIds;
+    private final String[] usernames;
+    private final String[] addresses;
+    private final String[] details;
+    private final AtomicLong tail = new AtomicLong();
+    // Only the consumer writes it; volatile so the backlog can be read from other threads
+    private volatile long head;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public AuditRingBuffer(int capacity) {
+        int size = 1 << (32 - Integer.numberOfLeadingZeros(Math.max(2, capacity) - 1));
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.timestamps = new long[size];
+        this.types = new AuditEventType[size];
+        this.userIds = new long[size];
+        this.usernames = new String[size];
+        this.addresses = new String[size];
+        this.details = new String[size];
+    }
+
+    /**
+     * Publishes an event. Safe to call from any number of threads.
+     *
+     * @return false if the buffer is full and the event was not published
+     */
+    public boolean offer(long timestamp, AuditEventType type, long userId, String username, String address,
+                         String detail) {
+        long position = tail.get();
+        while (true) {
+            long difference = sequences.get((int) position & mask) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The consumer has not taken the event published one lap ago
+                return false;
+            } else {
+                // Another producer claimed this position first
+                position = tail.get();
+            }
+        }
+
+        int index = (int) position & mask;
+        timestamps[index] = timestamp;
+        types[index] = type;
+        userIds[index] = userId;
+        usernames[index] = username;
+        addresses[index] = address;
+        details[index] = detail;
+        // Releases the fields above to the consumer
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Hands up to {@code limit} events to the handler in publication order. Must only be called from
+     * one thread. If the handler throws, the event it was given stays in the buffer and comes first
+     * on the next call.
+     *
+     * @return the number of events handled
+     */
+    public int drain(EventHandler handler, int limit) {
+        long position = head;
+        int drained = 0;
+        while (drained < limit) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+            handler.onEvent(timestamps[index], types[index], userIds[index], usernames[index], addresses[index],
+                    details[index]);
+            // Drop the references so the buffer does not keep request data alive
+            usernames[index] = null;
+            addresses[index] = null;
+            details[index] = null;
+            sequences.lazySet(index, position + mask + 1);
+            position++;
+            drained++;
+            head = position;
+        }
+        return drained;
+    }
+
+    // Events published but not drained yet; approximate while producers are active
+    public long backlog() {
+        return Math.max(0, tail.get() - head);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.emailapp.config;
+
+import com.example.emailapp.model.User;
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+/**
+ * Local JCache (Caffeine) cache manager backing Hibernate's second-level cache. Every region is
+ * created here with an explicit size and lifetime; Hibernate is configured to fail on a region
+ * that was not declared rather than silently creating an unbounded one.
+ */
+@Configuration
+public class CacheConfig {
+
+    public static final String USER_QUERIES_REGION = "user-queries";
+
+    private static final String USER_REGION = User.class.getName();
+    private static final String USER_NATURAL_ID_REGION = USER_REGION + "##NaturalId";
+    private static final String DEFAULT_QUERY_RESULTS_REGION = "default-query-results-region";
+    private static final String UPDATE_TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(@Value("${app.cache.users.max-entries:100000}") long maxEntries,
+                                              @Value("${app.cache.users.ttl-seconds:3600}") long ttlSeconds) {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(provider.getDefaultURI(), getClass().getClassLoader());
+
+        // The lifetime is only a backstop; changes are evicted through the cache_invalidations table
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        cacheManager.createCache(USER_REGION, bounded(maxEntries, ttl));
+        cacheManager.createCache(USER_NATURAL_ID_REGION, bounded(maxEntries, ttl));
+        cacheManager.createCache(USER_QUERIES_REGION, bounded(maxEntries, ttl));
+        cacheManager.createCache(DEFAULT_QUERY_RESULTS_REGION, bounded(1000, ttl));
+        // Hibernate requires update timestamps to outlive every cached query result: never evict them
+        cacheManager.createCache(UPDATE_TIMESTAMPS_REGION, new CaffeineConfiguration<>());
+
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer secondLevelCacheManager(CacheManager hibernateCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+
+    private static CaffeineConfiguration<Object, Object> bounded(long maxEntries, Duration ttl) {
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        configuration.setMaximumSize(OptionalLong.of(maxEntries));
+        configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        return configuration;
+    }
+}
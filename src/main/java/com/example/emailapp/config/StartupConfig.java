@@ -0,0 +1,21 @@
+package com.example.emailapp.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.web.bind.annotation.RestController;
+
+@Configuration
+public class StartupConfig {
+
+    // With spring.main.lazy-initialization=true (prod profile) only beans nothing asks for at startup
+    // are deferred. Controllers stay eager so the services and repositories behind them are ready
+    // before the first request instead of being built while it waits; @Scheduled beans are already
+    // kept eager by Spring Boot.
+    @Bean
+    static LazyInitializationExcludeFilter eagerControllers() {
+        return (beanName, beanDefinition, beanType) ->
+                AnnotatedElementUtils.hasAnnotation(beanType, RestController.class);
+    }
+}
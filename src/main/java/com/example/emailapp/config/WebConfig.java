@@ -0,0 +1,25 @@
+package com.example.emailapp.config;
+
+import com.example.emailapp.serialization.PayloadFormats;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final PayloadFormats payloadFormats;
+
+    public WebConfig(PayloadFormats payloadFormats) {
+        this.payloadFormats = payloadFormats;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // Appended after the JSON converter, so JSON stays the default when Accept allows both
+        converters.add(new MappingJackson2CborHttpMessageConverter(payloadFormats.getCborObjectMapper()));
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.emailapp.controller;
+
+import com.example.emailapp.audit.AuditEvent;
+import com.example.emailapp.audit.AuditLog;
+import com.example.emailapp.dto.ApiResponse;
+import com.example.emailapp.dto.QueryStatsResponse;
+import com.example.emailapp.exception.ResourceNotFoundException;
+import com.example.emailapp.model.User;
+import com.example.emailapp.monitoring.SqlStatementObserver;
+import com.example.emailapp.repository.UserRepository;
+import com.example.emailapp.security.RefreshTokenService;
+import com.example.emailapp.security.TokenRevocationService;
+import com.example.emailapp.sharding.ShardDirectory;
+import com.example.emailapp.sharding.ShardRebalancer;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/admin")
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminController {
+
+    private final UserRepository userRepository;
+    private final TokenRevocationService revocationService;
+    private final RefreshTokenService refreshTokenService;
+    private final SqlStatementObserver sqlStatementObserver;
+    private final ShardDirectory shardDirectory;
+    private final ShardRebalancer shardRebalancer;
+    private final AuditLog auditLog;
+
+    public AdminController(UserRepository userRepository,
+                           TokenRevocationService revocationService,
+                           RefreshTokenService refreshTokenService,
+                           SqlStatementObserver sqlStatementObserver,
+                           ShardDirectory shardDirectory,
+                           ShardRebalancer shardRebalancer,
+                           AuditLog auditLog) {
+        this.userRepository = userRepository;
+        this.revocationService = revocationService;
+        this.refreshTokenService = refreshTokenService;
+        this.sqlStatementObserver = sqlStatementObserver;
+        this.shardDirectory = shardDirectory;
+        this.shardRebalancer = shardRebalancer;
+        this.auditLog = auditLog;
+    }
+
+    @PostMapping("/users/{username}/revoke-tokens")
+    public ResponseEntity<ApiResponse> revokeAllTokens(@PathVariable String username) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
+
+        revocationService.revokeAllForUser(username);
+        refreshTokenService.revokeAllForUser(user.getId());
+
+        return ResponseEntity.ok(new ApiResponse(true, "All tokens of " + username + " have been revoked"));
+    }
+
+    @GetMapping("/users/{username}/shard")
+    public ResponseEntity<ShardDirectory.Placement> getShard(@PathVariable String username) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
+
+        return ResponseEntity.ok(shardDirectory.placementOf(user.getId()));
+    }
+
+    // Blocks until the mailbox has been copied; the user's requests get 503 in the meantime
+    @PostMapping("/users/{username}/shard")
+    public ResponseEntity<ApiResponse> moveMailbox(@PathVariable String username, @RequestParam String target) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResourceNotFoundException("User", "username", username));
+
+        ShardRebalancer.MoveResult result = shardRebalancer.move(user.getId(), target);
+
+        return ResponseEntity.ok(new ApiResponse(true,
+                "Mailbox of " + username + " moved from " + result.from() + " to " + result.to(), result));
+    }
+
+    @GetMapping("/queries")
+    public ResponseEntity<List<QueryStatsResponse>> getQueryStats(
+            @RequestParam(defaultValue = "total") String order,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(sqlStatementObserver.top(order, Math.max(1, Math.min(limit, 500))));
+    }
+
+    @DeleteMapping("/queries")
+    public ResponseEntity<ApiResponse> resetQueryStats() {
+        sqlStatementObserver.reset();
+        return ResponseEntity.ok(new ApiResponse(true, "Query statistics have been reset"));
+    }
+
+    // Events written by this node; the last day unless a range is given
+    @GetMapping("/audit")
+    public ResponseEntity<List<AuditEvent>> getAuditEvents(
+            @RequestParam(required = false) String username,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "100") int limit) {
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(1, ChronoUnit.DAYS);
+        return ResponseEntity.ok(auditLog.query(username, start, end, Math.max(1, Math.min(limit, 10000))));
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.emailapp.controller;
+
+import com.example.emailapp.dto.ApiResponse;
+import com.example.emailapp.dto.AttachmentResponse;
+import com.example.emailapp.exception.BadRequestException;
+import com.example.emailapp.exception.ResourceNotFoundException;
+import com.example.emailapp.model.Attachment;
+import com.example.emailapp.model.Email;
+import com.example.emailapp.model.User;
+import com.example.emailapp.repository.AttachmentRepository;
+import com.example.emailapp.repository.EmailRepository;
+import com.example.emailapp.service.AttachmentService;
+import com.example.emailapp.service.IdempotencyService;
+import com.example.emailapp.storage.AttachmentStore;
+import com.example.emailapp.storage.StagedContent;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+@RestController
+@RequestMapping("/api/emails/{emailId}/attachments")
+public class AttachmentController {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final EmailRepository emailRepository;
+    private final AttachmentRepository attachmentRepository;
+    private final AttachmentService attachmentService;
+    private final AttachmentStore attachmentStore;
+    private final IdempotencyService idempotencyService;
+
+    public AttachmentController(EmailRepository emailRepository,
+                                AttachmentRepository attachmentRepository,
+                                AttachmentService attachmentService,
+                                AttachmentStore attachmentStore,
+                                IdempotencyService idempotencyService) {
+        this.emailRepository = emailRepository;
+        this.attachmentRepository = attachmentRepository;
+        this.attachmentService = attachmentService;
+        this.attachmentStore = attachmentStore;
+        this.idempotencyService = idempotencyService;
+    }
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<AttachmentResponse> uploadAttachment(
+            @PathVariable Long emailId,
+            @RequestParam("file") MultipartFile file,
+            @RequestHeader(value = IdempotencyService.KEY_HEADER, required = false) String idempotencyKey,
+            Authentication authentication) throws IOException {
+        User user = (User) authentication.getPrincipal();
+
+        // Staged before the idempotency key is reserved, so a slow upload holds neither a connection
+        // nor the key's row. Multipart parts are spooled to disk by the container, so this stream
+        // never holds the whole file.
+        StagedContent staged;
+        try (InputStream content = file.getInputStream()) {
+            staged = attachmentService.stage(content);
+        }
+
+        // The upload is identified by its metadata; hashing the content would read the spooled file twice
+        List<Object> request = Arrays.asList(emailId, file.getOriginalFilename(), file.getContentType(), file.getSize());
+        try {
+            return idempotencyService.execute(user.getId(), idempotencyKey, "uploadAttachment", request,
+                    AttachmentResponse.class, () -> saveAttachment(emailId, file, staged, user));
+        } finally {
+            attachmentService.discard(staged);
+        }
+    }
+
+    private ResponseEntity<AttachmentResponse> saveAttachment(Long emailId, MultipartFile file, StagedContent staged,
+                                                              User user) throws IOException {
+        Email email = emailRepository.findById(emailId)
+                .orElseThrow(() -> new ResourceNotFoundException("Email", "id", emailId));
+
+        // Check if the email belongs to the authenticated user
+        if (!email.getUser().getId().equals(user.getId())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        if (file.isEmpty()) {
+            throw new BadRequestException("Attachment file is required");
+        }
+
+        Attachment attachment = attachmentService.addAttachment(email, file.getOriginalFilename(),
+                file.getContentType(), staged);
+
+        return new ResponseEntity<>(attachmentService.mapToAttachmentResponse(attachment), HttpStatus.CREATED);
+    }
+
+    @GetMapping
+    public ResponseEntity<List<AttachmentResponse>> getAttachments(@PathVariable Long emailId, Authentication authentication) {
+        User user = (User) authentication.getPrincipal();
+
+        Email email = emailRepository.findById(emailId)
+                .orElseThrow(() -> new ResourceNotFoundException("Email", "id", emailId));
+
+        // Check if the email belongs to the authenticated user
+        if (!email.getUser().getId().equals(user.getId())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        List<AttachmentResponse> attachments = attachmentService.getAttachments(emailId).stream()
+                .map(attachmentService::mapToAttachmentResponse)
+                .collect(Collectors.toList());
+
+        return ResponseEntity.ok(attachments);
+    }
+
+    @GetMapping("/{attachmentId}")
+    public ResponseEntity<Resource> downloadAttachment(
+            @PathVariable Long emailId,
+            @PathVariable Long attachmentId,
+            @RequestHeader HttpHeaders requestHeaders,
+            HttpServletRequest request,
+            Authentication authentication) {
+        User user = (User) authentication.getPrincipal();
+
+        Attachment attachment = findOwnedAttachment(emailId, attachmentId, user);
+        if (attachment == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(contentType(attachment));
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename(attachment.getFileName(), StandardCharsets.UTF_8)
+                .build());
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setETag("\"" + attachment.getContentHash() + "\"");
+
+        // Full downloads are handed to the container's sendfile support (FileChannel.transferTo);
+        // range requests fall back to Spring's Resource region handling
+        Optional<Path> localPath = attachmentStore.localPath(attachment.getContentHash());
+        if (requestHeaders.getRange().isEmpty()
+                && localPath.isPresent()
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, localPath.get().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, attachment.getSize());
+            headers.setContentLength(attachment.getSize());
+            return ResponseEntity.ok().headers(headers).build();
+        }
+
+        Resource resource = attachmentStore.load(attachment.getContentHash());
+        if (!resource.exists()) {
+            throw new ResourceNotFoundException("Attachment", "id", attachmentId);
+        }
+
+        return ResponseEntity.ok().headers(headers).body(resource);
+    }
+
+    @DeleteMapping("/{attachmentId}")
+    public ResponseEntity<ApiResponse> deleteAttachment(
+            @PathVariable Long emailId,
+            @PathVariable Long attachmentId,
+            Authentication authentication) {
+        User user = (User) authentication.getPrincipal();
+
+        Attachment attachment = findOwnedAttachment(emailId, attachmentId, user);
+        if (attachment == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        attachmentService.deleteAttachment(attachment);
+
+        return ResponseEntity.ok(new ApiResponse(true, "Attachment deleted successfully"));
+    }
+
+    // Attachments uploaded before content types were validated may have kept a malformed one
+    private static MediaType contentType(Attachment attachment) {
+        try {
+            return MediaType.parseMediaType(attachment.getContentType());
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
+    // Returns null when the attachment exists but belongs to someone else's email
+    private Attachment findOwnedAttachment(Long emailId, Long attachmentId, User user) {
+        Attachment attachment = attachmentRepository.findById(attachmentId)
+                .filter(a -> a.getEmail().getId().equals(emailId))
+                .orElseThrow(() -> new ResourceNotFoundException("Attachment", "id", attachmentId));
+
+        Email email = emailRepository.findById(emailId)
+                .orElseThrow(() -> new ResourceNotFoundException("Email", "id", emailId));
+
+        return email.getUser().getId().equals(user.getId()) ? attachment : null;
+    }
+}
@@ -1,21 +1,39 @@
 package com.example.emailapp.controller;
 
+import com.example.emailapp.audit.AuditEventType;
+import com.example.emailapp.audit.AuditLog;
 import com.example.emailapp.dto.ApiResponse;
+import com.example.emailapp.dto.AvailabilityResponse;
 import com.example.emailapp.dto.JwtAuthResponse;
 import com.example.emailapp.dto.LoginRequest;
+import com.example.emailapp.dto.RefreshTokenRequest;
 import com.example.emailapp.dto.RegisterRequest;
 import com.example.emailapp.exception.BadRequestException;
+import com.example.emailapp.exception.ConflictException;
+import com.example.emailapp.exception.UnauthorizedException;
 import com.example.emailapp.model.User;
 import com.example.emailapp.repository.UserRepository;
 import com.example.emailapp.security.JwtTokenProvider;
+import com.example.emailapp.security.RefreshTokenService;
+import com.example.emailapp.security.TokenRevocationService;
+import com.example.emailapp.service.UserAvailabilityService;
+import com.example.emailapp.sharding.ShardDirectory;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -26,32 +44,58 @@ public class AuthController {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtTokenProvider tokenProvider;
+    private final TokenRevocationService revocationService;
+    private final RefreshTokenService refreshTokenService;
+    private final ShardDirectory shardDirectory;
+    private final UserAvailabilityService userAvailabilityService;
+    private final AuditLog auditLog;
 
     public AuthController(AuthenticationManager authenticationManager,
                          UserRepository userRepository,
                          PasswordEncoder passwordEncoder,
-                         JwtTokenProvider tokenProvider) {
+                         JwtTokenProvider tokenProvider,
+                         TokenRevocationService revocationService,
+                         RefreshTokenService refreshTokenService,
+                         ShardDirectory shardDirectory,
+                         UserAvailabilityService userAvailabilityService,
+                         AuditLog auditLog) {
         this.authenticationManager = authenticationManager;
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.tokenProvider = tokenProvider;
+        this.revocationService = revocationService;
+        this.refreshTokenService = refreshTokenService;
+        this.shardDirectory = shardDirectory;
+        this.userAvailabilityService = userAvailabilityService;
+        this.auditLog = auditLog;
     }
 
     @PostMapping("/login")
-    public ResponseEntity<JwtAuthResponse> authenticateUser(@Valid @RequestBody LoginRequest loginRequest) {
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(
-                        loginRequest.getUsername(),
-                        loginRequest.getPassword()
-                )
-        );
+    public ResponseEntity<JwtAuthResponse> authenticateUser(@Valid @RequestBody LoginRequest loginRequest,
+                                                            HttpServletRequest request) {
+        Authentication authentication;
+        try {
+            authentication = authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(
+                            loginRequest.getUsername(),
+                            loginRequest.getPassword()
+                    )
+            );
+        } catch (AuthenticationException e) {
+            auditLog.record(AuditEventType.LOGIN_FAILED, AuditLog.UNKNOWN_USER, loginRequest.getUsername(),
+                    request.getRemoteAddr(), e.getClass().getSimpleName());
+            throw e;
+        }
 
         SecurityContextHolder.getContext().setAuthentication(authentication);
         User user = (User) authentication.getPrincipal();
+        auditLog.record(AuditEventType.LOGIN, user.getId(), user.getUsername(), request.getRemoteAddr(), null);
         String token = tokenProvider.generateToken(authentication);
+        String refreshToken = refreshTokenService.issue(user);
         
         JwtAuthResponse response = new JwtAuthResponse(
                 token, 
+                refreshToken,
                 user.getId(), 
                 user.getUsername(),
                 user.getEmail(),
@@ -61,18 +105,28 @@ public class AuthController {
         return ResponseEntity.ok(response);
     }
 
-    @PostMapping("/register")
-    public ResponseEntity<ApiResponse> registerUser(@Valid @RequestBody RegisterRequest registerRequest) {
-        // Check if username already exists
-        if (userRepository.existsByUsername(registerRequest.getUsername())) {
-            throw new BadRequestException("Username is already taken!");
-        }
-
-        // Check if email already exists
-        if (userRepository.existsByEmail(registerRequest.getEmail())) {
-            throw new BadRequestException("Email is already taken!");
-        }
+    // Exchanges a refresh token for a new access token; no password check, so no BCrypt cost
+    @PostMapping("/refresh")
+    public ResponseEntity<JwtAuthResponse> refreshToken(@Valid @RequestBody RefreshTokenRequest refreshRequest) {
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate(refreshRequest.getRefreshToken());
+        User user = rotation.user();
+        
+        JwtAuthResponse response = new JwtAuthResponse(
+                tokenProvider.generateToken(user.getUsername()),
+                rotation.refreshToken(),
+                user.getId(),
+                user.getUsername(),
+                user.getEmail(),
+                user.getName()
+        );
+        
+        return ResponseEntity.ok(response);
+    }
 
+    // One insert; the unique constraints on users reject a taken username or email, even under a race
+    @PostMapping("/register")
+    public ResponseEntity<ApiResponse> registerUser(@Valid @RequestBody RegisterRequest registerRequest,
+                                                    HttpServletRequest request) {
         // Create new user's account
         User user = new User();
         user.setName(registerRequest.getName());
@@ -80,11 +134,66 @@ public class AuthController {
         user.setEmail(registerRequest.getEmail());
         user.setPassword(passwordEncoder.encode(registerRequest.getPassword()));
 
-        userRepository.save(user);
+        try {
+            userRepository.save(user);
+        } catch (DataIntegrityViolationException e) {
+            throw ConflictException.forUserInsert(e);
+        }
+        userAvailabilityService.recordRegistered(user);
+        auditLog.record(AuditEventType.REGISTERED, user.getId(), user.getUsername(), request.getRemoteAddr(), null);
+        // Without an entry the mailbox would stay on the main database
+        shardDirectory.assign(user.getId());
 
         return new ResponseEntity<>(new ApiResponse(true, "User registered successfully"), HttpStatus.CREATED);
     }
 
+    // For sign-up forms as the user types; advisory only, registration itself is the real check
+    @GetMapping("/availability")
+    public ResponseEntity<AvailabilityResponse> checkAvailability(
+            @RequestParam(value = "username", required = false) String username,
+            @RequestParam(value = "email", required = false) String email) {
+        if (!StringUtils.hasText(username) && !StringUtils.hasText(email)) {
+            throw new BadRequestException("A username or email is required");
+        }
+
+        return ResponseEntity.ok(AvailabilityResponse.builder()
+                .usernameAvailable(StringUtils.hasText(username) ? userAvailabilityService.isUsernameAvailable(username) : null)
+                .emailAvailable(StringUtils.hasText(email) ? userAvailabilityService.isEmailAvailable(email) : null)
+                .build());
+    }
+
+    @PostMapping("/logout")
+    public ResponseEntity<ApiResponse> logout(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+            @RequestBody(required = false) RefreshTokenRequest refreshRequest) {
+        if (!StringUtils.hasText(authorization) || !authorization.startsWith("Bearer ")) {
+            throw new BadRequestException("A bearer token is required to log out");
+        }
+
+        Claims claims;
+        try {
+            claims = tokenProvider.parseToken(authorization.substring(7));
+        } catch (ExpiredJwtException e) {
+            // An expired access token is refused anyway, so only the refresh token is left to revoke
+            claims = null;
+        } catch (JwtException | IllegalArgumentException e) {
+            throw new UnauthorizedException("Invalid access token");
+        }
+
+        if (claims != null && claims.getId() == null) {
+            // Tokens issued before token ids existed can only be revoked per user
+            revocationService.revokeAllForUser(claims.getSubject());
+        } else if (claims != null) {
+            revocationService.revokeToken(claims.getId(), claims.getExpiration());
+        }
+        
+        if (refreshRequest != null && StringUtils.hasText(refreshRequest.getRefreshToken())) {
+            refreshTokenService.revoke(refreshRequest.getRefreshToken());
+        }
+
+        return ResponseEntity.ok(new ApiResponse(true, "Logged out successfully"));
+    }
+
     @GetMapping("/current-user")
     public ResponseEntity<User> getCurrentUser(Authentication authentication) {
         User user = (User) authentication.getPrincipal();
@@ -1,73 +1,177 @@
 package com.example.emailapp.controller;
 
+import com.example.emailapp.audit.AuditEventType;
+import com.example.emailapp.audit.AuditLog;
 import com.example.emailapp.dto.ApiResponse;
 import com.example.emailapp.dto.EmailRequest;
 import com.example.emailapp.dto.EmailResponse;
+import com.example.emailapp.dto.MailboxUsageResponse;
+import com.example.emailapp.dto.RecipientSuggestion;
+import com.example.emailapp.dto.ThreadPage;
+import com.example.emailapp.exception.BadRequestException;
 import com.example.emailapp.exception.ResourceNotFoundException;
 import com.example.emailapp.model.Email;
+import com.example.emailapp.model.RetentionPolicy;
 import com.example.emailapp.model.User;
+import com.example.emailapp.repository.EmailJdbcRepository;
 import com.example.emailapp.repository.EmailRepository;
+import com.example.emailapp.repository.RetentionPolicyRepository;
+import com.example.emailapp.serialization.EmailFieldSet;
+import com.example.emailapp.serialization.EmailJsonWriter;
+import com.example.emailapp.serialization.PayloadFormats;
+import com.example.emailapp.service.AttachmentService;
+import com.example.emailapp.service.EmailFlagBuffer;
+import com.example.emailapp.service.IdempotencyService;
+import com.example.emailapp.service.MailboxUsageService;
+import com.example.emailapp.service.OutboundMailService;
+import com.example.emailapp.service.RecipientSuggestionService;
+import com.example.emailapp.service.ThreadService;
+import com.example.emailapp.sharding.ShardDirectory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/emails")
 public class EmailController {
 
     private final EmailRepository emailRepository;
+    private final EmailJdbcRepository emailJdbcRepository;
+    private final RetentionPolicyRepository retentionPolicyRepository;
+    private final AttachmentService attachmentService;
+    private final PayloadFormats payloadFormats;
+    private final EmailFlagBuffer emailFlagBuffer;
+    private final ShardDirectory shardDirectory;
+    private final OutboundMailService outboundMailService;
+    private final IdempotencyService idempotencyService;
+    private final MailboxUsageService mailboxUsageService;
+    private final RecipientSuggestionService recipientSuggestionService;
+    private final ThreadService threadService;
+    private final AuditLog auditLog;
 
-    public EmailController(EmailRepository emailRepository) {
+    @Value("${app.purge.trash-retention-days:30}")
+    private int defaultRetentionDays;
+
+    public EmailController(EmailRepository emailRepository,
+                           EmailJdbcRepository emailJdbcRepository,
+                           RetentionPolicyRepository retentionPolicyRepository,
+                           AttachmentService attachmentService,
+                           PayloadFormats payloadFormats,
+                           EmailFlagBuffer emailFlagBuffer,
+                           ShardDirectory shardDirectory,
+                           OutboundMailService outboundMailService,
+                           IdempotencyService idempotencyService,
+                           MailboxUsageService mailboxUsageService,
+                           RecipientSuggestionService recipientSuggestionService,
+                           ThreadService threadService,
+                           AuditLog auditLog) {
         this.emailRepository = emailRepository;
+        this.emailJdbcRepository = emailJdbcRepository;
+        this.retentionPolicyRepository = retentionPolicyRepository;
+        this.attachmentService = attachmentService;
+        this.payloadFormats = payloadFormats;
+        this.emailFlagBuffer = emailFlagBuffer;
+        this.shardDirectory = shardDirectory;
+        this.outboundMailService = outboundMailService;
+        this.idempotencyService = idempotencyService;
+        this.mailboxUsageService = mailboxUsageService;
+        this.recipientSuggestionService = recipientSuggestionService;
+        this.threadService = threadService;
+        this.auditLog = auditLog;
     }
 
     @GetMapping
-    public ResponseEntity<List<EmailResponse>> getUserEmails(
+    public void getUserEmails(
             @RequestParam(value = "status", defaultValue = "inbox") String status,
-            Authentication authentication) {
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            Authentication authentication,
+            HttpServletResponse response) throws IOException {
         User user = (User) authentication.getPrincipal();
+        EmailFieldSet fieldSet = EmailFieldSet.parse(fields);
+        emailFlagBuffer.flushUser(user.getId());
+        // Once streaming starts the status can no longer change, so a frozen mailbox is reported first
+        shardDirectory.requireAvailable(user.getId());
         
-        List<Email> emails;
-        if (status.equals("starred")) {
-            emails = emailRepository.findByUserIdAndStarredTrue(user.getId());
-        } else {
-            emails = emailRepository.findByUserIdAndStatus(user.getId(), status);
+        // Rows are written to the response as the cursor yields them, without building a list
+        MediaType format = payloadFormats.negotiate(accept);
+        response.setContentType(format.toString());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        try (JsonGenerator generator = payloadFormats.createGenerator(format, response.getOutputStream())) {
+            EmailJsonWriter writer = new EmailJsonWriter(generator, fieldSet);
+            writer.writeStartList();
+            if (status.equals("starred")) {
+                emailJdbcRepository.streamByUserIdAndStarredTrue(user.getId(), fieldSet, writer);
+            } else {
+                emailJdbcRepository.streamByUserIdAndStatus(user.getId(), status, fieldSet, writer);
+            }
+            writer.writeEndList();
         }
-        
-        List<EmailResponse> emailResponses = emails.stream()
-                .map(this::mapToEmailResponse)
-                .collect(Collectors.toList());
-                
-        return ResponseEntity.ok(emailResponses);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<EmailResponse> getEmailById(@PathVariable Long id, Authentication authentication) {
+    public ResponseEntity<byte[]> getEmailById(
+            @PathVariable Long id,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            Authentication authentication) throws IOException {
         User user = (User) authentication.getPrincipal();
+        EmailFieldSet fieldSet = EmailFieldSet.parse(fields);
+        emailFlagBuffer.flushUser(user.getId());
         
-        Email email = emailRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Email", "id", id));
+        MediaType format = payloadFormats.negotiate(accept);
+        ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+        EmailJdbcRepository.Lookup lookup;
+        try (JsonGenerator generator = payloadFormats.createGenerator(format, body)) {
+            lookup = emailJdbcRepository.writeById(id, user.getId(), fieldSet, new EmailJsonWriter(generator, fieldSet));
+        }
+        
+        if (lookup == EmailJdbcRepository.Lookup.NOT_FOUND) {
+            throw new ResourceNotFoundException("Email", "id", id);
+        }
         
         // Check if the email belongs to the authenticated user
-        if (!email.getUser().getId().equals(user.getId())) {
+        if (lookup == EmailJdbcRepository.Lookup.FORBIDDEN) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
         
-        return ResponseEntity.ok(mapToEmailResponse(email));
+        return ResponseEntity.ok()
+                .contentType(format)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .body(body.toByteArray());
     }
 
     @PostMapping
+    @Transactional
     public ResponseEntity<EmailResponse> createEmail(
             @Valid @RequestBody EmailRequest emailRequest,
-            Authentication authentication) {
+            @RequestHeader(value = IdempotencyService.KEY_HEADER, required = false) String idempotencyKey,
+            Authentication authentication) throws IOException {
         User user = (User) authentication.getPrincipal();
         
+        // A retry with the same key gets the first response back instead of a second email
+        return idempotencyService.execute(user.getId(), idempotencyKey, "createEmail", emailRequest,
+                EmailResponse.class, () -> saveEmail(emailRequest, user));
+    }
+
+    private ResponseEntity<EmailResponse> saveEmail(EmailRequest emailRequest, User user) {
+        // Concurrent sends of this user wait here until this transaction ends
+        mailboxUsageService.checkQuota(user.getId(), emailRequest.getSubject(), emailRequest.getBody());
+        
         Email email = new Email();
         email.setUser(user);
         email.setFromEmail(user.getEmail());
@@ -79,8 +183,19 @@ public class EmailController {
         email.setRead(true);
         email.setStarred(false);
         email.setCreatedAt(LocalDateTime.now());
+        email.setThreadId(threadService.assignThread(user.getId(), email.getFromEmail(), email.getToEmail(),
+                email.getSubject(), email.getCreatedAt()));
         
+        // Mail for external recipients is queued in the same transaction and delivered over SMTP
+        boolean outbound = outboundMailService.isOutbound(email.getToEmail());
+        if (outbound) {
+            email.setDeliveryStatus(OutboundMailService.QUEUED);
+        }
         Email savedEmail = emailRepository.save(email);
+        if (outbound) {
+            outboundMailService.enqueue(savedEmail);
+        }
+        recipientSuggestionService.recordSent(user, savedEmail.getToEmail());
         
         return new ResponseEntity<>(mapToEmailResponse(savedEmail), HttpStatus.CREATED);
     }
@@ -91,6 +206,8 @@ public class EmailController {
             @RequestParam String status,
             Authentication authentication) {
         User user = (User) authentication.getPrincipal();
+        // Saving the entity writes every column, so buffered flags must reach the row first
+        emailFlagBuffer.flushUser(user.getId());
         
         Email email = emailRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Email", "id", id));
@@ -100,6 +217,11 @@ public class EmailController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
         
+        if (status.equals("trash") && !"trash".equals(email.getStatus())) {
+            email.setTrashedAt(LocalDateTime.now());
+        } else if (!status.equals("trash")) {
+            email.setTrashedAt(null);
+        }
         email.setStatus(status);
         Email updatedEmail = emailRepository.save(email);
         
@@ -113,6 +235,14 @@ public class EmailController {
             Authentication authentication) {
         User user = (User) authentication.getPrincipal();
         
+        if (emailFlagBuffer.isEnabled()) {
+            if (!isOwner(id, user)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+            emailFlagBuffer.setRead(user.getId(), id, read);
+            return ResponseEntity.accepted().build();
+        }
+        
         Email email = emailRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Email", "id", id));
         
@@ -134,6 +264,14 @@ public class EmailController {
             Authentication authentication) {
         User user = (User) authentication.getPrincipal();
         
+        if (emailFlagBuffer.isEnabled()) {
+            if (!isOwner(id, user)) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+            emailFlagBuffer.setStarred(user.getId(), id, starred);
+            return ResponseEntity.accepted().build();
+        }
+        
         Email email = emailRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Email", "id", id));
         
@@ -149,7 +287,9 @@ public class EmailController {
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<ApiResponse> deleteEmail(@PathVariable Long id, Authentication authentication) {
+    @Transactional
+    public ResponseEntity<ApiResponse> deleteEmail(@PathVariable Long id, Authentication authentication,
+                                                   HttpServletRequest request) {
         User user = (User) authentication.getPrincipal();
         
         Email email = emailRepository.findById(id)
@@ -160,11 +300,112 @@ public class EmailController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
         
+        attachmentService.deleteForEmails(List.of(email.getId()));
         emailRepository.delete(email);
+        auditLog.record(AuditEventType.EMAIL_DELETED, user.getId(), user.getUsername(), request.getRemoteAddr(),
+                "emailId=" + id);
         
         return ResponseEntity.ok(new ApiResponse(true, "Email deleted successfully"));
     }
 
+    @GetMapping("/recipients")
+    public ResponseEntity<List<RecipientSuggestion>> suggestRecipients(
+            @RequestParam(value = "prefix", defaultValue = "") String prefix,
+            @RequestParam(value = "limit", defaultValue = "10") int limit,
+            Authentication authentication) {
+        User user = (User) authentication.getPrincipal();
+        
+        if (limit < 1 || limit > 50) {
+            throw new BadRequestException("Limit must be between 1 and 50");
+        }
+        
+        return ResponseEntity.ok(recipientSuggestionService.suggest(user, prefix, limit));
+    }
+
+    @GetMapping("/threads")
+    public ResponseEntity<ThreadPage> getThreads(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") int limit,
+            Authentication authentication) {
+        User user = (User) authentication.getPrincipal();
+        
+        if (limit < 1 || limit > 200) {
+            throw new BadRequestException("Limit must be between 1 and 200");
+        }
+        // Unread counts only see read flags that have reached the rows
+        emailFlagBuffer.flushUser(user.getId());
+        
+        return ResponseEntity.ok(threadService.getThreads(user.getId(), cursor, limit));
+    }
+
+    @GetMapping("/threads/{threadId}")
+    public void getThreadEmails(
+            @PathVariable Long threadId,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            Authentication authentication,
+            HttpServletResponse response) throws IOException {
+        User user = (User) authentication.getPrincipal();
+        EmailFieldSet fieldSet = EmailFieldSet.parse(fields);
+        emailFlagBuffer.flushUser(user.getId());
+        shardDirectory.requireAvailable(user.getId());
+        
+        // A thread of another user reads as an empty one
+        MediaType format = payloadFormats.negotiate(accept);
+        response.setContentType(format.toString());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        try (JsonGenerator generator = payloadFormats.createGenerator(format, response.getOutputStream())) {
+            EmailJsonWriter writer = new EmailJsonWriter(generator, fieldSet);
+            writer.writeStartList();
+            emailJdbcRepository.streamByUserIdAndThreadId(user.getId(), threadId, fieldSet, writer);
+            writer.writeEndList();
+        }
+    }
+
+    @GetMapping("/usage")
+    public ResponseEntity<MailboxUsageResponse> getUsage(Authentication authentication) {
+        User user = (User) authentication.getPrincipal();
+        
+        return ResponseEntity.ok(mailboxUsageService.getUsage(user.getId()));
+    }
+
+    @GetMapping("/retention")
+    public ResponseEntity<RetentionPolicy> getRetentionPolicy(Authentication authentication) {
+        User user = (User) authentication.getPrincipal();
+        
+        RetentionPolicy policy = retentionPolicyRepository.findById(user.getId())
+                .orElseGet(() -> RetentionPolicy.builder()
+                        .userId(user.getId())
+                        .trashRetentionDays(defaultRetentionDays)
+                        .build());
+        
+        return ResponseEntity.ok(policy);
+    }
+
+    @PutMapping("/retention")
+    public ResponseEntity<RetentionPolicy> updateRetentionPolicy(
+            @RequestParam int trashRetentionDays,
+            Authentication authentication) {
+        User user = (User) authentication.getPrincipal();
+        
+        if (trashRetentionDays < 1) {
+            throw new BadRequestException("Trash retention must be at least 1 day");
+        }
+        
+        RetentionPolicy policy = retentionPolicyRepository.findById(user.getId())
+                .orElseGet(() -> RetentionPolicy.builder().userId(user.getId()).build());
+        policy.setTrashRetentionDays(trashRetentionDays);
+        
+        return ResponseEntity.ok(retentionPolicyRepository.save(policy));
+    }
+
+    // Same answers as a flag update without write-behind, from a lookup that does not load the email
+    private boolean isOwner(Long id, User user) {
+        Long ownerId = emailRepository.findUserIdById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Email", "id", id));
+        return ownerId.equals(user.getId());
+    }
+
     private EmailResponse mapToEmailResponse(Email email) {
         return EmailResponse.builder()
                 .id(email.getId())
@@ -178,6 +419,7 @@ public class EmailController {
                 .read(email.isRead())
                 .starred(email.isStarred())
                 .createdAt(email.getCreatedAt())
+                .deliveryStatus(email.getDeliveryStatus())
                 .build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.example.emailapp.dto;
+
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class AttachmentResponse {
+    private Long id;
+    private Long emailId;
+    private String fileName;
+    private String contentType;
+    private long size;
+    private String contentHash;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,16 @@
+package com.example.emailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class AvailabilityResponse {
+    // Null when the value was not asked about
+    private Boolean usernameAvailable;
+    private Boolean emailAvailable;
+}
@@ -23,4 +23,5 @@ public class EmailResponse {
     private boolean read;
     private boolean starred;
     private LocalDateTime createdAt;
+    private String deliveryStatus;
 }
\ No newline at end of file
@@ -12,13 +12,15 @@ import lombok.NoArgsConstructor;
 public class JwtAuthResponse {
     private String token;
     private String tokenType = "Bearer";
+    private String refreshToken;
     private Long userId;
     private String username;
     private String email;
     private String name;
     
-    public JwtAuthResponse(String token, Long userId, String username, String email, String name) {
+    public JwtAuthResponse(String token, String refreshToken, Long userId, String username, String email, String name) {
         this.token = token;
+        this.refreshToken = refreshToken;
         this.userId = userId;
         this.username = username;
         this.email = email;
@@ -0,0 +1,17 @@
+package com.example.emailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class MailboxUsageResponse {
+    private long messageCount;
+    private long byteCount;
+    private long maxMessages;
+    private long maxBytes;
+}
@@ -0,0 +1,19 @@
+package com.example.emailapp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class QueryStatsResponse {
+    private String sql;
+    private long count;
+    private long errors;
+    private double totalMillis;
+    private double meanMillis;
+    private double maxMillis;
+}
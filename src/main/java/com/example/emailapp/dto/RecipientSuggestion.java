@@ -0,0 +1,18 @@
+package com.example.emailapp.dto;
+
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RecipientSuggestion {
+    private String address;
+    private int count;
+    private LocalDateTime lastUsedAt;
+}
@@ -0,0 +1,18 @@
+package com.example.emailapp.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ThreadPage {
+    private List<ThreadResponse> threads;
+    // Null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,21 @@
+package com.example.emailapp.dto;
+
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ThreadResponse {
+    private Long id;
+    private String subject;
+    private String participants;
+    private int messageCount;
+    private int unreadCount;
+    private LocalDateTime lastMessageAt;
+}
@@ -0,0 +1,36 @@
+package com.example.emailapp.exception;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ConflictException extends RuntimeException {
+    
+    // Names PostgreSQL gives the UNIQUE constraints declared on users in db/schema.sql
+    private static final String USERNAME_CONSTRAINT = "users_username_key";
+    private static final String EMAIL_CONSTRAINT = "users_email_key";
+    // PostgreSQL's detail line names the column whatever the constraint is called, which matters for
+    // tables created by Hibernate before db/schema.sql, whose constraints have generated names
+    private static final String USERNAME_DETAIL = "Key (username)=";
+    private static final String EMAIL_DETAIL = "Key (email)=";
+    
+    public ConflictException(String message) {
+        super(message);
+    }
+    
+    /**
+     * Describes a failed insert into {@code users} by the unique constraint it violated, found by
+     * its name or by the column in the database's detail message.
+     */
+    public static ConflictException forUserInsert(DataIntegrityViolationException ex) {
+        String message = String.valueOf(ex.getMostSpecificCause().getMessage());
+        if (message.contains(USERNAME_CONSTRAINT) || message.contains(USERNAME_DETAIL)) {
+            return new ConflictException("Username is already taken!");
+        }
+        if (message.contains(EMAIL_CONSTRAINT) || message.contains(EMAIL_DETAIL)) {
+            return new ConflictException("Email is already taken!");
+        }
+        return new ConflictException("User already exists");
+    }
+}
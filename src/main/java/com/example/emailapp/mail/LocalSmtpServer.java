@@ -0,0 +1,219 @@
+package com.example.emailapp.mail;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A minimal in-JVM SMTP server for development and benchmarks. It accepts and discards mail.
+ * <p>
+ * It announces PIPELINING and 8BITMIME and, like a real pipelining server, writes its replies
+ * only when it has no further commands to read. {@code replyDelayMs} is slept before each such
+ * write to stand in for the network round trip to a remote server. Recipients whose local part
+ * starts with {@code bounce} are refused permanently (550) and those starting with {@code defer}
+ * temporarily (451), so that retries and failures can be exercised.
+ */
+public class LocalSmtpServer implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalSmtpServer.class);
+
+    private final int port;
+    private final long replyDelayMs;
+    private final AtomicLong receivedMessages = new AtomicLong();
+    private final AtomicLong sessions = new AtomicLong();
+    private ServerSocket serverSocket;
+    private ExecutorService sessionThreads;
+
+    public LocalSmtpServer(int port, long replyDelayMs) {
+        this.port = port;
+        this.replyDelayMs = replyDelayMs;
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port, 100, InetAddress.getLoopbackAddress());
+        AtomicInteger threadNumber = new AtomicInteger();
+        sessionThreads = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "local-smtp-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        sessionThreads.execute(this::acceptLoop);
+        logger.info("Local SMTP server listening on port {}", getPort());
+    }
+
+    // The bound port, which differs from the configured one when that was 0
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long getReceivedMessages() {
+        return receivedMessages.get();
+    }
+
+    public long getSessions() {
+        return sessions.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+            sessionThreads.shutdownNow();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sessions.incrementAndGet();
+                sessionThreads.execute(() -> serve(socket));
+            } catch (SocketException e) {
+                return;
+            } catch (IOException e) {
+                logger.warn("Local SMTP server failed to accept a connection", e);
+            } catch (RuntimeException e) {
+                // The executor rejects new sessions once the server is closed
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            Session session = new Session(new BufferedInputStream(socket.getInputStream()),
+                    new BufferedOutputStream(socket.getOutputStream()));
+            session.run();
+        } catch (IOException e) {
+            logger.debug("Local SMTP session ended: {}", e.getMessage());
+        }
+    }
+
+    private final class Session {
+
+        private final InputStream in;
+        private final OutputStream out;
+        private String sender;
+        private int recipients;
+
+        Session(InputStream in, OutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        void run() throws IOException {
+            reply("220 localhost ESMTP emailapp test server");
+            String command;
+            while ((command = readLine()) != null) {
+                String verb = (command.length() > 4 ? command.substring(0, 4) : command).toUpperCase(Locale.ROOT);
+                switch (verb) {
+                    case "EHLO" -> reply("250-localhost\r\n250-PIPELINING\r\n250-8BITMIME\r\n250 SIZE 10485760");
+                    case "HELO" -> reply("250 localhost");
+                    case "MAIL" -> {
+                        sender = command;
+                        recipients = 0;
+                        reply("250 2.1.0 OK");
+                    }
+                    case "RCPT" -> recipient(command);
+                    case "DATA" -> data();
+                    case "RSET" -> {
+                        sender = null;
+                        recipients = 0;
+                        reply("250 2.0.0 OK");
+                    }
+                    case "NOOP" -> reply("250 2.0.0 OK");
+                    case "QUIT" -> {
+                        reply("221 2.0.0 Bye");
+                        return;
+                    }
+                    default -> reply("502 5.5.2 Command not recognized");
+                }
+            }
+        }
+
+        private void recipient(String command) throws IOException {
+            if (sender == null) {
+                reply("503 5.5.1 MAIL first");
+                return;
+            }
+            int start = command.indexOf('<');
+            String localPart = command.substring(start + 1).toLowerCase(Locale.ROOT);
+            if (localPart.startsWith("bounce")) {
+                reply("550 5.1.1 No such user");
+            } else if (localPart.startsWith("defer")) {
+                reply("451 4.3.0 Try again later");
+            } else {
+                recipients++;
+                reply("250 2.1.5 OK");
+            }
+        }
+
+        private void data() throws IOException {
+            if (recipients == 0) {
+                reply("554 5.5.1 No valid recipients");
+                return;
+            }
+            reply("354 End data with <CR><LF>.<CR><LF>");
+            long bytes = 0;
+            String contentLine;
+            while ((contentLine = readLine()) != null && !contentLine.equals(".")) {
+                bytes += contentLine.length() + 2;
+            }
+            sender = null;
+            recipients = 0;
+            receivedMessages.incrementAndGet();
+            logger.debug("Local SMTP server received a message of {} bytes", bytes);
+            reply("250 2.0.0 Queued");
+        }
+
+        // Replies are held back while pipelined commands are still waiting to be read
+        private void reply(String text) throws IOException {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.write('\r');
+            out.write('\n');
+            if (in.available() == 0) {
+                if (replyDelayMs > 0) {
+                    try {
+                        Thread.sleep(replyDelayMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted", e);
+                    }
+                }
+                out.flush();
+            }
+        }
+
+        private String readLine() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b == '\n') {
+                    byte[] bytes = line.toByteArray();
+                    int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                    return new String(bytes, 0, length, StandardCharsets.UTF_8);
+                }
+                line.write(b);
+            }
+            return null;
+        }
+    }
+}
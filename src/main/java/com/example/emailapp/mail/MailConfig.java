@@ -0,0 +1,33 @@
+package com.example.emailapp.mail;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MailConfig {
+
+    @Bean(destroyMethod = "close")
+    public SmtpConnectionPool smtpConnectionPool(
+            @Value("${app.mail.relay:localhost:2525}") String relay,
+            @Value("${app.mail.routes:}") String routes,
+            @Value("${app.mail.host-name:localhost}") String hostName,
+            @Value("${app.mail.smtp.connect-timeout-ms:10000}") int connectTimeoutMs,
+            @Value("${app.mail.smtp.read-timeout-ms:60000}") int readTimeoutMs,
+            @Value("${app.mail.smtp.max-connections-per-route:4}") int maxConnectionsPerRoute,
+            @Value("${app.mail.smtp.max-messages-per-connection:100}") int maxMessagesPerConnection,
+            @Value("${app.mail.smtp.idle-timeout-ms:30000}") long idleTimeoutMs,
+            @Value("${app.mail.smtp.pipelining:true}") boolean pipelining) {
+        return new SmtpConnectionPool(SmtpRoute.parse(relay), SmtpRoute.parseDomainRoutes(routes),
+                new SmtpConnectionPool.Settings(hostName, connectTimeoutMs, readTimeoutMs, maxConnectionsPerRoute,
+                        maxMessagesPerConnection, idleTimeoutMs, pipelining));
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnProperty(name = "app.mail.local-server.enabled", havingValue = "true")
+    public LocalSmtpServer localSmtpServer(@Value("${app.mail.local-server.port:2525}") int port,
+                                           @Value("${app.mail.local-server.reply-delay-ms:0}") long replyDelayMs) {
+        return new LocalSmtpServer(port, replyDelayMs);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.emailapp.mail;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+
+/**
+ * Renders an {@link OutboundMessage} as an RFC 5322 plain-text message with CRLF line endings.
+ * <p>
+ * Header values cannot contain line breaks, so a subject or name cannot add headers of its own.
+ * Non-ASCII header text is written as RFC 2047 encoded words. The body is sent as is when it is
+ * ASCII, as 8bit when the server announced 8BITMIME, and in base64 otherwise or when a line is
+ * longer than SMTP allows. Dot-stuffing is left to {@link SmtpConnection}.
+ */
+public final class MessageFormatter {
+
+    private static final int MAX_LINE_LENGTH = 998;
+    // 45 bytes become 60 base64 characters, which keeps an encoded word within 75 characters
+    private static final int ENCODED_WORD_BYTES = 45;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private MessageFormatter() {
+    }
+
+    public static String render(OutboundMessage message, String hostName, boolean eightBitMime) {
+        String body = normalizeLineBreaks(message.body());
+        String transferEncoding;
+        if (isAscii(body) && hasShortLines(body)) {
+            transferEncoding = "7bit";
+        } else if (eightBitMime && hasShortLines(body)) {
+            transferEncoding = "8bit";
+        } else {
+            transferEncoding = "base64";
+            body = Base64.getMimeEncoder().encodeToString(body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        StringBuilder out = new StringBuilder(body.length() + 512);
+        out.append("Date: ").append(DATE_FORMAT.format(message.date())).append("\r\n");
+        out.append("From: ").append(mailbox(message.senderName(), message.sender())).append("\r\n");
+        out.append("To: <").append(message.recipient()).append(">\r\n");
+        out.append("Subject: ").append(headerText(message.subject())).append("\r\n");
+        out.append("Message-ID: <email-").append(message.emailId()).append('@').append(hostName).append(">\r\n");
+        out.append("MIME-Version: 1.0\r\n");
+        out.append("Content-Type: text/plain; charset=UTF-8\r\n");
+        out.append("Content-Transfer-Encoding: ").append(transferEncoding).append("\r\n");
+        out.append("\r\n");
+        out.append(body);
+        if (!body.endsWith("\r\n")) {
+            out.append("\r\n");
+        }
+        return out.toString();
+    }
+
+    private static String mailbox(String name, String address) {
+        String cleaned = singleLine(name);
+        if (cleaned.isEmpty()) {
+            return "<" + address + ">";
+        }
+        if (!isAscii(cleaned)) {
+            return encodedWords(cleaned) + " <" + address + ">";
+        }
+        return "\"" + cleaned.replace("\\", "\\\\").replace("\"", "\\\"") + "\" <" + address + ">";
+    }
+
+    private static String headerText(String value) {
+        String cleaned = singleLine(value);
+        return isAscii(cleaned) ? cleaned : encodedWords(cleaned);
+    }
+
+    // Splits on code point boundaries so that no encoded word holds part of a character
+    private static String encodedWords(String value) {
+        StringBuilder words = new StringBuilder();
+        int start = 0;
+        while (start < value.length()) {
+            int end = start;
+            int bytes = 0;
+            while (end < value.length()) {
+                int codePoint = value.codePointAt(end);
+                int length = utf8Length(codePoint);
+                if (bytes + length > ENCODED_WORD_BYTES) {
+                    break;
+                }
+                bytes += length;
+                end += Character.charCount(codePoint);
+            }
+            if (words.length() > 0) {
+                words.append("\r\n ");
+            }
+            words.append("=?UTF-8?B?")
+                    .append(Base64.getEncoder().encodeToString(value.substring(start, end).getBytes(StandardCharsets.UTF_8)))
+                    .append("?=");
+            start = end;
+        }
+        return words.toString();
+    }
+
+    private static int utf8Length(int codePoint) {
+        if (codePoint < 0x80) {
+            return 1;
+        }
+        if (codePoint < 0x800) {
+            return 2;
+        }
+        return codePoint < 0x10000 ? 3 : 4;
+    }
+
+    private static String singleLine(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace('\r', ' ').replace('\n', ' ').trim();
+    }
+
+    private static String normalizeLineBreaks(String body) {
+        return body.replace("\r\n", "\n").replace('\r', '\n').replace("\n", "\r\n");
+    }
+
+    static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasShortLines(String body) {
+        int lineStart = 0;
+        while (lineStart <= body.length()) {
+            int lineEnd = body.indexOf("\r\n", lineStart);
+            if (lineEnd < 0) {
+                lineEnd = body.length();
+            }
+            // UTF-8 can take up to three bytes per char here, so measure conservatively
+            if ((lineEnd - lineStart) * 3 > MAX_LINE_LENGTH
+                    && body.substring(lineStart, lineEnd).getBytes(StandardCharsets.UTF_8).length > MAX_LINE_LENGTH) {
+                return false;
+            }
+            lineStart = lineEnd + 2;
+        }
+        return true;
+    }
+}
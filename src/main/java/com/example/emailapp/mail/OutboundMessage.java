@@ -0,0 +1,34 @@
+package com.example.emailapp.mail;
+
+import java.time.Instant;
+
+/**
+ * One message to hand to an SMTP server: the envelope and what goes into the headers and body.
+ * {@code emailId} identifies the stored email and becomes part of the Message-ID.
+ */
+public record OutboundMessage(long emailId,
+                              String sender,
+                              String senderName,
+                              String recipient,
+                              String subject,
+                              String body,
+                              Instant date) {
+
+    // Addresses end up inside SMTP commands, so they must not contain line breaks or brackets
+    public boolean hasValidAddresses() {
+        return isValidAddress(sender) && isValidAddress(recipient);
+    }
+
+    static boolean isValidAddress(String address) {
+        if (address == null || address.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+            if (c == '\r' || c == '\n' || c == '<' || c == '>') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
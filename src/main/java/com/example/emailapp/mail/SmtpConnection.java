@@ -0,0 +1,359 @@
+package com.example.emailapp.mail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A client session with one SMTP server that can carry any number of messages.
+ * <p>
+ * When the server announces PIPELINING (RFC 2920), a message's MAIL, RCPT and DATA commands go
+ * out in one write, and the message content is written together with the next message's
+ * commands, so each message costs one round trip instead of four. Without it the commands are
+ * sent one at a time. A transaction the server refused part-way is reset before the next one.
+ * Instances are not thread-safe; the {@link SmtpConnectionPool} hands each one to one thread at a time.
+ */
+public final class SmtpConnection implements Closeable {
+
+    private final SmtpRoute route;
+    private final String hostName;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final StringBuilder line = new StringBuilder(128);
+    private final boolean pipelining;
+    private final boolean eightBitMime;
+    private int messagesSent;
+    private long lastUsedNanos;
+    private boolean broken;
+
+    private SmtpConnection(SmtpRoute route, String hostName, Socket socket, boolean pipeliningAllowed) throws IOException {
+        this.route = route;
+        this.hostName = hostName;
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 65536);
+
+        SmtpReply greeting = readReply();
+        if (greeting.code() != 220) {
+            throw new SmtpProtocolException("Unexpected greeting from " + route + ": " + greeting);
+        }
+        write("EHLO " + hostName + "\r\n");
+        out.flush();
+        String extensions = readExtensions();
+        this.pipelining = pipeliningAllowed && extensions.contains("\nPIPELINING");
+        this.eightBitMime = extensions.contains("\n8BITMIME");
+        this.lastUsedNanos = System.nanoTime();
+    }
+
+    public static SmtpConnection open(SmtpRoute route, String hostName, int connectTimeoutMs, int readTimeoutMs,
+                                      boolean pipeliningAllowed) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(readTimeoutMs);
+            socket.connect(new InetSocketAddress(route.host(), route.port()), connectTimeoutMs);
+            return new SmtpConnection(route, hostName, socket, pipeliningAllowed);
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    public SmtpRoute getRoute() {
+        return route;
+    }
+
+    public boolean isPipelining() {
+        return pipelining;
+    }
+
+    public int getMessagesSent() {
+        return messagesSent;
+    }
+
+    long getLastUsedNanos() {
+        return lastUsedNanos;
+    }
+
+    // False once an I/O or protocol error left the session in an unknown state
+    public boolean isReusable() {
+        return !broken && !socket.isClosed();
+    }
+
+    /**
+     * Sends the messages and stores the server's final reply for {@code messages.get(i)} in
+     * {@code replies[i]}: 250 when the message was accepted, or the reply that refused it.
+     * <p>
+     * Replies are stored as they arrive. When an {@link IOException} ends the session, the
+     * messages without a reply were not accepted, and the connection must be discarded.
+     */
+    public void send(List<OutboundMessage> messages, SmtpReply[] replies) throws IOException {
+        try {
+            if (pipelining) {
+                sendPipelined(messages, replies);
+            } else {
+                sendInLockstep(messages, replies);
+            }
+        } catch (IOException | RuntimeException e) {
+            broken = true;
+            throw e;
+        } finally {
+            lastUsedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Checks that an idle session is still open on the server side.
+     */
+    public boolean noop() {
+        try {
+            write("NOOP\r\n");
+            out.flush();
+            return readReply().code() == 250;
+        } catch (IOException e) {
+            broken = true;
+            return false;
+        }
+    }
+
+    // Ends the session politely; the server's reply is not waited for long
+    @Override
+    public void close() {
+        try {
+            if (isReusable()) {
+                socket.setSoTimeout(1000);
+                write("QUIT\r\n");
+                out.flush();
+                readReply();
+            }
+        } catch (IOException e) {
+            // Closing anyway
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+
+    private void sendPipelined(List<OutboundMessage> messages, SmtpReply[] replies) throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        String[] contents = render(messages);
+        writeEnvelope(messages.get(0), contents[0], false);
+        out.flush();
+
+        boolean resetPending = false;
+        for (int i = 0; i < messages.size(); i++) {
+            if (resetPending) {
+                expect(readReply(), 250, "RSET");
+            }
+            SmtpReply mail = readReply();
+            SmtpReply rcpt = readReply();
+            SmtpReply data = readReply();
+            boolean hasNext = i + 1 < messages.size();
+
+            if (data.code() == 354) {
+                boolean accepted = mail.isPositive() && rcpt.isPositive();
+                // A server that starts DATA after refusing the envelope still expects a terminator
+                writeContent(accepted ? contents[i] : "");
+                if (hasNext) {
+                    writeEnvelope(messages.get(i + 1), contents[i + 1], false);
+                }
+                out.flush();
+                SmtpReply end = readReply();
+                replies[i] = accepted ? end : firstRefusal(mail, rcpt, data);
+                resetPending = false;
+                if (end.isPositive()) {
+                    messagesSent++;
+                }
+            } else {
+                replies[i] = firstRefusal(mail, rcpt, data);
+                // An accepted MAIL leaves a transaction open on the server
+                resetPending = mail.isPositive();
+                if (hasNext) {
+                    writeEnvelope(messages.get(i + 1), contents[i + 1], resetPending);
+                    out.flush();
+                }
+            }
+            checkClosing(replies[i]);
+        }
+    }
+
+    private void sendInLockstep(List<OutboundMessage> messages, SmtpReply[] replies) throws IOException {
+        String[] contents = render(messages);
+        for (int i = 0; i < messages.size(); i++) {
+            OutboundMessage message = messages.get(i);
+            SmtpReply reply = command(mailCommand(message, contents[i]));
+            if (reply.isPositive()) {
+                reply = command("RCPT TO:<" + address(message.recipient()) + ">\r\n");
+                if (reply.isPositive()) {
+                    reply = command("DATA\r\n");
+                    if (reply.code() == 354) {
+                        writeContent(contents[i]);
+                        out.flush();
+                        reply = readReply();
+                        if (reply.isPositive()) {
+                            messagesSent++;
+                        }
+                        replies[i] = reply;
+                        checkClosing(reply);
+                        continue;
+                    }
+                }
+                replies[i] = reply;
+                checkClosing(reply);
+                expect(command("RSET\r\n"), 250, "RSET");
+                continue;
+            }
+            replies[i] = reply;
+            checkClosing(reply);
+        }
+    }
+
+    private String[] render(List<OutboundMessage> messages) {
+        String[] contents = new String[messages.size()];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = MessageFormatter.render(messages.get(i), hostName, eightBitMime);
+        }
+        return contents;
+    }
+
+    private void writeEnvelope(OutboundMessage message, String content, boolean reset) throws IOException {
+        if (reset) {
+            write("RSET\r\n");
+        }
+        write(mailCommand(message, content));
+        write("RCPT TO:<" + address(message.recipient()) + ">\r\n");
+        write("DATA\r\n");
+    }
+
+    private String mailCommand(OutboundMessage message, String content) {
+        String command = "MAIL FROM:<" + address(message.sender()) + ">";
+        if (eightBitMime && !MessageFormatter.isAscii(content)) {
+            command += " BODY=8BITMIME";
+        }
+        return command + "\r\n";
+    }
+
+    // Writes the content with leading dots doubled, then the terminating "."
+    private void writeContent(String content) throws IOException {
+        int lineStart = 0;
+        while (lineStart < content.length()) {
+            int lineEnd = content.indexOf("\r\n", lineStart);
+            lineEnd = lineEnd < 0 ? content.length() : lineEnd + 2;
+            if (content.charAt(lineStart) == '.') {
+                out.write('.');
+            }
+            write(content.substring(lineStart, lineEnd));
+            lineStart = lineEnd;
+        }
+        write(".\r\n");
+    }
+
+    private SmtpReply command(String command) throws IOException {
+        write(command);
+        out.flush();
+        return readReply();
+    }
+
+    private void write(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String readExtensions() throws IOException {
+        StringBuilder extensions = new StringBuilder();
+        while (true) {
+            String replyLine = readLine();
+            if (replyLine.length() < 3 || !replyLine.startsWith("250")) {
+                throw new SmtpProtocolException("EHLO refused by " + route + ": " + replyLine);
+            }
+            extensions.append('\n').append(replyLine.substring(Math.min(4, replyLine.length())).toUpperCase(Locale.ROOT));
+            if (replyLine.length() == 3 || replyLine.charAt(3) == ' ') {
+                return extensions.toString();
+            }
+        }
+    }
+
+    private SmtpReply readReply() throws IOException {
+        while (true) {
+            String replyLine = readLine();
+            if (replyLine.length() < 3) {
+                throw new SmtpProtocolException("Malformed reply from " + route + ": " + replyLine);
+            }
+            // Continuation lines ("250-...") precede the last line ("250 ...")
+            if (replyLine.length() == 3 || replyLine.charAt(3) != '-') {
+                int code;
+                try {
+                    code = Integer.parseInt(replyLine.substring(0, 3));
+                } catch (NumberFormatException e) {
+                    throw new SmtpProtocolException("Malformed reply from " + route + ": " + replyLine);
+                }
+                return new SmtpReply(code, replyLine.length() > 4 ? replyLine.substring(4) : "");
+            }
+        }
+    }
+
+    private String readLine() throws IOException {
+        line.setLength(0);
+        while (true) {
+            int b;
+            try {
+                b = in.read();
+            } catch (SocketTimeoutException e) {
+                throw new SmtpProtocolException("No reply from " + route + " within the read timeout", e);
+            }
+            if (b < 0) {
+                throw new SmtpProtocolException(route + " closed the connection");
+            }
+            if (b == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) b);
+        }
+    }
+
+    private void expect(SmtpReply reply, int code, String command) throws IOException {
+        if (reply.code() != code) {
+            throw new SmtpProtocolException(command + " refused by " + route + ": " + reply);
+        }
+    }
+
+    // 421 means the server is closing the session; the remaining messages need another connection
+    private void checkClosing(SmtpReply reply) throws IOException {
+        if (reply.code() == 421) {
+            throw new SmtpProtocolException(route + " is closing the connection: " + reply);
+        }
+    }
+
+    private static SmtpReply firstRefusal(SmtpReply mail, SmtpReply rcpt, SmtpReply data) {
+        if (!mail.isPositive()) {
+            return mail;
+        }
+        return !rcpt.isPositive() ? rcpt : data;
+    }
+
+    // Messages are checked before they are queued for sending; this keeps a stray one from breaking the protocol
+    private static String address(String address) {
+        if (!OutboundMessage.isValidAddress(address)) {
+            throw new IllegalArgumentException("Invalid mail address: " + address);
+        }
+        return address;
+    }
+}
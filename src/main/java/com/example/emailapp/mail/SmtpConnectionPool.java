@@ -0,0 +1,141 @@
+package com.example.emailapp.mail;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Open SMTP sessions kept per route, so that consecutive batches to the same server skip the
+ * TCP handshake, greeting and EHLO.
+ * <p>
+ * At most {@code maxConnectionsPerRoute} sessions to one server are in use at a time; further
+ * borrowers wait. A session is retired after {@code maxMessagesPerConnection} messages, since
+ * many servers limit how much they take per session, and is closed once it has been idle for
+ * {@code idleTimeoutMs}. The most recently used idle session is handed out first, so the
+ * others age out when traffic drops.
+ */
+public class SmtpConnectionPool implements AutoCloseable {
+
+    public record Settings(String hostName,
+                           int connectTimeoutMs,
+                           int readTimeoutMs,
+                           int maxConnectionsPerRoute,
+                           int maxMessagesPerConnection,
+                           long idleTimeoutMs,
+                           boolean pipelining) {
+    }
+
+    private static final class RoutePool {
+        private final Semaphore permits;
+        private final ConcurrentLinkedDeque<SmtpConnection> idle = new ConcurrentLinkedDeque<>();
+
+        RoutePool(int maxConnections) {
+            this.permits = new Semaphore(maxConnections, true);
+        }
+    }
+
+    // Idle sessions older than this are checked with NOOP before they are handed out
+    private static final long VALIDATE_AFTER_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final SmtpRoute defaultRoute;
+    private final Map<String, SmtpRoute> domainRoutes;
+    private final Settings settings;
+    private final Map<SmtpRoute, RoutePool> pools = new ConcurrentHashMap<>();
+    private final AtomicLong openedConnections = new AtomicLong();
+    private volatile boolean closed;
+
+    public SmtpConnectionPool(SmtpRoute defaultRoute, Map<String, SmtpRoute> domainRoutes, Settings settings) {
+        this.defaultRoute = defaultRoute;
+        this.domainRoutes = Map.copyOf(domainRoutes);
+        this.settings = settings;
+    }
+
+    public SmtpRoute routeFor(String domain) {
+        return domainRoutes.getOrDefault(domain, defaultRoute);
+    }
+
+    public long getOpenedConnections() {
+        return openedConnections.get();
+    }
+
+    public int getMaxMessagesPerConnection() {
+        return settings.maxMessagesPerConnection();
+    }
+
+    /**
+     * Returns an open session to the route, waiting up to {@code timeoutMs} for one to be free.
+     * The caller must hand it back with {@link #release}.
+     *
+     * @throws IOException if no session became free in time or a new one could not be opened
+     */
+    public SmtpConnection borrow(SmtpRoute route, long timeoutMs) throws IOException, InterruptedException {
+        if (closed) {
+            throw new IOException("SMTP connection pool is closed");
+        }
+        RoutePool pool = pools.computeIfAbsent(route, key -> new RoutePool(settings.maxConnectionsPerRoute()));
+        if (!pool.permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+            throw new IOException("No SMTP connection to " + route + " became free within " + timeoutMs + " ms");
+        }
+        try {
+            SmtpConnection connection;
+            while ((connection = pool.idle.pollFirst()) != null) {
+                long idleNanos = System.nanoTime() - connection.getLastUsedNanos();
+                if (idleNanos < TimeUnit.MILLISECONDS.toNanos(settings.idleTimeoutMs())
+                        && (idleNanos < VALIDATE_AFTER_NANOS || connection.noop())) {
+                    return connection;
+                }
+                connection.close();
+            }
+            connection = SmtpConnection.open(route, settings.hostName(), settings.connectTimeoutMs(),
+                    settings.readTimeoutMs(), settings.pipelining());
+            openedConnections.incrementAndGet();
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            pool.permits.release();
+            throw e;
+        }
+    }
+
+    // Keeps the session for the next borrower unless it failed or has carried enough messages
+    public void release(SmtpConnection connection) {
+        RoutePool pool = pools.get(connection.getRoute());
+        try {
+            if (!closed && connection.isReusable()
+                    && connection.getMessagesSent() < settings.maxMessagesPerConnection()) {
+                pool.idle.offerFirst(connection);
+            } else {
+                connection.close();
+            }
+        } finally {
+            pool.permits.release();
+        }
+    }
+
+    // Closes sessions that have been idle for longer than the idle timeout
+    public void evictIdle() {
+        long now = System.nanoTime();
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(settings.idleTimeoutMs());
+        for (RoutePool pool : pools.values()) {
+            for (SmtpConnection connection : pool.idle) {
+                if (now - connection.getLastUsedNanos() >= idleTimeoutNanos && pool.idle.remove(connection)) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (RoutePool pool : pools.values()) {
+            SmtpConnection connection;
+            while ((connection = pool.idle.pollFirst()) != null) {
+                connection.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.emailapp.mail;
+
+import java.io.IOException;
+
+/**
+ * The server broke off the session or answered something the client cannot continue from.
+ */
+public class SmtpProtocolException extends IOException {
+
+    public SmtpProtocolException(String message) {
+        super(message);
+    }
+
+    public SmtpProtocolException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
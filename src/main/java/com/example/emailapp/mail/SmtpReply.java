@@ -0,0 +1,26 @@
+package com.example.emailapp.mail;
+
+/**
+ * A server reply: the three-digit code and the text of its last line.
+ */
+public record SmtpReply(int code, String text) {
+
+    // Stands in for the reply of a message whose connection failed before the server answered
+    public static SmtpReply connectionFailed(String reason) {
+        return new SmtpReply(421, reason);
+    }
+
+    public boolean isPositive() {
+        return code >= 200 && code < 400;
+    }
+
+    // 4xx: the same message may succeed later
+    public boolean isTransient() {
+        return code >= 400 && code < 500;
+    }
+
+    @Override
+    public String toString() {
+        return code + " " + text;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.emailapp.mail;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The SMTP server that mail for some recipient domains is handed to.
+ */
+public record SmtpRoute(String host, int port) {
+
+    /**
+     * Parses {@code host:port}; the port defaults to 25.
+     */
+    public static SmtpRoute parse(String value) {
+        String trimmed = value.trim();
+        int separator = trimmed.lastIndexOf(':');
+        if (separator < 0) {
+            return new SmtpRoute(trimmed, 25);
+        }
+        return new SmtpRoute(trimmed.substring(0, separator), Integer.parseInt(trimmed.substring(separator + 1)));
+    }
+
+    /**
+     * Parses {@code domain=host:port} entries separated by commas. Domains are lower-cased.
+     */
+    public static Map<String, SmtpRoute> parseDomainRoutes(String entries) {
+        Map<String, SmtpRoute> routes = new LinkedHashMap<>();
+        if (entries == null) {
+            return routes;
+        }
+        for (String entry : entries.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int separator = trimmed.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("SMTP route entries must look like domain=host:port");
+            }
+            routes.put(trimmed.substring(0, separator).trim().toLowerCase(), parse(trimmed.substring(separator + 1)));
+        }
+        return routes;
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
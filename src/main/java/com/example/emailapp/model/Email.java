@@ -13,7 +13,10 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "emails")
+@Table(name = "emails", indexes = {
+    @Index(name = "idx_emails_user_id_status", columnList = "user_id, status"),
+    @Index(name = "idx_emails_thread_id", columnList = "thread_id, created_at")
+})
 public class Email {
     
     @Id
@@ -51,6 +54,17 @@ public class Email {
     @Column(nullable = false)
     private LocalDateTime createdAt;
     
+    // Set when the email is moved to trash; drives the retention purge
+    private LocalDateTime trashedAt;
+    
+    // Outbound delivery to an external recipient: "queued", "deferred", "delivered" or "failed";
+    // null for mail that stays inside the system
+    @Column(length = 16)
+    private String deliveryStatus;
+    
+    // Conversation the email belongs to; null until assigned (see ThreadService)
+    private Long threadId;
+    
     @PrePersist
     protected void onCreate() {
         if (createdAt == null) {
@@ -0,0 +1,56 @@
+package com.example.emailapp.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * An email waiting to be handed to an external SMTP server. The row is written in the same
+ * transaction as the email and removed once the message has been delivered.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "outbox")
+public class OutboxMessage {
+    
+    public static final String PENDING = "pending";
+    public static final String FAILED = "failed";
+    
+    @Id
+    private Long emailId;
+    
+    @Column(nullable = false)
+    private Long userId;
+    
+    @Column(nullable = false)
+    private String recipient;
+    
+    // Lower-cased domain of the recipient; messages are grouped by it for delivery
+    @Column(nullable = false)
+    private String domain;
+    
+    @Column(nullable = false, length = 16)
+    private String status;
+    
+    @Column(nullable = false)
+    private int attempts;
+    
+    @Column(nullable = false)
+    private Instant nextAttemptAt;
+    
+    // Set while a delivery worker holds the message; an expired lease makes it available again
+    private Instant lockedUntil;
+    
+    @Column(length = 1000)
+    private String lastError;
+    
+    @Column(nullable = false)
+    private Instant createdAt;
+}
@@ -0,0 +1,34 @@
+package com.example.emailapp.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "purge_checkpoints")
+public class PurgeCheckpoint {
+    
+    @Id
+    private String jobName;
+    
+    // Highest email id already examined by the job; the next batch starts after it
+    @Column(nullable = false)
+    private long lastId;
+    
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+    
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
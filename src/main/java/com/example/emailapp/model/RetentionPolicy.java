@@ -0,0 +1,34 @@
+package com.example.emailapp.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "retention_policies")
+public class RetentionPolicy {
+    
+    @Id
+    private Long userId;
+    
+    // Days a message stays in trash before it is permanently deleted
+    @Column(nullable = false)
+    private int trashRetentionDays;
+    
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+    
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.emailapp.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A row in the revocation change log. Every node polls this table and applies new rows to its
+ * in-memory denylist. Either {@code tokenId} (one token) or {@code username} (all tokens of the
+ * user issued at or before {@code revokedBefore}) is set.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "token_revocations", indexes = {
+    @Index(name = "idx_token_revocations_expires_at", columnList = "expiresAt")
+})
+public class TokenRevocation {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(length = 64)
+    private String tokenId;
+    
+    private String username;
+    
+    private Instant revokedBefore;
+    
+    // After this instant every token the row refers to has expired, so the row can be dropped
+    @Column(nullable = false)
+    private Instant expiresAt;
+    
+    @Column(nullable = false)
+    private Instant createdAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = Instant.now();
+        }
+    }
+}
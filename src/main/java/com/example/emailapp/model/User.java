@@ -5,6 +5,10 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -17,6 +21,9 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@NaturalIdCache
 @Table(name = "users", uniqueConstraints = {
     @UniqueConstraint(columnNames = {"username"}),
     @UniqueConstraint(columnNames = {"email"})
@@ -30,6 +37,8 @@ public class User implements UserDetails {
     @Column(nullable = false)
     private String name;
     
+    // Looked up on every authenticated request; resolved through the natural-id cache
+    @NaturalId
     @Column(nullable = false, unique = true)
     private String username;
     
@@ -39,12 +48,15 @@ public class User implements UserDetails {
     @Column(nullable = false)
     private String password;
     
+    // "ADMIN" for administrators; null means a regular user
+    private String role;
+    
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Email> emails;
     
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
-        return List.of(new SimpleGrantedAuthority("ROLE_USER"));
+        return List.of(new SimpleGrantedAuthority("ROLE_" + (role == null ? "USER" : role)));
     }
     
     @Override
@@ -0,0 +1,33 @@
+package com.example.emailapp.monitoring;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.function.SingletonSupplier;
+
+import javax.sql.DataSource;
+
+/**
+ * Puts {@link ObservedDataSource} in front of every {@link DataSource} bean. The observer is
+ * resolved on first use, so post-processing the pool does not pull its dependencies (the meter
+ * registry) into the context early.
+ */
+@Component
+@ConditionalOnProperty(name = "app.sql.observer.enabled", havingValue = "true", matchIfMissing = true)
+public class ObservedDataSourcePostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<SqlStatementObserver> observer;
+
+    public ObservedDataSourcePostProcessor(ObjectProvider<SqlStatementObserver> observer) {
+        this.observer = observer;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && !(bean instanceof ObservedDataSource)) {
+            return new ObservedDataSource(dataSource, SingletonSupplier.of(observer::getObject));
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.emailapp.monitoring;
+
+import java.util.regex.Pattern;
+
+/**
+ * A SQL statement reduced to its shape: literals become {@code ?}, whitespace is collapsed and
+ * {@code IN} lists of any length look the same, so executions that differ only in their values
+ * are counted together and no value ever reaches the log.
+ */
+record SqlShape(String text, int bindCount) {
+
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\?(?:, ?\\?)+\\)");
+
+    static SqlShape of(String sql) {
+        StringBuilder shape = new StringBuilder(sql.length());
+        int bindCount = 0;
+        boolean pendingSpace = false;
+        int length = sql.length();
+
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = shape.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                shape.append(' ');
+                pendingSpace = false;
+            }
+
+            if (c == '\'') {
+                // String literal; '' is an escaped quote inside it
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                shape.append('?');
+            } else if (c == '?') {
+                bindCount++;
+                shape.append('?');
+            } else if (Character.isDigit(c) && !followsIdentifier(shape)) {
+                // Numeric literal; digits inside identifiers such as Hibernate's e1_0 are kept
+                while (i + 1 < length && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+                    i++;
+                }
+                shape.append('?');
+            } else {
+                shape.append(c);
+            }
+        }
+
+        return new SqlShape(IN_LIST.matcher(shape).replaceAll("(?...)"), bindCount);
+    }
+
+    private static boolean followsIdentifier(StringBuilder shape) {
+        if (shape.length() == 0) {
+            return false;
+        }
+        char previous = shape.charAt(shape.length() - 1);
+        return Character.isLetterOrDigit(previous) || previous == '_' || previous == '.' || previous == '$';
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.emailapp.monitoring;
+
+import com.example.emailapp.dto.QueryStatsResponse;
+import com.example.emailapp.exception.BadRequestException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records every JDBC statement executed through {@link ObservedDataSource}.
+ * <p>
+ * Executions are aggregated per statement shape (see {@link SqlShape}). Statements slower than
+ * the threshold are logged with their bind values redacted, and a small random sample of the rest
+ * is logged so normal traffic stays visible without logging every statement.
+ */
+@Component
+public class SqlStatementObserver {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqlStatementObserver.class);
+
+    // Statements beyond max-shapes distinct shapes are counted here, which bounds memory use
+    private static final String OTHER_STATEMENTS = "(other statements)";
+
+    private static final class Stats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    }
+
+    private final Map<String, SqlShape> shapes = new ConcurrentHashMap<>();
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final long slowThresholdNanos;
+    private final double samplePercent;
+    private final int maxShapes;
+    private final Timer statementTimer;
+    private final Counter slowStatements;
+
+    public SqlStatementObserver(MeterRegistry meterRegistry,
+                                @Value("${app.sql.slow-query-threshold-ms:250}") long slowThresholdMs,
+                                @Value("${app.sql.sample-percent:1}") double samplePercent,
+                                @Value("${app.sql.max-shapes:1000}") int maxShapes) {
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+        this.samplePercent = samplePercent;
+        this.maxShapes = maxShapes;
+        this.statementTimer = Timer.builder("emailapp.sql.statements")
+                .description("JDBC statement execution time")
+                .register(meterRegistry);
+        this.slowStatements = Counter.builder("emailapp.sql.slow")
+                .description("JDBC statements slower than the slow-query threshold")
+                .register(meterRegistry);
+    }
+
+    public void record(String sql, long elapsedNanos, boolean failed) {
+        SqlShape shape = shapeOf(sql);
+
+        Stats shapeStats = stats.get(shape.text());
+        if (shapeStats == null) {
+            shapeStats = stats.size() < maxShapes
+                    ? stats.computeIfAbsent(shape.text(), key -> new Stats())
+                    : stats.computeIfAbsent(OTHER_STATEMENTS, key -> new Stats());
+        }
+        shapeStats.count.increment();
+        shapeStats.totalNanos.add(elapsedNanos);
+        shapeStats.maxNanos.accumulate(elapsedNanos);
+        if (failed) {
+            shapeStats.errors.increment();
+        }
+        statementTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+        if (elapsedNanos >= slowThresholdNanos) {
+            slowStatements.increment();
+            logger.warn("Slow query ({} ms, {} bind values redacted{}): {}",
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), shape.bindCount(), failed ? ", failed" : "", shape.text());
+        } else if (samplePercent > 0 && ThreadLocalRandom.current().nextDouble(100) < samplePercent) {
+            logger.info("Sampled query ({} us): {}", TimeUnit.NANOSECONDS.toMicros(elapsedNanos), shape.text());
+        }
+    }
+
+    /**
+     * Returns the top statement shapes ordered by {@code slowest} (mean time), {@code max},
+     * {@code frequent} (executions) or {@code total} (time spent).
+     */
+    public List<QueryStatsResponse> top(String order, int limit) {
+        Comparator<QueryStatsResponse> comparator = switch (order) {
+            case "slowest" -> Comparator.comparingDouble(QueryStatsResponse::getMeanMillis);
+            case "max" -> Comparator.comparingDouble(QueryStatsResponse::getMaxMillis);
+            case "frequent" -> Comparator.comparingLong(QueryStatsResponse::getCount);
+            case "total" -> Comparator.comparingDouble(QueryStatsResponse::getTotalMillis);
+            default -> throw new BadRequestException("Unknown order: " + order
+                    + " (expected slowest, max, frequent or total)");
+        };
+
+        return stats.entrySet().stream()
+                .map(entry -> toResponse(entry.getKey(), entry.getValue()))
+                .sorted(comparator.reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    public void reset() {
+        stats.clear();
+    }
+
+    private SqlShape shapeOf(String sql) {
+        SqlShape shape = shapes.get(sql);
+        if (shape == null) {
+            shape = SqlShape.of(sql);
+            // Raw statements outnumber shapes (IN lists of every length), so cap this cache separately
+            if (shapes.size() < maxShapes * 4) {
+                shapes.put(sql, shape);
+            }
+        }
+        return shape;
+    }
+
+    private static QueryStatsResponse toResponse(String sql, Stats shapeStats) {
+        long count = shapeStats.count.sum();
+        double totalMillis = shapeStats.totalNanos.sum() / 1_000_000.0;
+        return QueryStatsResponse.builder()
+                .sql(sql)
+                .count(count)
+                .errors(shapeStats.errors.sum())
+                .totalMillis(totalMillis)
+                .meanMillis(count == 0 ? 0 : totalMillis / count)
+                .maxMillis(shapeStats.maxNanos.get() / 1_000_000.0)
+                .build();
+    }
+}
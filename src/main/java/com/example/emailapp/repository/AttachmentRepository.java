@@ -0,0 +1,27 @@
+package com.example.emailapp.repository;
+
+import com.example.emailapp.model.Attachment;
+import com.example.emailapp.sharding.ShardedRepository;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AttachmentRepository extends JpaRepository<Attachment, Long>, ShardedRepository {
+    List<Attachment> findByEmailId(Long emailId);
+    // Held until the transaction ends; see AttachmentService
+    @Query(value = "SELECT count(*) FROM (SELECT pg_advisory_xact_lock_shared(:key)) AS locked", nativeQuery = true)
+    long lockContentShared(@Param("key") long key);
+    
+    @Query("SELECT DISTINCT a.contentHash FROM Attachment a WHERE a.email.id IN :emailIds")
+    List<String> findContentHashesByEmailIdIn(@Param("emailIds") Collection<Long> emailIds);
+    
+    @Modifying
+    @Query("DELETE FROM Attachment a WHERE a.email.id IN :emailIds")
+    int deleteByEmailIdIn(@Param("emailIds") Collection<Long> emailIds);
+}
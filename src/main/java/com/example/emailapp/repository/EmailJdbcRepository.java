@@ -0,0 +1,172 @@
+package com.example.emailapp.repository;
+
+import com.example.emailapp.serialization.EmailField;
+import com.example.emailapp.serialization.EmailFieldSet;
+import com.example.emailapp.serialization.EmailJsonWriter;
+import com.example.emailapp.sharding.ShardedRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Cursor-based reads of a mailbox that hand each row to an {@link EmailJsonWriter} as it arrives,
+ * so a folder is never materialized as entities or DTOs.
+ * <p>
+ * Only the columns of the requested {@link EmailFieldSet} are selected. The SQL and column layout
+ * for each distinct field set are compiled once and cached. The PostgreSQL driver only honours the
+ * fetch size inside a transaction, hence the read-only transaction around each stream.
+ */
+@Repository
+public class EmailJdbcRepository implements ShardedRepository {
+
+    public enum Lookup { FOUND, NOT_FOUND, FORBIDDEN }
+
+    public record Correspondent(String address, int count, long lastUsedMillis) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<EmailFieldSet, Projection> projections = new ConcurrentHashMap<>();
+
+    public EmailJdbcRepository(DataSource dataSource,
+                               @Value("${app.emails.stream-fetch-size:256}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamByUserIdAndStatus(Long userId, String status, EmailFieldSet fields, EmailJsonWriter writer) {
+        Projection projection = projection(fields);
+        jdbcTemplate.query(projection.byStatusSql, (RowCallbackHandler) rs -> projection.write(rs, writer), userId, status);
+    }
+
+    @Transactional(readOnly = true)
+    public void streamByUserIdAndStarredTrue(Long userId, EmailFieldSet fields, EmailJsonWriter writer) {
+        Projection projection = projection(fields);
+        jdbcTemplate.query(projection.starredSql, (RowCallbackHandler) rs -> projection.write(rs, writer), userId);
+    }
+
+    // Oldest first, without the messages in trash, which the thread's counts leave out too
+    @Transactional(readOnly = true)
+    public void streamByUserIdAndThreadId(Long userId, Long threadId, EmailFieldSet fields, EmailJsonWriter writer) {
+        Projection projection = projection(fields);
+        jdbcTemplate.query(projection.byThreadSql, (RowCallbackHandler) rs -> projection.write(rs, writer), userId, threadId);
+    }
+
+    /**
+     * Writes a single email if it belongs to {@code userId}; nothing is written otherwise.
+     */
+    @Transactional(readOnly = true)
+    public Lookup writeById(Long id, Long userId, EmailFieldSet fields, EmailJsonWriter writer) {
+        Projection projection = projection(fields);
+        return jdbcTemplate.query(projection.byIdSql, rs -> {
+            if (!rs.next()) {
+                return Lookup.NOT_FOUND;
+            }
+            if (rs.getLong(projection.ownerColumn) != userId) {
+                return Lookup.FORBIDDEN;
+            }
+            projection.write(rs, writer);
+            return Lookup.FOUND;
+        }, id);
+    }
+
+    /**
+     * Every address the user has exchanged mail with, other than {@code ownAddress}: how many
+     * emails went to or came from it and when the last one was written. One pass over the mailbox.
+     */
+    @Transactional(readOnly = true)
+    public void streamCorrespondents(Long userId, String ownAddress, Consumer<Correspondent> consumer) {
+        jdbcTemplate.query("SELECT a.address, count(*), max(e.created_at) FROM emails e "
+                        + "CROSS JOIN LATERAL (VALUES (e.to_email), (e.from_email)) AS a (address) "
+                        + "WHERE e.user_id = ? AND lower(a.address) <> lower(?) GROUP BY a.address",
+                (RowCallbackHandler) rs -> consumer.accept(
+                        new Correspondent(rs.getString(1), rs.getInt(2), rs.getTimestamp(3).getTime())),
+                userId, ownAddress);
+    }
+
+    private Projection projection(EmailFieldSet fields) {
+        return projections.computeIfAbsent(fields, Projection::new);
+    }
+
+    /**
+     * SQL and result-set positions for one field set. {@code columns[field.ordinal()]} is the
+     * 1-based position of the field's column, or 0 when the field is not selected.
+     */
+    private static final class Projection {
+
+        private final int[] columns = new int[EmailField.values().length];
+        private final int ownerColumn;
+        private final String byStatusSql;
+        private final String starredSql;
+        private final String byThreadSql;
+        private final String byIdSql;
+
+        Projection(EmailFieldSet fields) {
+            StringBuilder select = new StringBuilder("SELECT ");
+            int position = 0;
+            for (EmailField field : EmailField.values()) {
+                if (fields.contains(field)) {
+                    select.append(field.getColumn()).append(", ");
+                    columns[field.ordinal()] = ++position;
+                }
+            }
+            // The owner is always read so single lookups can be authorized
+            select.append("user_id AS owner_id FROM emails ");
+            ownerColumn = ++position;
+
+            byStatusSql = select + "WHERE user_id = ? AND status = ? ORDER BY id";
+            starredSql = select + "WHERE user_id = ? AND starred = true ORDER BY id";
+            byThreadSql = select + "WHERE user_id = ? AND thread_id = ? AND status <> 'trash' ORDER BY created_at, id";
+            byIdSql = select + "WHERE id = ?";
+        }
+
+        void write(ResultSet rs, EmailJsonWriter writer) throws SQLException {
+            try {
+                writer.writeEmail(
+                        longAt(rs, EmailField.ID),
+                        longAt(rs, EmailField.USER_ID),
+                        stringAt(rs, EmailField.FROM_EMAIL),
+                        stringAt(rs, EmailField.FROM_NAME),
+                        stringAt(rs, EmailField.TO_EMAIL),
+                        stringAt(rs, EmailField.SUBJECT),
+                        stringAt(rs, EmailField.BODY),
+                        stringAt(rs, EmailField.STATUS),
+                        booleanAt(rs, EmailField.READ),
+                        booleanAt(rs, EmailField.STARRED),
+                        columns[EmailField.CREATED_AT.ordinal()] == 0
+                                ? null
+                                : rs.getObject(columns[EmailField.CREATED_AT.ordinal()], LocalDateTime.class),
+                        stringAt(rs, EmailField.DELIVERY_STATUS));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private long longAt(ResultSet rs, EmailField field) throws SQLException {
+            int column = columns[field.ordinal()];
+            return column == 0 ? 0L : rs.getLong(column);
+        }
+
+        private String stringAt(ResultSet rs, EmailField field) throws SQLException {
+            int column = columns[field.ordinal()];
+            return column == 0 ? null : rs.getString(column);
+        }
+
+        private boolean booleanAt(ResultSet rs, EmailField field) throws SQLException {
+            int column = columns[field.ordinal()];
+            return column != 0 && rs.getBoolean(column);
+        }
+    }
+}
@@ -1,13 +1,48 @@
 package com.example.emailapp.repository;
 
 import com.example.emailapp.model.Email;
+import com.example.emailapp.sharding.ShardedRepository;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface EmailRepository extends JpaRepository<Email, Long> {
+public interface EmailRepository extends JpaRepository<Email, Long>, ShardedRepository {
     List<Email> findByUserIdAndStatus(Long userId, String status);
     List<Email> findByUserIdAndStarredTrue(Long userId);
-}
\ No newline at end of file
+    
+    // Trash past its retention window (per-user policy, else the default), in id order after a keyset cursor
+    @Query(value = "SELECT e.id FROM emails e " +
+            "LEFT JOIN retention_policies p ON p.user_id = e.user_id " +
+            "WHERE e.status = 'trash' AND e.id > :afterId " +
+            "AND COALESCE(e.trashed_at, e.created_at) < " +
+            "CAST(:now AS timestamp) - make_interval(days => COALESCE(p.trash_retention_days, :defaultDays)) " +
+            "ORDER BY e.id LIMIT :limit", nativeQuery = true)
+    List<Long> findPurgeableTrashIds(@Param("afterId") long afterId,
+                                     @Param("now") LocalDateTime now,
+                                     @Param("defaultDays") int defaultDays,
+                                     @Param("limit") int limit);
+    
+    @Query(value = "SELECT count(*) FROM emails e " +
+            "LEFT JOIN retention_policies p ON p.user_id = e.user_id " +
+            "WHERE e.status = 'trash' " +
+            "AND COALESCE(e.trashed_at, e.created_at) < " +
+            "CAST(:now AS timestamp) - make_interval(days => COALESCE(p.trash_retention_days, :defaultDays))",
+            nativeQuery = true)
+    long countPurgeableTrash(@Param("now") LocalDateTime now, @Param("defaultDays") int defaultDays);
+    
+    // The owner alone, for checks that do not need the email loaded
+    @Query("SELECT e.user.id FROM Email e WHERE e.id = :id")
+    Optional<Long> findUserIdById(@Param("id") Long id);
+    
+    @Modifying
+    @Query("DELETE FROM Email e WHERE e.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,68 @@
+package com.example.emailapp.repository;
+
+import com.example.emailapp.sharding.ShardedRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Idempotency keys and the responses they produced, kept next to the user's mailbox so that
+ * reserving a key and the write it guards commit together.
+ */
+@Repository
+public class IdempotencyKeyRepository implements ShardedRepository {
+
+    // A response status of 0 means the request holding the key has not finished
+    public record StoredResponse(String requestHash, int status, String body) {
+    }
+
+    // An expired key is taken over as if it did not exist
+    private static final String RESERVE_SQL =
+            "INSERT INTO idempotency_keys (user_id, idempotency_key, request_hash, created_at, expires_at) "
+                    + "VALUES (?, ?, ?, now(), ?) "
+                    + "ON CONFLICT (user_id, idempotency_key) DO UPDATE SET request_hash = EXCLUDED.request_hash, "
+                    + "response_status = NULL, response_body = NULL, created_at = EXCLUDED.created_at, "
+                    + "expires_at = EXCLUDED.expires_at WHERE idempotency_keys.expires_at < now()";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdempotencyKeyRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Claims the key for a new request. Blocks while another transaction holds the same key, and
+     * returns false if that transaction committed it.
+     */
+    public boolean reserve(long userId, String key, String requestHash, Instant expiresAt) {
+        return jdbcTemplate.update(RESERVE_SQL, userId, key, requestHash, Timestamp.from(expiresAt)) == 1;
+    }
+
+    public Optional<StoredResponse> find(long userId, String key) {
+        List<StoredResponse> responses = jdbcTemplate.query(
+                "SELECT request_hash, response_status, response_body FROM idempotency_keys "
+                        + "WHERE user_id = ? AND idempotency_key = ? AND expires_at >= now()",
+                (rs, rowNum) -> new StoredResponse(rs.getString(1), rs.getInt(2), rs.getString(3)),
+                userId, key);
+        return responses.stream().findFirst();
+    }
+
+    public void complete(long userId, String key, int status, String body) {
+        jdbcTemplate.update("UPDATE idempotency_keys SET response_status = ?, response_body = ? "
+                + "WHERE user_id = ? AND idempotency_key = ?", status, body, userId, key);
+    }
+
+    public void release(long userId, String key) {
+        jdbcTemplate.update("DELETE FROM idempotency_keys WHERE user_id = ? AND idempotency_key = ?", userId, key);
+    }
+
+    public int deleteExpired(int limit) {
+        return jdbcTemplate.update("DELETE FROM idempotency_keys WHERE id IN "
+                + "(SELECT id FROM idempotency_keys WHERE expires_at < now() LIMIT ?)", limit);
+    }
+}
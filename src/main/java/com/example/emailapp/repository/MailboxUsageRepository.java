@@ -0,0 +1,63 @@
+package com.example.emailapp.repository;
+
+import com.example.emailapp.sharding.ShardedRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Per-user message and byte counters. The triggers on {@code emails} keep them current; this
+ * repository reads and locks them, and rewrites them when reconciliation finds drift.
+ */
+@Repository
+public class MailboxUsageRepository implements ShardedRepository {
+
+    public record Usage(long messages, long bytes) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public MailboxUsageRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    public Optional<Usage> find(long userId) {
+        return query("SELECT message_count, byte_count FROM mailbox_usage WHERE user_id = ?", userId);
+    }
+
+    // Holds the user's row until the transaction ends; email inserts and deletes of the user wait for it
+    public Optional<Usage> lock(long userId) {
+        return query("SELECT message_count, byte_count FROM mailbox_usage WHERE user_id = ? FOR UPDATE", userId);
+    }
+
+    // For a user without any email yet; the triggers only create a row on the first insert
+    public void createIfAbsent(long userId) {
+        jdbcTemplate.update("INSERT INTO mailbox_usage (user_id, message_count, byte_count) VALUES (?, 0, 0) "
+                + "ON CONFLICT (user_id) DO NOTHING", userId);
+    }
+
+    // Counts the mailbox from scratch; slow for large mailboxes, so only reconciliation uses it
+    public Usage countEmails(long userId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT count(*), COALESCE(sum(octet_length(subject) + octet_length(body)), 0) FROM emails WHERE user_id = ?",
+                (rs, rowNum) -> new Usage(rs.getLong(1), rs.getLong(2)), userId);
+    }
+
+    public void update(long userId, Usage usage) {
+        jdbcTemplate.update("UPDATE mailbox_usage SET message_count = ?, byte_count = ?, updated_at = now() WHERE user_id = ?",
+                usage.messages(), usage.bytes(), userId);
+    }
+
+    public List<Long> findUserIdsAfter(long afterUserId, int limit) {
+        return jdbcTemplate.queryForList(
+                "SELECT user_id FROM mailbox_usage WHERE user_id > ? ORDER BY user_id LIMIT ?", Long.class, afterUserId, limit);
+    }
+
+    private Optional<Usage> query(String sql, long userId) {
+        List<Usage> usages = jdbcTemplate.query(sql, (rs, rowNum) -> new Usage(rs.getLong(1), rs.getLong(2)), userId);
+        return usages.stream().findFirst();
+    }
+}
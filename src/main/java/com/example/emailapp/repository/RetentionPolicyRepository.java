@@ -0,0 +1,10 @@
+package com.example.emailapp.repository;
+
+import com.example.emailapp.model.RetentionPolicy;
+import com.example.emailapp.sharding.ShardedRepository;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface RetentionPolicyRepository extends JpaRepository<RetentionPolicy, Long>, ShardedRepository {
+}
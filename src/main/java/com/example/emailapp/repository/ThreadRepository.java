@@ -0,0 +1,88 @@
+package com.example.emailapp.repository;
+
+import com.example.emailapp.sharding.ShardedRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Conversation threads of a mailbox. Rows are created here; their counts and last-message time are
+ * maintained by the triggers on {@code emails} (see {@code db/schema.sql}).
+ */
+@Repository
+public class ThreadRepository implements ShardedRepository {
+
+    public record ThreadSummary(long id, String subject, String participants, int messageCount, int unreadCount,
+                                LocalDateTime lastMessageAt) {
+    }
+
+    public record UnthreadedEmail(long id, long userId, String fromEmail, String toEmail, String subject,
+                                  LocalDateTime createdAt) {
+    }
+
+    private static final RowMapper<ThreadSummary> SUMMARY_MAPPER = (rs, rowNum) -> new ThreadSummary(
+            rs.getLong(1), rs.getString(2), rs.getString(3), rs.getInt(4), rs.getInt(5),
+            rs.getObject(6, LocalDateTime.class));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ThreadRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Id of the user's thread with this key, created with the given subject and participants if
+     * there is none yet. A concurrent insert of the same key wins and its thread is returned.
+     */
+    public long findOrCreate(long userId, String threadKey, String subject, String participants,
+                             LocalDateTime createdAt) {
+        Optional<Long> existing = findId(userId, threadKey);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        List<Long> inserted = jdbcTemplate.queryForList(
+                "INSERT INTO threads (user_id, thread_key, subject, participants, last_message_at) VALUES (?, ?, ?, ?, ?) "
+                        + "ON CONFLICT (user_id, thread_key) DO NOTHING RETURNING id",
+                Long.class, userId, threadKey, subject, participants, createdAt);
+        if (!inserted.isEmpty()) {
+            return inserted.get(0);
+        }
+        return findId(userId, threadKey).orElseThrow();
+    }
+
+    // Most recent first; the page starts after (beforeTime, beforeId) when both are given
+    public List<ThreadSummary> findPage(long userId, LocalDateTime beforeTime, Long beforeId, int limit) {
+        String select = "SELECT id, subject, participants, message_count, unread_count, last_message_at FROM threads "
+                + "WHERE user_id = ? AND message_count > 0 ";
+        String order = "ORDER BY last_message_at DESC, id DESC LIMIT ?";
+        if (beforeTime == null || beforeId == null) {
+            return jdbcTemplate.query(select + order, SUMMARY_MAPPER, userId, limit);
+        }
+        return jdbcTemplate.query(select + "AND (last_message_at, id) < (?, ?) " + order, SUMMARY_MAPPER,
+                userId, beforeTime, beforeId, limit);
+    }
+
+    public List<UnthreadedEmail> findUnthreadedEmails(int limit) {
+        return jdbcTemplate.query("SELECT id, user_id, from_email, to_email, subject, created_at FROM emails "
+                        + "WHERE thread_id IS NULL ORDER BY id LIMIT ?",
+                (rs, rowNum) -> new UnthreadedEmail(rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getString(4),
+                        rs.getString(5), rs.getObject(6, LocalDateTime.class)),
+                limit);
+    }
+
+    // Each row is {threadId, emailId}; an email that something else threaded in the meantime is left alone
+    public void assignThreads(List<Object[]> assignments) {
+        jdbcTemplate.batchUpdate("UPDATE emails SET thread_id = ? WHERE id = ? AND thread_id IS NULL", assignments);
+    }
+
+    private Optional<Long> findId(long userId, String threadKey) {
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM threads WHERE user_id = ? AND thread_key = ?", Long.class, userId, threadKey);
+        return ids.stream().findFirst();
+    }
+}
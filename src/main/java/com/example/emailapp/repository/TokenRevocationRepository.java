@@ -0,0 +1,26 @@
+package com.example.emailapp.repository;
+
+import com.example.emailapp.model.TokenRevocation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface TokenRevocationRepository extends JpaRepository<TokenRevocation, Long> {
+    List<TokenRevocation> findTop500ByIdGreaterThanOrderByIdAsc(Long id);
+    List<TokenRevocation> findByExpiresAtAfter(Instant now);
+
+    @Query("SELECT COALESCE(MAX(r.id), 0) FROM TokenRevocation r WHERE r.createdAt < :before")
+    long findMaxIdCreatedBefore(@Param("before") Instant before);
+    
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM TokenRevocation r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") Instant now);
+}
@@ -0,0 +1,14 @@
+package com.example.emailapp.repository;
+
+import com.example.emailapp.model.User;
+
+import java.util.Optional;
+
+/**
+ * Lookups by username, the natural id of {@link User}. They go through Hibernate's natural-id and
+ * entity caches instead of a query, so a cached user costs no database round trip.
+ */
+public interface UserNaturalIdRepository {
+    Optional<User> findByUsername(String username);
+    Boolean existsByUsername(String username);
+}
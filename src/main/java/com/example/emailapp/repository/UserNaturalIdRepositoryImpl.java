@@ -0,0 +1,30 @@
+package com.example.emailapp.repository;
+
+import com.example.emailapp.model.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+// The session has to belong to a transaction: outside one, the shared EntityManager
+// closes the session it unwrapped before it could be used
+@Transactional(readOnly = true)
+public class UserNaturalIdRepositoryImpl implements UserNaturalIdRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Optional<User> findByUsername(String username) {
+        return entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(User.class)
+                .loadOptional(username);
+    }
+
+    @Override
+    public Boolean existsByUsername(String username) {
+        return findByUsername(username).isPresent();
+    }
+}
@@ -1,15 +1,28 @@
 package com.example.emailapp.repository;
 
+import com.example.emailapp.config.CacheConfig;
 import com.example.emailapp.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
-    Optional<User> findByUsername(String username);
+public interface UserRepository extends JpaRepository<User, Long>, UserNaturalIdRepository {
+    
+    // Email is not the natural id, so these go through the query cache instead
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = CacheConfig.USER_QUERIES_REGION)
+    })
     Optional<User> findByEmail(String email);
-    Boolean existsByUsername(String username);
+    
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = CacheConfig.USER_QUERIES_REGION)
+    })
     Boolean existsByEmail(String email);
-}
\ No newline at end of file
+}
@@ -1,5 +1,10 @@
 package com.example.emailapp.security;
 
+import com.example.emailapp.audit.AuditEventType;
+import com.example.emailapp.audit.AuditLog;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -20,10 +25,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtTokenProvider tokenProvider;
     private final UserDetailsService userDetailsService;
+    private final TokenRevocationService revocationService;
+    private final AuditLog auditLog;
 
-    public JwtAuthenticationFilter(JwtTokenProvider tokenProvider, UserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(JwtTokenProvider tokenProvider,
+                                   UserDetailsService userDetailsService,
+                                   TokenRevocationService revocationService,
+                                   AuditLog auditLog) {
         this.tokenProvider = tokenProvider;
         this.userDetailsService = userDetailsService;
+        this.revocationService = revocationService;
+        this.auditLog = auditLog;
     }
 
     @Override
@@ -34,9 +46,18 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         String token = getJwtFromRequest(request);
 
         // Validate token
-        if(StringUtils.hasText(token) && tokenProvider.validateToken(token)) {
+        Claims claims = StringUtils.hasText(token) ? parseToken(token, request) : null;
+
+        // Revoked tokens are treated like missing ones
+        if(claims != null && revocationService.isRevoked(claims.getId(), claims.getSubject(), claims.getIssuedAt())) {
+            auditLog.record(AuditEventType.TOKEN_REJECTED, AuditLog.UNKNOWN_USER, claims.getSubject(),
+                    request.getRemoteAddr(), "revoked");
+            claims = null;
+        }
+
+        if(claims != null) {
             // Get username from token
-            String username = tokenProvider.getUsernameFromToken(token);
+            String username = claims.getSubject();
 
             // Load user details by username
             UserDetails userDetails = userDetailsService.loadUserByUsername(username);
@@ -57,6 +78,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    // Rejected tokens are audited with the name they claim, when it can be read. The request goes on
+    // unauthenticated: /api/auth still works with an expired token, so clients can refresh or log
+    // out, and every other endpoint answers 401 through the entry point.
+    private Claims parseToken(String token, HttpServletRequest request) {
+        try {
+            return tokenProvider.parseToken(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            String username = e instanceof ExpiredJwtException expired ? expired.getClaims().getSubject() : null;
+            auditLog.record(AuditEventType.TOKEN_REJECTED, AuditLog.UNKNOWN_USER, username, request.getRemoteAddr(),
+                    e.getMessage());
+            return null;
+        }
+    }
+
     // Bearer <access_token>
     private String getJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader("Authorization");
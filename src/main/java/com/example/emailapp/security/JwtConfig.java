@@ -0,0 +1,18 @@
+package com.example.emailapp.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+@Configuration
+@ImportRuntimeHints(JwtRuntimeHints.class)
+public class JwtConfig {
+
+    @Bean
+    public JwtKeyRing jwtKeyRing(@Value("${app.jwt.secret}") String legacySecret,
+                                 @Value("${app.jwt.keys:}") String keys,
+                                 @Value("${app.jwt.active-kid:}") String activeKid) {
+        return JwtKeyRing.hmac(legacySecret, keys, activeKid);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.emailapp.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+
+import java.security.Key;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The set of keys tokens may be signed with, identified by the {@code kid} header.
+ * <p>
+ * New tokens are signed with the active key only; every key in the ring can still verify, so a
+ * key can be rotated in by making it active and rotated out once its tokens have expired, without
+ * invalidating live sessions. Verification keys and the parser are built once; tokens without a
+ * {@code kid} (issued before the ring existed) are verified with the legacy key.
+ */
+public class JwtKeyRing {
+
+    public static final String LEGACY_KID = "default";
+
+    private final Map<String, Key> verificationKeys;
+    private final String activeKid;
+    private final Key signingKey;
+    private final SignatureAlgorithm algorithm;
+    private final JwtParser parser;
+
+    public JwtKeyRing(Map<String, Key> verificationKeys, String activeKid, Key signingKey, SignatureAlgorithm algorithm) {
+        if (!verificationKeys.containsKey(activeKid)) {
+            throw new IllegalArgumentException("Active JWT key '" + activeKid + "' is not in the key ring");
+        }
+        this.verificationKeys = Collections.unmodifiableMap(new LinkedHashMap<>(verificationKeys));
+        this.activeKid = activeKid;
+        this.signingKey = signingKey;
+        this.algorithm = algorithm;
+        this.parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    @Override
+                    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                        return verificationKey(header.getKeyId());
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Builds a ring of HMAC keys from {@code kid:base64-secret} entries separated by commas. The
+     * legacy secret is always present under {@link #LEGACY_KID}.
+     */
+    public static JwtKeyRing hmac(String legacySecret, String keys, String activeKid) {
+        Map<String, Key> ring = new LinkedHashMap<>();
+        ring.put(LEGACY_KID, Keys.hmacShaKeyFor(Decoders.BASE64.decode(legacySecret)));
+        if (keys != null) {
+            for (String entry : keys.split(",")) {
+                String trimmed = entry.trim();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                int separator = trimmed.indexOf(':');
+                if (separator <= 0) {
+                    throw new IllegalArgumentException("JWT key entries must look like kid:base64-secret");
+                }
+                ring.put(trimmed.substring(0, separator),
+                        Keys.hmacShaKeyFor(Decoders.BASE64.decode(trimmed.substring(separator + 1))));
+            }
+        }
+        String active = activeKid == null || activeKid.isBlank() ? LEGACY_KID : activeKid;
+        Key signingKey = ring.get(active);
+        return new JwtKeyRing(ring, active, signingKey, SignatureAlgorithm.forSigningKey(signingKey));
+    }
+
+    public String getActiveKid() {
+        return activeKid;
+    }
+
+    public Key getSigningKey() {
+        return signingKey;
+    }
+
+    public SignatureAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    // Thread-safe and shared; building a parser per request is measurably slower
+    public JwtParser getParser() {
+        return parser;
+    }
+
+    private Key verificationKey(String kid) {
+        Key key = verificationKeys.get(kid == null ? LEGACY_KID : kid);
+        if (key == null) {
+            throw new SignatureException("Unknown JWT key id: " + kid);
+        }
+        return key;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.emailapp.security;
+
+import com.example.emailapp.exception.UnauthorizedException;
+import com.example.emailapp.model.RefreshToken;
+import com.example.emailapp.model.User;
+import com.example.emailapp.repository.RefreshTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Issues and rotates refresh tokens.
+ * <p>
+ * A refresh token is a random opaque string; only its SHA-256 is stored, which is enough for a
+ * 256-bit random secret and keeps the refresh path free of password hashing. Each token can be
+ * exchanged exactly once for a new access token and a new refresh token in the same family.
+ * Presenting a token that was already exchanged means it leaked, so the whole family and the
+ * user's outstanding access tokens are revoked.
+ */
+@Service
+public class RefreshTokenService {
+
+    public record Rotation(User user, String refreshToken) {
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final TokenRevocationService revocationService;
+    private final TransactionTemplate transactionTemplate;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    @Value("${app.jwt.refresh-expiration-milliseconds}")
+    private long refreshExpirationInMs;
+
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository,
+                               TokenRevocationService revocationService,
+                               PlatformTransactionManager transactionManager) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.revocationService = revocationService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public String issue(User user) {
+        return issue(user, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Exchanges a refresh token for a new one in the same family.
+     *
+     * @throws UnauthorizedException if the token is unknown, expired, revoked or already used
+     */
+    public Rotation rotate(String refreshToken) {
+        String tokenHash = hash(refreshToken);
+        Rotation rotation = transactionTemplate.execute(status -> {
+            RefreshToken stored = refreshTokenRepository.findByTokenHash(tokenHash)
+                    .orElseThrow(() -> new UnauthorizedException("Invalid refresh token"));
+
+            Instant now = Instant.now();
+            if (stored.getExpiresAt().isBefore(now)) {
+                throw new UnauthorizedException("Refresh token is expired");
+            }
+            if (refreshTokenRepository.markUsed(stored.getId(), now) == 0) {
+                return new Rotation(stored.getUser(), null);
+            }
+            return new Rotation(stored.getUser(), issue(stored.getUser(), stored.getFamilyId()));
+        });
+
+        if (rotation.refreshToken() == null) {
+            handleReuse(tokenHash, rotation.user());
+            throw new UnauthorizedException("Refresh token has already been used");
+        }
+        return rotation;
+    }
+
+    public void revoke(String refreshToken) {
+        transactionTemplate.executeWithoutResult(status -> refreshTokenRepository.findByTokenHash(hash(refreshToken))
+                .ifPresent(stored -> refreshTokenRepository.revokeFamily(stored.getFamilyId(), Instant.now())));
+    }
+
+    public void revokeAllForUser(Long userId) {
+        transactionTemplate.executeWithoutResult(status ->
+                refreshTokenRepository.revokeAllForUser(userId, Instant.now()));
+    }
+
+    @Scheduled(fixedDelayString = "${app.jwt.revocation.cleanup-interval-ms:3600000}")
+    public void deleteExpiredTokens() {
+        transactionTemplate.executeWithoutResult(status -> refreshTokenRepository.deleteExpired(Instant.now()));
+    }
+
+    private void handleReuse(String tokenHash, User user) {
+        transactionTemplate.executeWithoutResult(status -> refreshTokenRepository.findByTokenHash(tokenHash)
+                .ifPresent(stored -> refreshTokenRepository.revokeFamily(stored.getFamilyId(), Instant.now())));
+        revocationService.revokeAllForUser(user.getUsername());
+        logger.warn("Refresh token reuse detected for user {}; token family revoked", user.getUsername());
+    }
+
+    private String issue(User user, String familyId) {
+        byte[] secret = new byte[32];
+        secureRandom.nextBytes(secret);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+
+        RefreshToken refreshToken = RefreshToken.builder()
+                .user(user)
+                .tokenHash(hash(token))
+                .familyId(familyId)
+                .expiresAt(Instant.now().plusMillis(refreshExpirationInMs))
+                .build();
+        refreshTokenRepository.save(refreshToken);
+
+        return token;
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.emailapp.security;
+
+import com.example.emailapp.util.BloomFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * In-memory set of revoked access tokens, checked on every authenticated request.
+ * <p>
+ * Revoked token ids ({@code jti}) are kept in an exact map fronted by a {@link BloomFilter}, so the
+ * common case of a token that was never revoked is answered by a few bit probes without touching
+ * the map. Each entry only needs to live until the token would have expired anyway; entries are
+ * filed in a hashed timing wheel by expiry time and dropped as the wheel advances, after which the
+ * Bloom filter is rebuilt from the survivors.
+ * <p>
+ * "Revoke everything for a user" is kept separately as a per-user cut-off: tokens of that user
+ * issued before the cut-off are rejected. A JWT {@code iat} only has whole seconds, so the cut-off
+ * is truncated to the second as well; a token issued in the same second as the revocation, such as
+ * the one from logging in again right after it, is accepted.
+ */
+public class TokenDenylist {
+
+    private record UserCutoff(long revokedBeforeMillis, long expiresAtMillis) {
+    }
+
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    private final Map<String, UserCutoff> userCutoffs = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String>[] wheel;
+    private final long tickMillis;
+    private final long expectedEntries;
+    private final double falsePositiveRate;
+    private final Object writeLock = new Object();
+
+    private volatile BloomFilter filter;
+    // Last wheel tick that has fully elapsed and been swept
+    private long lastSweptTick;
+
+    @SuppressWarnings("unchecked")
+    public TokenDenylist(long expectedEntries, double falsePositiveRate, long tickMillis, int wheelSize, long now) {
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+        this.tickMillis = tickMillis;
+        this.wheel = new ConcurrentLinkedQueue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.filter = BloomFilter.create(expectedEntries, falsePositiveRate);
+        this.lastSweptTick = now / tickMillis - 1;
+    }
+
+    public boolean isRevoked(String tokenId, String username, long issuedAtMillis) {
+        if (!userCutoffs.isEmpty()) {
+            UserCutoff cutoff = userCutoffs.get(username);
+            if (cutoff != null && issuedAtMillis < cutoff.revokedBeforeMillis()) {
+                return true;
+            }
+        }
+        return tokenId != null && filter.mightContain(tokenId) && revokedTokens.containsKey(tokenId);
+    }
+
+    public void revokeToken(String tokenId, long expiresAtMillis) {
+        synchronized (writeLock) {
+            if (revokedTokens.put(tokenId, expiresAtMillis) != null) {
+                return;
+            }
+            filter.put(tokenId);
+        }
+        wheel[slot(expiresAtMillis)].add(tokenId);
+    }
+
+    public void revokeUser(String username, long revokedBeforeMillis, long expiresAtMillis) {
+        // Same precision as the iat it is compared with
+        long revokedBeforeSecond = revokedBeforeMillis - Math.floorMod(revokedBeforeMillis, 1000L);
+        userCutoffs.merge(username, new UserCutoff(revokedBeforeSecond, expiresAtMillis),
+                (current, added) -> current.revokedBeforeMillis() >= added.revokedBeforeMillis() ? current : added);
+    }
+
+    /**
+     * Advances the wheel to {@code now}, dropping every entry whose token has expired.
+     * Called from a single scheduler thread.
+     */
+    public void expire(long now) {
+        // Only ticks that have fully elapsed are swept, so every entry filed there is due
+        // unless it belongs to a later turn of the wheel
+        long sweepTo = now / tickMillis - 1;
+        long ticks = Math.min(sweepTo - lastSweptTick, wheel.length);
+        int removed = 0;
+        for (long t = sweepTo - ticks + 1; t <= sweepTo; t++) {
+            ConcurrentLinkedQueue<String> bucket = wheel[(int) (t % wheel.length)];
+            List<String> notYetDue = new ArrayList<>();
+            String tokenId;
+            while ((tokenId = bucket.poll()) != null) {
+                Long expiresAt = revokedTokens.get(tokenId);
+                if (expiresAt == null) {
+                    continue;
+                }
+                if (expiresAt <= now) {
+                    revokedTokens.remove(tokenId, expiresAt);
+                    removed++;
+                } else {
+                    // Due on a later turn of the wheel
+                    notYetDue.add(tokenId);
+                }
+            }
+            bucket.addAll(notYetDue);
+        }
+        lastSweptTick = Math.max(lastSweptTick, sweepTo);
+
+        userCutoffs.values().removeIf(cutoff -> cutoff.expiresAtMillis() <= now);
+
+        if (removed > 0) {
+            rebuildFilter();
+        }
+    }
+
+    public int size() {
+        return revokedTokens.size() + userCutoffs.size();
+    }
+
+    private void rebuildFilter() {
+        synchronized (writeLock) {
+            BloomFilter rebuilt = BloomFilter.create(Math.max(expectedEntries, revokedTokens.size()), falsePositiveRate);
+            revokedTokens.keySet().forEach(rebuilt::put);
+            filter = rebuilt;
+        }
+    }
+
+    private int slot(long expiresAtMillis) {
+        return (int) ((expiresAtMillis / tickMillis) % wheel.length);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.emailapp.security;
+
+import com.example.emailapp.model.TokenRevocation;
+import com.example.emailapp.repository.TokenRevocationRepository;
+import com.example.emailapp.util.SequenceCursor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Revokes access tokens and answers whether a token has been revoked.
+ * <p>
+ * Revocations are written to the {@code token_revocations} table and applied to a local
+ * {@link TokenDenylist}. Every node polls the table for rows it has not seen yet, so a logout
+ * on one node takes effect on the others within one poll interval, while the per-request check
+ * stays in memory.
+ */
+@Service
+public class TokenRevocationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    private final TokenRevocationRepository revocationRepository;
+    private final TokenDenylist denylist;
+
+    @Value("${app.jwt.expiration-milliseconds}")
+    private long jwtExpirationInMs;
+
+    @Value("${app.jwt.revocation.gap-timeout-ms:60000}")
+    private long gapTimeoutMs;
+
+    private SequenceCursor cursor;
+
+    public TokenRevocationService(TokenRevocationRepository revocationRepository,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${app.jwt.revocation.expected-entries:100000}") long expectedEntries,
+                                  @Value("${app.jwt.revocation.false-positive-rate:0.001}") double falsePositiveRate,
+                                  @Value("${app.jwt.revocation.wheel-tick-ms:60000}") long wheelTickMs,
+                                  @Value("${app.jwt.revocation.wheel-size:512}") int wheelSize) {
+        this.revocationRepository = revocationRepository;
+        this.denylist = new TokenDenylist(expectedEntries, falsePositiveRate, wheelTickMs, wheelSize,
+                System.currentTimeMillis());
+        Gauge.builder("emailapp.tokens.revoked", denylist, TokenDenylist::size)
+                .description("Revocation entries held in memory")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void loadActiveRevocations() {
+        Instant now = Instant.now();
+        // Rows older than the gap timeout have committed or never will; newer ones may still be in
+        // flight with an id below rows already visible, so polling resumes from before them
+        cursor = new SequenceCursor(revocationRepository.findMaxIdCreatedBefore(now.minusMillis(gapTimeoutMs)),
+                gapTimeoutMs);
+        List<TokenRevocation> active = revocationRepository.findByExpiresAtAfter(now);
+        for (TokenRevocation revocation : active) {
+            apply(revocation);
+            cursor.markProcessed(revocation.getId());
+        }
+        cursor.advance(System.currentTimeMillis());
+        logger.info("Loaded {} active token revocations", active.size());
+    }
+
+    public boolean isRevoked(String tokenId, String username, Date issuedAt) {
+        return denylist.isRevoked(tokenId, username, issuedAt == null ? 0L : issuedAt.getTime());
+    }
+
+    public void revokeToken(String tokenId, Date expiresAt) {
+        TokenRevocation revocation = TokenRevocation.builder()
+                .tokenId(tokenId)
+                .expiresAt(expiresAt.toInstant())
+                .build();
+        apply(revocationRepository.save(revocation));
+    }
+
+    public void revokeAllForUser(String username) {
+        Instant now = Instant.now();
+        TokenRevocation revocation = TokenRevocation.builder()
+                .username(username)
+                .revokedBefore(now)
+                .expiresAt(now.plusMillis(jwtExpirationInMs))
+                .build();
+        apply(revocationRepository.save(revocation));
+    }
+
+    @Scheduled(fixedDelayString = "${app.jwt.revocation.poll-interval-ms:1000}")
+    public void pollRevocations() {
+        // Rows can commit out of id order, so the cursor polls from the first id not seen yet
+        long after = cursor.position();
+        List<TokenRevocation> batch;
+        do {
+            batch = revocationRepository.findTop500ByIdGreaterThanOrderByIdAsc(after);
+            for (TokenRevocation revocation : batch) {
+                after = revocation.getId();
+                if (cursor.markProcessed(revocation.getId())) {
+                    apply(revocation);
+                }
+            }
+        } while (batch.size() == 500);
+        cursor.advance(System.currentTimeMillis());
+    }
+
+    @Scheduled(fixedDelayString = "${app.jwt.revocation.wheel-tick-ms:60000}")
+    public void expireRevocations() {
+        denylist.expire(System.currentTimeMillis());
+    }
+
+    @Scheduled(fixedDelayString = "${app.jwt.revocation.cleanup-interval-ms:3600000}")
+    public void deleteExpiredRevocations() {
+        revocationRepository.deleteExpired(Instant.now());
+    }
+
+    private void apply(TokenRevocation revocation) {
+        long expiresAt = revocation.getExpiresAt().toEpochMilli();
+        if (revocation.getTokenId() != null) {
+            denylist.revokeToken(revocation.getTokenId(), expiresAt);
+        }
+        if (revocation.getUsername() != null && revocation.getRevokedBefore() != null) {
+            denylist.revokeUser(revocation.getUsername(), revocation.getRevokedBefore().toEpochMilli(), expiresAt);
+        }
+    }
+}
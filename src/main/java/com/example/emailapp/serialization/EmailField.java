@@ -0,0 +1,45 @@
+package com.example.emailapp.serialization;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * The fields of an {@code EmailResponse} that a client may select with {@code fields=}, with the
+ * column each one is read from. Declaration order is the order fields are written in.
+ */
+public enum EmailField {
+    ID("id", "id"),
+    USER_ID("userId", "user_id"),
+    FROM_EMAIL("fromEmail", "from_email"),
+    FROM_NAME("fromName", "from_name"),
+    TO_EMAIL("toEmail", "to_email"),
+    SUBJECT("subject", "subject"),
+    BODY("body", "body"),
+    STATUS("status", "status"),
+    READ("read", "read"),
+    STARRED("starred", "starred"),
+    CREATED_AT("createdAt", "created_at"),
+    DELIVERY_STATUS("deliveryStatus", "delivery_status");
+
+    private final String fieldName;
+    private final String column;
+    private final SerializableString serializedName;
+
+    EmailField(String fieldName, String column) {
+        this.fieldName = fieldName;
+        this.column = column;
+        this.serializedName = new SerializedString(fieldName);
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    SerializableString getSerializedName() {
+        return serializedName;
+    }
+}
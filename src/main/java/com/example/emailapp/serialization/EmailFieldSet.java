@@ -0,0 +1,81 @@
+package com.example.emailapp.serialization;
+
+import com.example.emailapp.exception.BadRequestException;
+import org.springframework.util.StringUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * An allow-listed selection of {@link EmailField}s parsed from a {@code fields=} query parameter,
+ * held as a bit mask so it is cheap to test and to use as a cache key.
+ */
+public final class EmailFieldSet {
+
+    public static final EmailFieldSet ALL = new EmailFieldSet((1 << EmailField.values().length) - 1);
+
+    private static final Map<String, EmailField> BY_NAME = new HashMap<>();
+    private static final String ALLOWED = Arrays.stream(EmailField.values())
+            .map(EmailField::getFieldName)
+            .collect(Collectors.joining(", "));
+
+    static {
+        for (EmailField field : EmailField.values()) {
+            BY_NAME.put(field.getFieldName(), field);
+        }
+    }
+
+    private final int mask;
+
+    private EmailFieldSet(int mask) {
+        this.mask = mask;
+    }
+
+    /**
+     * Parses a comma-separated list of field names. A missing or blank value selects every field.
+     *
+     * @throws BadRequestException if a name is not one of the allowed fields
+     */
+    public static EmailFieldSet parse(String fields) {
+        if (!StringUtils.hasText(fields)) {
+            return ALL;
+        }
+        int mask = 0;
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            EmailField field = BY_NAME.get(trimmed);
+            if (field == null) {
+                throw new BadRequestException("Unknown field '" + trimmed + "'. Allowed fields: " + ALLOWED);
+            }
+            mask |= 1 << field.ordinal();
+        }
+        return mask == 0 ? ALL : new EmailFieldSet(mask);
+    }
+
+    public boolean contains(EmailField field) {
+        return (mask & (1 << field.ordinal())) != 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof EmailFieldSet other && other.mask == mask;
+    }
+
+    @Override
+    public int hashCode() {
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.stream(EmailField.values())
+                .filter(this::contains)
+                .map(EmailField::getFieldName)
+                .collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.emailapp.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes {@code EmailResponse}-shaped objects straight to a {@link JsonGenerator}, one row at a time.
+ * <p>
+ * Produces the same document Jackson would for an {@code EmailResponse}, restricted to the
+ * selected {@link EmailFieldSet}, without building the entity, the DTO or a list of either.
+ * Field names are pre-encoded once, and timestamps are formatted by hand into a reused buffer,
+ * so the only per-row allocations are the column values.
+ * The generator may be JSON or CBOR. Instances are not thread-safe; use one per response.
+ */
+public class EmailJsonWriter {
+
+    // Same format Jackson's JavaTimeModule uses for LocalDateTime when timestamps are disabled
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final JsonGenerator generator;
+    private final EmailFieldSet fields;
+    private final char[] dateChars = new char[32];
+
+    public EmailJsonWriter(JsonGenerator generator) {
+        this(generator, EmailFieldSet.ALL);
+    }
+
+    public EmailJsonWriter(JsonGenerator generator, EmailFieldSet fields) {
+        this.generator = generator;
+        this.fields = fields;
+    }
+
+    public void writeStartList() throws IOException {
+        generator.writeStartArray();
+    }
+
+    public void writeEndList() throws IOException {
+        generator.writeEndArray();
+        generator.flush();
+    }
+
+    /**
+     * Writes one email object containing only the selected fields; values of unselected fields
+     * are ignored and may be left as defaults by the caller.
+     */
+    public void writeEmail(long id, long userId, String fromEmail, String fromName, String toEmail,
+                           String subject, String body, String status, boolean read, boolean starred,
+                           LocalDateTime createdAt, String deliveryStatus) throws IOException {
+        generator.writeStartObject();
+        if (fields.contains(EmailField.ID)) {
+            generator.writeFieldName(EmailField.ID.getSerializedName());
+            generator.writeNumber(id);
+        }
+        if (fields.contains(EmailField.USER_ID)) {
+            generator.writeFieldName(EmailField.USER_ID.getSerializedName());
+            generator.writeNumber(userId);
+        }
+        writeString(EmailField.FROM_EMAIL, fromEmail);
+        writeString(EmailField.FROM_NAME, fromName);
+        writeString(EmailField.TO_EMAIL, toEmail);
+        writeString(EmailField.SUBJECT, subject);
+        writeString(EmailField.BODY, body);
+        writeString(EmailField.STATUS, status);
+        if (fields.contains(EmailField.READ)) {
+            generator.writeFieldName(EmailField.READ.getSerializedName());
+            generator.writeBoolean(read);
+        }
+        if (fields.contains(EmailField.STARRED)) {
+            generator.writeFieldName(EmailField.STARRED.getSerializedName());
+            generator.writeBoolean(starred);
+        }
+        if (fields.contains(EmailField.CREATED_AT)) {
+            generator.writeFieldName(EmailField.CREATED_AT.getSerializedName());
+            writeDateTime(createdAt);
+        }
+        writeString(EmailField.DELIVERY_STATUS, deliveryStatus);
+        generator.writeEndObject();
+    }
+
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    private void writeString(EmailField field, String value) throws IOException {
+        if (!fields.contains(field)) {
+            return;
+        }
+        generator.writeFieldName(field.getSerializedName());
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(value);
+        }
+    }
+
+    private void writeDateTime(LocalDateTime value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+            return;
+        }
+        int year = value.getYear();
+        if (year < 0 || year > 9999) {
+            generator.writeString(DATE_TIME_FORMAT.format(value));
+            return;
+        }
+        char[] chars = dateChars;
+        writeDigits(chars, 0, year, 4);
+        chars[4] = '-';
+        writeDigits(chars, 5, value.getMonthValue(), 2);
+        chars[7] = '-';
+        writeDigits(chars, 8, value.getDayOfMonth(), 2);
+        chars[10] = 'T';
+        writeDigits(chars, 11, value.getHour(), 2);
+        chars[13] = ':';
+        writeDigits(chars, 14, value.getMinute(), 2);
+        chars[16] = ':';
+        writeDigits(chars, 17, value.getSecond(), 2);
+        int length = 19;
+        int nanos = value.getNano();
+        if (nanos > 0) {
+            // Fraction without trailing zeros, as ISO_LOCAL_DATE_TIME prints it
+            chars[length++] = '.';
+            int digits = 9;
+            while (nanos % 10 == 0) {
+                nanos /= 10;
+                digits--;
+            }
+            writeDigits(chars, length, nanos, digits);
+            length += digits;
+        }
+        generator.writeString(chars, 0, length);
+    }
+
+    private static void writeDigits(char[] chars, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.emailapp.serialization;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * The wire formats the API can produce: JSON, and CBOR for high-volume clients that ask for
+ * {@code application/cbor}. The CBOR mapper is a copy of the application's JSON mapper, so both
+ * formats carry the same document with the same field names (see {@code docs/api-schema.cddl}).
+ */
+@Component
+public class PayloadFormats {
+
+    public static final MediaType APPLICATION_CBOR = MediaType.parseMediaType("application/cbor");
+
+    private static final List<MediaType> PRODUCIBLE = List.of(MediaType.APPLICATION_JSON, APPLICATION_CBOR);
+
+
+    private final ObjectMapper jsonObjectMapper;
+    private final ObjectMapper cborObjectMapper;
+
+    public PayloadFormats(ObjectMapper objectMapper) {
+        this.jsonObjectMapper = objectMapper;
+        this.cborObjectMapper = objectMapper.copyWith(new CBORFactory());
+    }
+
+    public ObjectMapper getCborObjectMapper() {
+        return cborObjectMapper;
+    }
+
+    /**
+     * Picks the format for a response from the request's {@code Accept} header. Each format takes the
+     * quality of the most specific range that matches it, as in RFC 9110; the higher quality wins,
+     * then the more specific range, and JSON wins ties. JSON is also used when the header is missing
+     * or accepts neither format.
+     */
+    public MediaType negotiate(String acceptHeader) {
+        if (!StringUtils.hasText(acceptHeader)) {
+            return MediaType.APPLICATION_JSON;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(acceptHeader);
+        } catch (IllegalArgumentException e) {
+            return MediaType.APPLICATION_JSON;
+        }
+        MediaType best = MediaType.APPLICATION_JSON;
+        double bestQuality = 0;
+        int bestSpecificity = -1;
+        // JSON comes first, so a later format has to be strictly preferred to replace it
+        for (MediaType producible : PRODUCIBLE) {
+            MediaType range = null;
+            for (MediaType candidate : accepted) {
+                if (candidate.includes(producible) && (range == null || specificity(candidate) > specificity(range))) {
+                    range = candidate;
+                }
+            }
+            if (range == null) {
+                continue;
+            }
+            double quality = range.getQualityValue();
+            if (quality > bestQuality || (quality == bestQuality && quality > 0 && specificity(range) > bestSpecificity)) {
+                best = producible;
+                bestQuality = quality;
+                bestSpecificity = specificity(range);
+            }
+        }
+        return best;
+    }
+
+    public JsonGenerator createGenerator(MediaType format, OutputStream out) throws IOException {
+        ObjectMapper mapper = APPLICATION_CBOR.equals(format) ? cborObjectMapper : jsonObjectMapper;
+        return mapper.getFactory().createGenerator(out, JsonEncoding.UTF8);
+    }
+
+    // */* matches anything, application/* a whole type, application/json one format
+    private static int specificity(MediaType range) {
+        if (range.isWildcardType()) {
+            return 0;
+        }
+        return range.isWildcardSubtype() ? 1 : 2;
+    }
+}
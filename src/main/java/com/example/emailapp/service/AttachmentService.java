@@ -0,0 +1,219 @@
+package com.example.emailapp.service;
+
+import com.example.emailapp.dto.AttachmentResponse;
+import com.example.emailapp.model.Attachment;
+import com.example.emailapp.model.Email;
+import com.example.emailapp.repository.AttachmentRepository;
+import com.example.emailapp.sharding.ShardDataSources;
+import com.example.emailapp.storage.AttachmentStore;
+import com.example.emailapp.storage.StagedContent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Attachment metadata and the lifetime of the stored content it points to.
+ * <p>
+ * Content is shared by every attachment with the same hash and deleted once the last of them is
+ * gone. Uploads and deletions of the same content are serialized through a PostgreSQL advisory
+ * lock keyed by the hash: an upload holds it shared from publishing the content until its row
+ * commits, and the clean-up holds it exclusively on every database from counting the references
+ * until the file is deleted. A clean-up therefore never deletes content that an upload found in
+ * place, and an upload that waited for a clean-up publishes its own copy. Content published by an
+ * upload that rolls back is cleaned up the same way.
+ */
+@Service
+public class AttachmentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentService.class);
+
+    private final AttachmentRepository attachmentRepository;
+    private final AttachmentStore attachmentStore;
+    private final ShardDataSources shardDataSources;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.attachments.max-size-bytes:104857600}")
+    private long maxSizeBytes;
+
+    public AttachmentService(AttachmentRepository attachmentRepository,
+                             AttachmentStore attachmentStore,
+                             ShardDataSources shardDataSources,
+                             PlatformTransactionManager transactionManager) {
+        this.attachmentRepository = attachmentRepository;
+        this.attachmentStore = attachmentStore;
+        this.shardDataSources = shardDataSources;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Streams an upload aside. Call it before any transaction starts, so that a slow upload holds
+     * neither a connection nor a lock, and {@link #discard} the result once it has been added or
+     * turned out not to be needed.
+     */
+    public StagedContent stage(InputStream content) throws IOException {
+        return attachmentStore.stage(content, maxSizeBytes);
+    }
+
+    public void discard(StagedContent staged) {
+        attachmentStore.discard(staged);
+    }
+
+    public Attachment addAttachment(Email email, String fileName, String contentType, StagedContent staged)
+            throws IOException {
+        try {
+            return transactionTemplate.execute(status -> {
+                attachmentRepository.lockContentShared(lockKey(staged.hash()));
+                try {
+                    attachmentStore.publish(staged);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                releaseOnRollback(staged.hash());
+
+                Attachment attachment = new Attachment();
+                attachment.setEmail(email);
+                attachment.setContentHash(staged.hash());
+                attachment.setSize(staged.size());
+                attachment.setFileName(StringUtils.hasText(fileName) ? StringUtils.getFilename(fileName) : staged.hash());
+                attachment.setContentType(normalizeContentType(contentType));
+                return attachmentRepository.save(attachment);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public List<Attachment> getAttachments(Long emailId) {
+        return attachmentRepository.findByEmailId(emailId);
+    }
+
+    @Transactional
+    public void deleteAttachment(Attachment attachment) {
+        attachmentRepository.delete(attachment);
+        releaseContent(List.of(attachment.getContentHash()));
+    }
+
+    /**
+     * Removes the attachment rows of the given emails. Call it from the transaction that deletes
+     * the emails themselves; content no longer referenced is removed once that commits.
+     */
+    @Transactional
+    public void deleteForEmails(Collection<Long> emailIds) {
+        List<String> hashes = attachmentRepository.findContentHashesByEmailIdIn(emailIds);
+        if (hashes.isEmpty()) {
+            return;
+        }
+        attachmentRepository.deleteByEmailIdIn(emailIds);
+        releaseContent(hashes);
+    }
+
+    public AttachmentResponse mapToAttachmentResponse(Attachment attachment) {
+        return AttachmentResponse.builder()
+                .id(attachment.getId())
+                .emailId(attachment.getEmail().getId())
+                .fileName(attachment.getFileName())
+                .contentType(attachment.getContentType())
+                .size(attachment.getSize())
+                .contentHash(attachment.getContentHash())
+                .createdAt(attachment.getCreatedAt())
+                .build();
+    }
+
+    private void releaseContent(List<String> hashes) {
+        Runnable release = () -> hashes.forEach(this::deleteIfUnreferenced);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    release.run();
+                }
+            });
+        } else {
+            release.run();
+        }
+    }
+
+    // Content published for a row that never committed may have no other reference
+    private void releaseOnRollback(String hash) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    deleteIfUnreferenced(hash);
+                }
+            }
+        });
+    }
+
+    private void deleteIfUnreferenced(String hash) {
+        try {
+            deleteIfUnreferenced(hash, shardDataSources.names(), 0);
+        } catch (RuntimeException e) {
+            logger.warn("Could not delete attachment content {}", hash, e);
+        }
+    }
+
+    // Locks the content on each database in turn, main first, and deletes it once every one has no reference
+    private void deleteIfUnreferenced(String hash, List<String> shards, int index) {
+        if (index == shards.size()) {
+            try {
+                attachmentStore.delete(hash);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        String shard = shards.get(index);
+        JdbcTemplate jdbc = shardDataSources.jdbcTemplate(shard);
+        newTransaction(shard).executeWithoutResult(status -> {
+            jdbc.execute("SELECT pg_advisory_xact_lock(" + lockKey(hash) + ")");
+            // The store is shared, so content may still be referenced from another shard's attachments
+            Long count = jdbc.queryForObject("SELECT count(*) FROM attachments WHERE content_hash = ?", Long.class, hash);
+            if (count != null && count == 0) {
+                deleteIfUnreferenced(hash, shards, index + 1);
+            }
+        });
+    }
+
+    // Runs after the caller's transaction has completed, which may still be bound to the same pool
+    private TransactionTemplate newTransaction(String shard) {
+        TransactionTemplate template = new TransactionTemplate(
+                shardDataSources.transactionTemplate(shard).getTransactionManager());
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return template;
+    }
+
+    // Stored as parsed, so that downloads can always send it back; a malformed type is not kept
+    private static String normalizeContentType(String contentType) {
+        if (!StringUtils.hasText(contentType)) {
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+        try {
+            return MediaType.parseMediaType(contentType).toString();
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+    }
+
+    // The leading 64 bits of the SHA-256; a collision only makes two uploads wait for each other
+    private static long lockKey(String hash) {
+        return Long.parseUnsignedLong(hash.substring(0, 16), 16);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,131 @@
+package com.example.emailapp.service;
+
+import com.example.emailapp.config.CacheConfig;
+import com.example.emailapp.model.User;
+import com.example.emailapp.sharding.ShardDirectory;
+import com.example.emailapp.util.SequenceCursor;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the second-level cache of this node consistent with changes made on other nodes.
+ * <p>
+ * A trigger on {@code users} (see {@code db/schema.sql}) records every insert, update and delete
+ * in {@code cache_invalidations}, including changes made outside the application. Each node polls
+ * that table and evicts what the change could have made stale: the user's entry for updates and
+ * deletes, and the cached user queries for any change, since a new user can turn a cached
+ * "email not found" into a wrong answer.
+ * <p>
+ * Changes to {@code user_shards} go through the same table and evict the user's cached shard
+ * placement. Inserted and updated users are also added to the {@link UserAvailabilityService}
+ * filter, whose contents are otherwise only what existed when the node started.
+ */
+@Service
+public class CacheInvalidationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationService.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String USER_SHARD_ENTITY = "UserShard";
+
+    private record Invalidation(long id, String entity, long entityId, String operation) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ShardDirectory shardDirectory;
+    private final UserAvailabilityService userAvailabilityService;
+
+    @Value("${app.cache.invalidation.gap-timeout-ms:60000}")
+    private long gapTimeoutMs;
+
+    @Value("${app.cache.invalidation.retention-minutes:60}")
+    private int retentionMinutes;
+
+    private SequenceCursor cursor;
+
+    public CacheInvalidationService(JdbcTemplate jdbcTemplate,
+                                    EntityManagerFactory entityManagerFactory,
+                                    ShardDirectory shardDirectory,
+                                    UserAvailabilityService userAvailabilityService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+        this.shardDirectory = shardDirectory;
+        this.userAvailabilityService = userAvailabilityService;
+    }
+
+    @PostConstruct
+    void start() {
+        // The cache starts empty, so nothing recorded before now can be stale in it
+        Long latest = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM cache_invalidations", Long.class);
+        cursor = new SequenceCursor(latest, gapTimeoutMs);
+        // Loaded after the position is taken: users inserted meanwhile are replayed, not missed
+        userAvailabilityService.load();
+    }
+
+    @Scheduled(fixedDelayString = "${app.cache.invalidation.poll-interval-ms:1000}")
+    public void pollInvalidations() {
+        long after = cursor.position();
+        List<Invalidation> batch;
+        boolean evictEntities = false;
+        boolean evictQueries = false;
+        Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+
+        do {
+            List<Long> changedUsers = new ArrayList<>();
+            batch = jdbcTemplate.query(
+                    "SELECT id, entity, entity_id, operation FROM cache_invalidations WHERE id > ? ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> new Invalidation(rs.getLong("id"), rs.getString("entity"),
+                            rs.getLong("entity_id"), rs.getString("operation")),
+                    after, BATCH_SIZE);
+
+            for (Invalidation invalidation : batch) {
+                after = invalidation.id();
+                if (!cursor.markProcessed(invalidation.id())) {
+                    continue;
+                }
+                if (USER_SHARD_ENTITY.equals(invalidation.entity())) {
+                    shardDirectory.evict(invalidation.entityId());
+                    continue;
+                }
+                evictQueries = true;
+                if (!"DELETE".equals(invalidation.operation())) {
+                    changedUsers.add(invalidation.entityId());
+                }
+                if (!"INSERT".equals(invalidation.operation())) {
+                    cache.evictEntityData(User.class, invalidation.entityId());
+                    evictEntities = true;
+                }
+            }
+            userAvailabilityService.addChanged(changedUsers);
+        } while (batch.size() == BATCH_SIZE);
+
+        if (evictEntities) {
+            // Natural-id entries are keyed by username, which the row id alone cannot identify
+            cache.evictNaturalIdData(User.class);
+        }
+        if (evictQueries) {
+            cache.evictQueryRegion(CacheConfig.USER_QUERIES_REGION);
+            logger.debug("Applied user cache invalidations up to id {}", after);
+        }
+        cursor.advance(System.currentTimeMillis());
+    }
+
+    @Scheduled(fixedDelayString = "${app.cache.invalidation.cleanup-interval-ms:3600000}")
+    public void deleteOldInvalidations() {
+        jdbcTemplate.update("DELETE FROM cache_invalidations WHERE created_at < now() - make_interval(mins => ?)",
+                retentionMinutes);
+    }
+}
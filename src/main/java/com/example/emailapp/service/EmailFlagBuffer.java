@@ -0,0 +1,253 @@
+package com.example.emailapp.service;
+
+import com.example.emailapp.sharding.ShardContext;
+import com.example.emailapp.sharding.ShardDirectory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for the {@code read} and {@code starred} flags.
+ * <p>
+ * With {@code app.emails.flags.write-behind.enabled} set, flag updates are acknowledged as soon as
+ * they are buffered. Repeated updates of the same email coalesce, and the last value of each flag
+ * wins. The buffer is flushed as one JDBC batch in a single transaction every
+ * {@code flush-interval-ms}, when it holds {@code max-pending} emails, before the same user reads
+ * or changes their mail, and on shutdown.
+ * <p>
+ * The update itself checks ownership ({@code WHERE id = ? AND user_id = ?}), so a buffered update of
+ * someone else's email never reaches the table. Updates are written on the shard that holds the
+ * user's mailbox; those of a mailbox that is being moved wait until the move is done.
+ */
+@Service
+public class EmailFlagBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailFlagBuffer.class);
+
+    // Rows whose flags already have the buffered values are skipped rather than rewritten
+    private static final String UPDATE_FLAGS_SQL =
+            "UPDATE emails SET read = COALESCE(?, read), starred = COALESCE(?, starred) "
+                    + "WHERE id = ? AND user_id = ? AND (read <> COALESCE(?, read) OR starred <> COALESCE(?, starred))";
+    private static final int[] UPDATE_FLAGS_TYPES =
+            {Types.BOOLEAN, Types.BOOLEAN, Types.BIGINT, Types.BIGINT, Types.BOOLEAN, Types.BOOLEAN};
+
+    // A null flag was not changed and keeps its stored value
+    private record PendingFlags(Boolean read, Boolean starred) {
+
+        PendingFlags mergedWith(PendingFlags newer) {
+            return new PendingFlags(newer.read != null ? newer.read : read,
+                    newer.starred != null ? newer.starred : starred);
+        }
+    }
+
+    private record FlagUpdate(long userId, long emailId, PendingFlags flags) {
+    }
+
+    // Pending flags by user and email id. A user's map is only changed inside compute() on the outer
+    // map and is taken out whole when flushed, so it needs no synchronization of its own.
+    private final Map<Long, Map<Long, PendingFlags>> pendingByUser = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // Flushes run one at a time so that an older value can never be written after a newer one
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardDirectory shardDirectory;
+    private final Counter acceptedUpdates;
+    private final Counter writtenRows;
+
+    @Value("${app.emails.flags.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.emails.flags.write-behind.max-pending:1000}")
+    private int maxPending;
+
+    @Value("${app.emails.flags.write-behind.batch-size:500}")
+    private int batchSize;
+
+    private volatile boolean closed;
+
+    public EmailFlagBuffer(JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           ShardDirectory shardDirectory,
+                           MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shardDirectory = shardDirectory;
+        this.acceptedUpdates = Counter.builder("emailapp.flags.updates")
+                .description("Flag updates accepted into the write-behind buffer")
+                .register(meterRegistry);
+        this.writtenRows = Counter.builder("emailapp.flags.writes")
+                .description("Row updates written by write-behind flushes")
+                .register(meterRegistry);
+        Gauge.builder("emailapp.flags.pending", pendingCount, AtomicInteger::get)
+                .description("Emails with flag updates waiting to be flushed")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setRead(long userId, long emailId, boolean read) {
+        buffer(userId, emailId, new PendingFlags(read, null));
+    }
+
+    public void setStarred(long userId, long emailId, boolean starred) {
+        buffer(userId, emailId, new PendingFlags(null, starred));
+    }
+
+    // Writes the user's pending updates so that what they read next includes them. A running flush
+    // may have taken them but not written them yet, so the user's entry being gone is only enough
+    // when no flush holds the lock; it is taken before entries are removed, so check in this order.
+    public void flushUser(long userId) {
+        if (!pendingByUser.containsKey(userId) && !flushLock.isLocked()) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            write(take(userId));
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.emails.flags.write-behind.flush-interval-ms:500}")
+    public void flush() {
+        if (pendingByUser.isEmpty()) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            List<FlagUpdate> updates = new ArrayList<>();
+            for (Long userId : pendingByUser.keySet()) {
+                updates.addAll(take(userId));
+            }
+            write(updates);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        // The web server has stopped accepting requests by now; anything arriving late is written directly
+        closed = true;
+        flush();
+        if (pendingCount.get() > 0) {
+            logger.error("{} email flag updates could not be written before shutdown", pendingCount.get());
+        }
+    }
+
+    private void buffer(long userId, long emailId, PendingFlags flags) {
+        acceptedUpdates.increment();
+        pendingByUser.compute(userId, (id, pending) -> {
+            Map<Long, PendingFlags> emails = pending != null ? pending : new HashMap<>();
+            if (emails.merge(emailId, flags, PendingFlags::mergedWith) == flags) {
+                pendingCount.incrementAndGet();
+            }
+            return emails;
+        });
+
+        if (closed) {
+            flushUser(userId);
+        } else if (pendingCount.get() >= maxPending && flushLock.tryLock()) {
+            // Flushing on the request thread also slows writers down when flushes fall behind
+            try {
+                flush();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    private List<FlagUpdate> take(long userId) {
+        Map<Long, PendingFlags> emails = pendingByUser.remove(userId);
+        if (emails == null) {
+            return List.of();
+        }
+        pendingCount.addAndGet(-emails.size());
+        List<FlagUpdate> updates = new ArrayList<>(emails.size());
+        emails.forEach((emailId, flags) -> updates.add(new FlagUpdate(userId, emailId, flags)));
+        return updates;
+    }
+
+    private void write(List<FlagUpdate> updates) {
+        Map<String, List<FlagUpdate>> updatesByShard = new LinkedHashMap<>();
+        List<FlagUpdate> deferred = new ArrayList<>();
+        try {
+            for (FlagUpdate update : updates) {
+                ShardDirectory.Placement placement = shardDirectory.placementOf(update.userId());
+                if (placement.moving()) {
+                    deferred.add(update);
+                } else {
+                    updatesByShard.computeIfAbsent(placement.shard(), shard -> new ArrayList<>()).add(update);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Failed to look up the shards of {} email flag updates; they will be retried", updates.size(), e);
+            requeue(updates);
+            return;
+        }
+
+        updatesByShard.forEach((shard, shardUpdates) -> ShardContext.runOn(shard, () -> writeBatches(shardUpdates)));
+        requeue(deferred);
+    }
+
+    private void writeBatches(List<FlagUpdate> updates) {
+        for (int from = 0; from < updates.size(); from += batchSize) {
+            List<FlagUpdate> batch = updates.subList(from, Math.min(from + batchSize, updates.size()));
+            List<Object[]> rows = new ArrayList<>(batch.size());
+            for (FlagUpdate update : batch) {
+                PendingFlags flags = update.flags();
+                rows.add(new Object[] {flags.read(), flags.starred(), update.emailId(), update.userId(),
+                        flags.read(), flags.starred()});
+            }
+            try {
+                int[] counts = transactionTemplate.execute(status ->
+                        jdbcTemplate.batchUpdate(UPDATE_FLAGS_SQL, rows, UPDATE_FLAGS_TYPES));
+                writtenRows.increment(Arrays.stream(counts).filter(count -> count > 0).sum());
+            } catch (RuntimeException e) {
+                logger.error("Failed to write {} email flag updates; they will be retried", batch.size(), e);
+                requeue(updates.subList(from, updates.size()));
+                return;
+            }
+        }
+    }
+
+    // Puts unwritten updates back, underneath anything buffered since they were taken
+    private void requeue(List<FlagUpdate> updates) {
+        for (FlagUpdate update : updates) {
+            pendingByUser.compute(update.userId(), (id, pending) -> {
+                Map<Long, PendingFlags> emails = pending != null ? pending : new HashMap<>();
+                PendingFlags newer = emails.get(update.emailId());
+                if (newer == null) {
+                    emails.put(update.emailId(), update.flags());
+                    pendingCount.incrementAndGet();
+                } else {
+                    emails.put(update.emailId(), update.flags().mergedWith(newer));
+                }
+                return emails;
+            });
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.example.emailapp.model.Email;
 import com.example.emailapp.model.User;
 import com.example.emailapp.repository.EmailRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -16,9 +17,11 @@ import java.util.stream.Collectors;
 public class EmailService {
     
     private final EmailRepository emailRepository;
+    private final AttachmentService attachmentService;
     
-    public EmailService(EmailRepository emailRepository) {
+    public EmailService(EmailRepository emailRepository, AttachmentService attachmentService) {
         this.emailRepository = emailRepository;
+        this.attachmentService = attachmentService;
     }
     
     public List<EmailResponse> getUserEmails(Long userId, String status) {
@@ -69,6 +72,11 @@ public class EmailService {
     public EmailResponse updateEmailStatus(Long id, String status, Long userId) {
         Email email = validateEmailOwnership(id, userId);
         
+        if (status.equals("trash") && !"trash".equals(email.getStatus())) {
+            email.setTrashedAt(LocalDateTime.now());
+        } else if (!status.equals("trash")) {
+            email.setTrashedAt(null);
+        }
         email.setStatus(status);
         Email updatedEmail = emailRepository.save(email);
         
@@ -93,9 +101,11 @@ public class EmailService {
         return mapToEmailResponse(updatedEmail);
     }
     
+    @Transactional
     public boolean deleteEmail(Long id, Long userId) {
         Email email = validateEmailOwnership(id, userId);
         
+        attachmentService.deleteForEmails(List.of(email.getId()));
         emailRepository.delete(email);
         return true;
     }
@@ -124,6 +134,7 @@ public class EmailService {
                 .read(email.isRead())
                 .starred(email.isStarred())
                 .createdAt(email.getCreatedAt())
+                .deliveryStatus(email.getDeliveryStatus())
                 .build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,228 @@
+package com.example.emailapp.service;
+
+import com.example.emailapp.exception.BadRequestException;
+import com.example.emailapp.exception.IdempotencyKeyReusedException;
+import com.example.emailapp.repository.IdempotencyKeyRepository;
+import com.example.emailapp.repository.IdempotencyKeyRepository.StoredResponse;
+import com.example.emailapp.sharding.ShardContext;
+import com.example.emailapp.sharding.ShardDataSources;
+import com.example.emailapp.util.StripedExpiringCache;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes create requests safe to retry with an {@code Idempotency-Key} header.
+ * <p>
+ * The first request with a key reserves it in the {@code idempotency_keys} table, in the same
+ * transaction as the write it guards, and stores the response there before committing. A retry
+ * with the same key gets that response back, marked with {@code Idempotent-Replayed: true},
+ * without running the write again. Recent responses are also held in memory, so a retry that
+ * reaches the same node is answered without touching the database. A retry that reaches another
+ * node finds the key in the table; one that arrives while the first request is still running
+ * waits for it on the key's row. Reusing a key for a different request is rejected with 422.
+ * Keys are forgotten after {@code app.idempotency.ttl-seconds}.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String KEY_HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    @FunctionalInterface
+    public interface Action<T> {
+        ResponseEntity<T> execute() throws IOException;
+    }
+
+    private final IdempotencyKeyRepository repository;
+    private final ShardDataSources shardDataSources;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final StripedExpiringCache<String, StoredResponse> recentResponses;
+    private final long ttlSeconds;
+    private final Counter memoryReplays;
+    private final Counter databaseReplays;
+
+    @Value("${app.idempotency.cleanup-batch-size:1000}")
+    private int cleanupBatchSize;
+
+    public IdempotencyService(IdempotencyKeyRepository repository,
+                              ShardDataSources shardDataSources,
+                              ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.idempotency.ttl-seconds:86400}") long ttlSeconds,
+                              @Value("${app.idempotency.max-entries:100000}") long maxEntries,
+                              @Value("${app.idempotency.stripes:64}") int stripes) {
+        this.repository = repository;
+        this.shardDataSources = shardDataSources;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttlSeconds = ttlSeconds;
+        this.recentResponses = new StripedExpiringCache<>(stripes, maxEntries, ttlSeconds, TimeUnit.SECONDS);
+        this.memoryReplays = Counter.builder("emailapp.idempotency.replays.memory")
+                .description("Retries answered from the in-memory store of recent responses")
+                .register(meterRegistry);
+        this.databaseReplays = Counter.builder("emailapp.idempotency.replays.database")
+                .description("Retries answered from the idempotency_keys table")
+                .register(meterRegistry);
+        Gauge.builder("emailapp.idempotency.entries", recentResponses, StripedExpiringCache::size)
+                .description("Responses held in the in-memory idempotency store")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs {@code action} once per key. Without a key it simply runs. {@code request} identifies
+     * what was asked for, together with {@code operation}; a retry must send the same.
+     * Only 2xx responses are stored; any other outcome frees the key for another attempt.
+     *
+     * @throws IdempotencyKeyReusedException if the key was used for a different request
+     */
+    public <T> ResponseEntity<T> execute(long userId, String key, String operation, Object request,
+                                         Class<T> responseType, Action<T> action) throws IOException {
+        if (key == null) {
+            return action.execute();
+        }
+        validate(key);
+        String requestHash = fingerprint(operation, request);
+        String cacheKey = userId + ":" + key;
+
+        StoredResponse recent = recentResponses.get(cacheKey);
+        if (recent != null) {
+            memoryReplays.increment();
+            return replay(recent, requestHash, responseType);
+        }
+
+        try {
+            return transactionTemplate.execute(status -> {
+                if (!repository.reserve(userId, key, requestHash, Instant.now().plusSeconds(ttlSeconds))) {
+                    // Another request with this key committed first
+                    StoredResponse stored = repository.find(userId, key)
+                            .filter(response -> response.status() != 0)
+                            .orElseThrow(() -> new IllegalStateException("Idempotency key " + key + " has no response"));
+                    recentResponses.put(cacheKey, stored);
+                    databaseReplays.increment();
+                    return replay(stored, requestHash, responseType);
+                }
+
+                ResponseEntity<T> response = run(action);
+                if (!response.getStatusCode().is2xxSuccessful()) {
+                    repository.release(userId, key);
+                    return response;
+                }
+                StoredResponse stored = new StoredResponse(requestHash, response.getStatusCode().value(),
+                        serialize(response.getBody()));
+                repository.complete(userId, key, stored.status(), stored.body());
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        recentResponses.put(cacheKey, stored);
+                    }
+                });
+                return response;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.idempotency.cleanup-interval-ms:600000}",
+               initialDelayString = "${app.idempotency.cleanup-initial-delay-ms:60000}")
+    public void deleteExpiredKeys() {
+        long deleted = 0;
+        for (String shard : shardDataSources.names()) {
+            deleted += ShardContext.callOn(shard, () -> {
+                long shardDeleted = 0;
+                int batch;
+                do {
+                    batch = repository.deleteExpired(cleanupBatchSize);
+                    shardDeleted += batch;
+                } while (batch == cleanupBatchSize);
+                return shardDeleted;
+            });
+        }
+        if (deleted > 0) {
+            logger.info("Deleted {} expired idempotency keys", deleted);
+        }
+    }
+
+    private <T> ResponseEntity<T> replay(StoredResponse stored, String requestHash, Class<T> responseType) {
+        if (!stored.requestHash().equals(requestHash)) {
+            throw new IdempotencyKeyReusedException("Idempotency-Key was already used for a different request");
+        }
+        try {
+            return ResponseEntity.status(stored.status())
+                    .header(REPLAYED_HEADER, "true")
+                    .body(objectMapper.readValue(stored.body(), responseType));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored idempotent response cannot be read", e);
+        }
+    }
+
+    private static <T> ResponseEntity<T> run(Action<T> action) {
+        try {
+            return action.execute();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String serialize(Object body) {
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Response cannot be stored for idempotent replay", e);
+        }
+    }
+
+    private String fingerprint(String operation, Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Request cannot be fingerprinted", e);
+        }
+    }
+
+    private static void validate(String key) {
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new BadRequestException("Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters long");
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c < 0x21 || c > 0x7e) {
+                throw new BadRequestException("Idempotency-Key may only contain visible ASCII characters");
+            }
+        }
+    }
+}
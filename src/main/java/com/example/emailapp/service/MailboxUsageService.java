@@ -0,0 +1,197 @@
+package com.example.emailapp.service;
+
+import com.example.emailapp.dto.MailboxUsageResponse;
+import com.example.emailapp.exception.QuotaExceededException;
+import com.example.emailapp.repository.MailboxUsageRepository;
+import com.example.emailapp.repository.MailboxUsageRepository.Usage;
+import com.example.emailapp.sharding.ShardContext;
+import com.example.emailapp.sharding.ShardDataSources;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Mailbox quotas: how many emails a user may keep and how many bytes of subject and body.
+ * <p>
+ * Usage is counted by triggers on {@code emails} (see {@code db/schema.sql}), in the transaction
+ * that inserts or deletes the rows, so every path that creates, deletes or purges mail keeps
+ * it current without code of its own. Sending reads the counters with the user's row locked,
+ * which makes concurrent sends of one user take turns while other users are not held up.
+ * A background job recounts each mailbox now and then and corrects any drift.
+ */
+@Service
+public class MailboxUsageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailboxUsageService.class);
+
+    private final MailboxUsageRepository mailboxUsageRepository;
+    private final ShardDataSources shardDataSources;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter rejectedSends;
+    private final Counter correctedMailboxes;
+
+    @Value("${app.quota.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.quota.max-messages:100000}")
+    private long maxMessages;
+
+    @Value("${app.quota.max-bytes:1073741824}")
+    private long maxBytes;
+
+    @Value("${app.quota.reconcile.batch-size:200}")
+    private int reconcileBatchSize;
+
+    @Value("${app.quota.reconcile.batch-pause-ms:100}")
+    private long reconcileBatchPauseMs;
+
+    public MailboxUsageService(MailboxUsageRepository mailboxUsageRepository,
+                               ShardDataSources shardDataSources,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry) {
+        this.mailboxUsageRepository = mailboxUsageRepository;
+        this.shardDataSources = shardDataSources;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rejectedSends = Counter.builder("emailapp.quota.rejected")
+                .description("Emails refused because the mailbox was full")
+                .register(meterRegistry);
+        this.correctedMailboxes = Counter.builder("emailapp.quota.reconcile.corrected")
+                .description("Mailboxes whose usage counters had drifted and were corrected")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Checks that one more email with this subject and body fits the user's quota. Call it from
+     * the transaction that inserts the email; the user's counters stay locked until it ends.
+     *
+     * @throws QuotaExceededException if the mailbox is full
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void checkQuota(long userId, String subject, String body) {
+        if (!enabled) {
+            return;
+        }
+        Usage usage = mailboxUsageRepository.lock(userId).orElse(null);
+        if (usage == null) {
+            mailboxUsageRepository.createIfAbsent(userId);
+            usage = mailboxUsageRepository.lock(userId).orElseThrow();
+        }
+
+        long size = sizeOf(subject) + sizeOf(body);
+        if (usage.messages() + 1 > maxMessages) {
+            rejectedSends.increment();
+            throw new QuotaExceededException("Mailbox is full: it already holds " + usage.messages() + " of "
+                    + maxMessages + " emails");
+        }
+        if (usage.bytes() + size > maxBytes) {
+            rejectedSends.increment();
+            throw new QuotaExceededException("Mailbox is full: " + usage.bytes() + " of " + maxBytes
+                    + " bytes are used and the email needs " + size);
+        }
+    }
+
+    public MailboxUsageResponse getUsage(long userId) {
+        Usage usage = mailboxUsageRepository.find(userId).orElse(new Usage(0, 0));
+        return MailboxUsageResponse.builder()
+                .messageCount(usage.messages())
+                .byteCount(usage.bytes())
+                .maxMessages(maxMessages)
+                .maxBytes(maxBytes)
+                .build();
+    }
+
+    @Scheduled(fixedDelayString = "${app.quota.reconcile.interval-ms:3600000}",
+               initialDelayString = "${app.quota.reconcile.initial-delay-ms:300000}")
+    public void reconcile() {
+        long corrected = 0;
+        for (String shard : shardDataSources.names()) {
+            corrected += ShardContext.callOn(shard, this::reconcileShard);
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+        if (corrected > 0) {
+            logger.warn("Corrected the usage counters of {} mailboxes", corrected);
+        }
+    }
+
+    // Reconciles the shard selected in ShardContext, one mailbox per short transaction
+    private long reconcileShard() {
+        long corrected = 0;
+        long afterUserId = Long.MIN_VALUE;
+        while (true) {
+            List<Long> userIds = mailboxUsageRepository.findUserIdsAfter(afterUserId, reconcileBatchSize);
+            for (Long userId : userIds) {
+                if (Boolean.TRUE.equals(transactionTemplate.execute(status -> reconcileMailbox(userId)))) {
+                    corrected++;
+                }
+            }
+            if (userIds.size() < reconcileBatchSize || !pause()) {
+                return corrected;
+            }
+            afterUserId = userIds.get(userIds.size() - 1);
+        }
+    }
+
+    /*
+     * Any transaction that has inserted or deleted emails of the user but not committed yet holds
+     * the row through its trigger. Once the lock is granted, the count sees everything committed
+     * and nothing can change until this transaction ends.
+     */
+    private boolean reconcileMailbox(long userId) {
+        Usage recorded = mailboxUsageRepository.lock(userId).orElse(null);
+        if (recorded == null) {
+            return false;
+        }
+        Usage actual = mailboxUsageRepository.countEmails(userId);
+        if (actual.equals(recorded)) {
+            return false;
+        }
+        logger.info("Usage of mailbox {} was {} but is {}", userId, recorded, actual);
+        mailboxUsageRepository.update(userId, actual);
+        correctedMailboxes.increment();
+        return true;
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(reconcileBatchPauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Bytes of the UTF-8 encoding, which is what octet_length counts in the database
+    private static long sizeOf(String text) {
+        if (text == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
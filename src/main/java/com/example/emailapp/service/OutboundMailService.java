@@ -0,0 +1,448 @@
+package com.example.emailapp.service;
+
+import com.example.emailapp.mail.OutboundMessage;
+import com.example.emailapp.mail.SmtpConnection;
+import com.example.emailapp.mail.SmtpConnectionPool;
+import com.example.emailapp.mail.SmtpReply;
+import com.example.emailapp.mail.SmtpRoute;
+import com.example.emailapp.model.Email;
+import com.example.emailapp.model.OutboxMessage;
+import com.example.emailapp.repository.OutboxRepository;
+import com.example.emailapp.sharding.ShardContext;
+import com.example.emailapp.sharding.ShardDataSources;
+import com.example.emailapp.sharding.ShardDirectory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Delivers email for external recipients through SMTP, fed from the {@code outbox} table.
+ * <p>
+ * Sending an email to a domain outside {@code app.mail.local-domains} writes an outbox row in the
+ * same transaction as the email, so a message is never lost between the two. Every
+ * {@code poll-interval-ms} the worker claims due messages on each shard with a lease
+ * ({@code FOR UPDATE SKIP LOCKED}, so several nodes can share the work), groups them by
+ * recipient domain and sends each group in pipelined chunks over pooled connections, domains in
+ * parallel. A 5xx reply fails the message; a 4xx reply or a connection problem defers it with
+ * exponential backoff and jitter until {@code max-attempts} is reached. The outcome is written
+ * back to {@code emails.delivery_status}. Delivery is at least once: a node that dies between
+ * the server's reply and the write-back sends the message again when its lease runs out.
+ */
+@Service
+public class OutboundMailService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundMailService.class);
+
+    public static final String QUEUED = "queued";
+    public static final String DEFERRED = "deferred";
+    public static final String DELIVERED = "delivered";
+    public static final String FAILED = "failed";
+
+    private static final String CLAIM_SQL =
+            "UPDATE outbox o SET locked_until = now() + ? * interval '1 millisecond' FROM emails e "
+                    + "WHERE e.id = o.email_id AND o.email_id IN ("
+                    + "SELECT email_id FROM outbox WHERE status = 'pending' AND next_attempt_at <= now() "
+                    + "AND (locked_until IS NULL OR locked_until < now()) "
+                    + "ORDER BY next_attempt_at LIMIT ? FOR UPDATE SKIP LOCKED) "
+                    + "RETURNING o.email_id, o.user_id, o.recipient, o.domain, o.attempts, o.created_at, "
+                    + "e.from_email, e.from_name, e.subject, e.body";
+    private static final String DELETE_DELIVERED_SQL = "DELETE FROM outbox WHERE email_id = ?";
+    private static final String DEFER_SQL =
+            "UPDATE outbox SET attempts = ?, next_attempt_at = ?, locked_until = NULL, last_error = ? WHERE email_id = ?";
+    private static final String FAIL_SQL =
+            "UPDATE outbox SET status = 'failed', attempts = ?, locked_until = NULL, last_error = ? WHERE email_id = ?";
+    private static final String RELEASE_SQL = "UPDATE outbox SET locked_until = NULL WHERE email_id = ?";
+    private static final String UPDATE_EMAIL_SQL = "UPDATE emails SET delivery_status = ? WHERE id = ?";
+
+    private record Claimed(OutboundMessage message, long userId, String domain, int attempts, Instant queuedAt) {
+    }
+
+    private record Outcome(Claimed claimed, SmtpReply reply) {
+    }
+
+    private record Run(int delivered, int deferred, int failed) {
+
+        Run plus(Run other) {
+            return new Run(delivered + other.delivered, deferred + other.deferred, failed + other.failed);
+        }
+    }
+
+    private final OutboxRepository outboxRepository;
+    private final SmtpConnectionPool connectionPool;
+    private final ShardDataSources shardDataSources;
+    private final ShardDirectory shardDirectory;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Set<String> localDomains;
+    private final ExecutorService senders;
+
+    private final Counter deliveredMessages;
+    private final Counter deferredMessages;
+    private final Counter failedMessages;
+    private final Timer queueLatency;
+    private final Timer chunkTimer;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong oldestPendingSeconds = new AtomicLong();
+
+    @Value("${app.mail.delivery.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.mail.delivery.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.mail.delivery.max-batches-per-run:20}")
+    private int maxBatchesPerRun;
+
+    @Value("${app.mail.delivery.chunk-size:50}")
+    private int chunkSize;
+
+    @Value("${app.mail.delivery.lease-ms:300000}")
+    private long leaseMs;
+
+    @Value("${app.mail.delivery.borrow-timeout-ms:30000}")
+    private long borrowTimeoutMs;
+
+    @Value("${app.mail.delivery.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${app.mail.delivery.initial-backoff-ms:60000}")
+    private long initialBackoffMs;
+
+    @Value("${app.mail.delivery.max-backoff-ms:3600000}")
+    private long maxBackoffMs;
+
+    public OutboundMailService(OutboxRepository outboxRepository,
+                               SmtpConnectionPool connectionPool,
+                               ShardDataSources shardDataSources,
+                               ShardDirectory shardDirectory,
+                               JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.mail.local-domains:}") String localDomains,
+                               @Value("${app.mail.delivery.threads:8}") int threads) {
+        this.outboxRepository = outboxRepository;
+        this.connectionPool = connectionPool;
+        this.shardDataSources = shardDataSources;
+        this.shardDirectory = shardDirectory;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.localDomains = Arrays.stream(localDomains.split(","))
+                .map(domain -> domain.trim().toLowerCase(Locale.ROOT))
+                .filter(domain -> !domain.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "smtp-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.deliveredMessages = Counter.builder("emailapp.mail.delivered")
+                .description("Messages accepted by the receiving SMTP server")
+                .register(meterRegistry);
+        this.deferredMessages = Counter.builder("emailapp.mail.deferred")
+                .description("Delivery attempts that failed temporarily and will be retried")
+                .register(meterRegistry);
+        this.failedMessages = Counter.builder("emailapp.mail.failed")
+                .description("Messages refused permanently or out of attempts")
+                .register(meterRegistry);
+        this.queueLatency = Timer.builder("emailapp.mail.queue.latency")
+                .description("Time from sending an email to its acceptance by the receiving server")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.chunkTimer = Timer.builder("emailapp.mail.chunk")
+                .description("Time spent sending one pipelined chunk over one connection")
+                .register(meterRegistry);
+        FunctionCounter.builder("emailapp.mail.connections.opened", connectionPool, SmtpConnectionPool::getOpenedConnections)
+                .description("SMTP connections opened; compare with emailapp.mail.delivered to see reuse")
+                .register(meterRegistry);
+        Gauge.builder("emailapp.mail.outbox.pending", pending, AtomicLong::get)
+                .description("Messages in the outbox waiting for delivery at the end of the last run")
+                .register(meterRegistry);
+        Gauge.builder("emailapp.mail.outbox.oldest", oldestPendingSeconds, AtomicLong::get)
+                .description("Age of the oldest message waiting for delivery at the end of the last run")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // True when the recipient is outside the local domains and delivery is enabled
+    public boolean isOutbound(String toEmail) {
+        String domain = domainOf(toEmail);
+        return enabled && domain != null && !localDomains.contains(domain);
+    }
+
+    /**
+     * Queues a saved outbound email for delivery. Must run in the transaction that saved it, with
+     * its delivery status already set to {@link #QUEUED}.
+     */
+    public void enqueue(Email email) {
+        Instant now = Instant.now();
+        outboxRepository.save(OutboxMessage.builder()
+                .emailId(email.getId())
+                .userId(email.getUser().getId())
+                .recipient(email.getToEmail())
+                .domain(domainOf(email.getToEmail()))
+                .status(OutboxMessage.PENDING)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build());
+    }
+
+    @Scheduled(fixedDelayString = "${app.mail.delivery.poll-interval-ms:1000}")
+    public void deliver() {
+        if (!enabled) {
+            return;
+        }
+        connectionPool.evictIdle();
+
+        long started = System.nanoTime();
+        Run total = new Run(0, 0, 0);
+        long waiting = 0;
+        Instant oldest = null;
+        for (String shard : shardDataSources.names()) {
+            total = total.plus(ShardContext.callOn(shard, () -> deliverShard(shard)));
+            Map<String, Object> backlog = ShardContext.callOn(shard, () -> jdbcTemplate.queryForMap(
+                    "SELECT count(*) AS waiting, min(created_at) AS oldest FROM outbox WHERE status = 'pending'"));
+            waiting += ((Number) backlog.get("waiting")).longValue();
+            Timestamp shardOldest = (Timestamp) backlog.get("oldest");
+            if (shardOldest != null && (oldest == null || shardOldest.toInstant().isBefore(oldest))) {
+                oldest = shardOldest.toInstant();
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+
+        pending.set(waiting);
+        oldestPendingSeconds.set(oldest == null ? 0 : Math.max(0, Duration.between(oldest, Instant.now()).toSeconds()));
+        if (total.delivered() + total.deferred() + total.failed() > 0) {
+            logger.info("Outbound mail: {} delivered, {} deferred, {} failed in {} ms, {} waiting",
+                    total.delivered(), total.deferred(), total.failed(), (System.nanoTime() - started) / 1_000_000, waiting);
+        }
+    }
+
+    @PreDestroy
+    void stopSenders() {
+        senders.shutdownNow();
+    }
+
+    // Delivers due messages of the shard selected in ShardContext
+    private Run deliverShard(String shard) {
+        Run run = new Run(0, 0, 0);
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            List<Claimed> claimed = claim();
+            if (claimed.isEmpty()) {
+                break;
+            }
+            run = run.plus(send(shard, claimed));
+            if (claimed.size() < batchSize || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+        return run;
+    }
+
+    private List<Claimed> claim() {
+        return transactionTemplate.execute(status -> jdbcTemplate.query(CLAIM_SQL, (rs, rowNum) -> new Claimed(
+                new OutboundMessage(rs.getLong("email_id"), rs.getString("from_email"), rs.getString("from_name"),
+                        rs.getString("recipient"), rs.getString("subject"), rs.getString("body"),
+                        rs.getTimestamp("created_at").toInstant()),
+                rs.getLong("user_id"),
+                rs.getString("domain"),
+                rs.getInt("attempts"),
+                rs.getTimestamp("created_at").toInstant()), leaseMs, batchSize));
+    }
+
+    // Sends one claimed batch: chunks of each domain run on the sender threads, and each chunk's
+    // outcome is written back as soon as it is known
+    private Run send(String shard, List<Claimed> claimed) {
+        Map<String, List<Claimed>> byDomain = new LinkedHashMap<>();
+        List<Claimed> notHere = new ArrayList<>();
+        List<Outcome> unsendable = new ArrayList<>();
+        for (Claimed message : claimed) {
+            // Mail of a mailbox that is moving, or has just moved, goes out from its new shard
+            ShardDirectory.Placement placement = shardDirectory.placementOf(message.userId());
+            if (placement.moving() || !placement.shard().equals(shard)) {
+                notHere.add(message);
+            } else if (!message.message().hasValidAddresses()) {
+                unsendable.add(new Outcome(message, new SmtpReply(553, "Invalid sender or recipient address")));
+            } else {
+                byDomain.computeIfAbsent(message.domain(), domain -> new ArrayList<>()).add(message);
+            }
+        }
+        if (!notHere.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(RELEASE_SQL,
+                    notHere.stream().map(message -> new Object[] {message.message().emailId()}).toList()));
+        }
+
+        List<Future<Run>> chunks = new ArrayList<>();
+        byDomain.forEach((domain, messages) -> {
+            SmtpRoute route = connectionPool.routeFor(domain);
+            for (int from = 0; from < messages.size(); from += chunkSize) {
+                List<Claimed> chunk = messages.subList(from, Math.min(from + chunkSize, messages.size()));
+                chunks.add(senders.submit(() -> ShardContext.callOn(shard, () -> sendChunk(route, chunk))));
+            }
+        });
+
+        Run run = unsendable.isEmpty() ? new Run(0, 0, 0) : record(unsendable);
+        for (Future<Run> chunk : chunks) {
+            try {
+                run = run.plus(chunk.get());
+            } catch (InterruptedException e) {
+                // The leases of unfinished chunks expire and their messages are sent again later
+                Thread.currentThread().interrupt();
+                chunks.forEach(pendingChunk -> pendingChunk.cancel(true));
+                break;
+            } catch (ExecutionException e) {
+                logger.error("Sending a chunk of outbound mail failed; its messages are retried when their lease expires",
+                        e.getCause());
+            }
+        }
+        return run;
+    }
+
+    private Run sendChunk(SmtpRoute route, List<Claimed> chunk) {
+        List<OutboundMessage> messages = chunk.stream().map(Claimed::message).toList();
+        SmtpReply[] replies = new SmtpReply[messages.size()];
+        long started = System.nanoTime();
+        try {
+            // A chunk longer than a connection may carry is split across several borrows
+            int sent = 0;
+            while (sent < messages.size()) {
+                SmtpConnection connection = connectionPool.borrow(route, borrowTimeoutMs);
+                try {
+                    int room = Math.max(1, connectionPool.getMaxMessagesPerConnection() - connection.getMessagesSent());
+                    int end = Math.min(messages.size(), sent + room);
+                    SmtpReply[] part = new SmtpReply[end - sent];
+                    try {
+                        connection.send(messages.subList(sent, end), part);
+                    } finally {
+                        System.arraycopy(part, 0, replies, sent, part.length);
+                    }
+                    sent = end;
+                } finally {
+                    connectionPool.release(connection);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("SMTP delivery through {} failed: {}", route, e.getMessage());
+            fillMissing(replies, SmtpReply.connectionFailed(e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fillMissing(replies, SmtpReply.connectionFailed("Delivery interrupted"));
+        } finally {
+            chunkTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+
+        List<Outcome> outcomes = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            outcomes.add(new Outcome(chunk.get(i), replies[i]));
+        }
+        return record(outcomes);
+    }
+
+    // Writes the outcomes of one chunk to the outbox and the emails in one transaction
+    private Run record(List<Outcome> outcomes) {
+        Instant now = Instant.now();
+        List<Object[]> delivered = new ArrayList<>();
+        List<Object[]> deferred = new ArrayList<>();
+        List<Object[]> failed = new ArrayList<>();
+        List<Object[]> statuses = new ArrayList<>();
+
+        for (Outcome outcome : outcomes) {
+            Claimed claimed = outcome.claimed();
+            long emailId = claimed.message().emailId();
+            SmtpReply reply = outcome.reply();
+            int attempts = claimed.attempts() + 1;
+            if (reply.isPositive()) {
+                delivered.add(new Object[] {emailId});
+                statuses.add(new Object[] {DELIVERED, emailId});
+                queueLatency.record(Duration.between(claimed.queuedAt(), now));
+            } else if (reply.isTransient() && attempts < maxAttempts) {
+                deferred.add(new Object[] {attempts, Timestamp.from(now.plusMillis(backoff(attempts))),
+                        truncate(reply.toString()), emailId});
+                statuses.add(new Object[] {DEFERRED, emailId});
+            } else {
+                failed.add(new Object[] {attempts, truncate(reply.toString()), emailId});
+                statuses.add(new Object[] {FAILED, emailId});
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(DELETE_DELIVERED_SQL, delivered);
+            jdbcTemplate.batchUpdate(DEFER_SQL, deferred);
+            jdbcTemplate.batchUpdate(FAIL_SQL, failed);
+            jdbcTemplate.batchUpdate(UPDATE_EMAIL_SQL, statuses);
+        });
+        deliveredMessages.increment(delivered.size());
+        deferredMessages.increment(deferred.size());
+        failedMessages.increment(failed.size());
+        return new Run(delivered.size(), deferred.size(), failed.size());
+    }
+
+    // Exponential backoff with full jitter in its upper half, so retries of one outage spread out
+    private long backoff(int attempts) {
+        long ceiling = initialBackoffMs << Math.min(attempts - 1, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffMs) {
+            ceiling = maxBackoffMs;
+        }
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private static void fillMissing(SmtpReply[] replies, SmtpReply reply) {
+        for (int i = 0; i < replies.length; i++) {
+            if (replies[i] == null) {
+                replies[i] = reply;
+            }
+        }
+    }
+
+    private static String truncate(String error) {
+        return error.length() <= 1000 ? error : error.substring(0, 1000);
+    }
+
+    private static String domainOf(String address) {
+        int at = address == null ? -1 : address.lastIndexOf('@');
+        if (at < 0 || at == address.length() - 1) {
+            return null;
+        }
+        return address.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+}
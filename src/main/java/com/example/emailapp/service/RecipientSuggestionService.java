@@ -0,0 +1,94 @@
+package com.example.emailapp.service;
+
+import com.example.emailapp.dto.RecipientSuggestion;
+import com.example.emailapp.model.User;
+import com.example.emailapp.repository.EmailJdbcRepository;
+import com.example.emailapp.util.PrefixIndex;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Recipient autocomplete for the compose screen.
+ * <p>
+ * Each user's correspondents (every {@code toEmail} and {@code fromEmail} in their mailbox) are
+ * loaded into a {@link PrefixIndex} on the first lookup, in one aggregate query, and kept in
+ * memory while the user keeps typing; users idle for {@code app.recipients.idle-minutes} are
+ * dropped. Sending an email counts a use of its recipient in the loaded index once the email is
+ * committed, so the index does not have to be rebuilt. Each node keeps its own indexes; mail sent
+ * through another node shows up here once the index has been dropped and loaded again.
+ */
+@Service
+public class RecipientSuggestionService {
+
+    private final EmailJdbcRepository emailJdbcRepository;
+    private final Cache<Long, PrefixIndex> indexes;
+    private final long halfLifeMillis;
+
+    public RecipientSuggestionService(EmailJdbcRepository emailJdbcRepository,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${app.recipients.max-users:10000}") long maxUsers,
+                                      @Value("${app.recipients.idle-minutes:30}") long idleMinutes,
+                                      @Value("${app.recipients.half-life-days:30}") long halfLifeDays) {
+        this.emailJdbcRepository = emailJdbcRepository;
+        this.halfLifeMillis = Duration.ofDays(halfLifeDays).toMillis();
+        this.indexes = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, indexes, "recipient-indexes");
+    }
+
+    public List<RecipientSuggestion> suggest(User user, String prefix, int limit) {
+        PrefixIndex index = indexes.get(user.getId(), userId -> load(userId, user.getEmail()));
+        return index.search(prefix, limit, System.currentTimeMillis(), halfLifeMillis).stream()
+                .map(match -> RecipientSuggestion.builder()
+                        .address(match.value())
+                        .count(match.count())
+                        .lastUsedAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(match.lastUsedMillis()), ZoneId.systemDefault()))
+                        .build())
+                .toList();
+    }
+
+    /**
+     * Counts a use of {@code address} by the user once the current transaction commits.
+     */
+    public void recordSent(User user, String address) {
+        if (address.equalsIgnoreCase(user.getEmail())) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Runnable record = () -> indexes.asMap().computeIfPresent(user.getId(), (id, index) -> index.withUse(address, now));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    // Waits for a load of the same index in progress; that load may already have
+                    // counted this email, which only nudges its rank
+                    record.run();
+                }
+            });
+        } else {
+            record.run();
+        }
+    }
+
+    private PrefixIndex load(long userId, String ownAddress) {
+        PrefixIndex.Builder builder = PrefixIndex.builder();
+        emailJdbcRepository.streamCorrespondents(userId, ownAddress,
+                correspondent -> builder.add(correspondent.address(), correspondent.count(), correspondent.lastUsedMillis()));
+        return builder.build();
+    }
+}
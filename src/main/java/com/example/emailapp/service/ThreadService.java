@@ -0,0 +1,253 @@
+package com.example.emailapp.service;
+
+import com.example.emailapp.dto.ThreadPage;
+import com.example.emailapp.dto.ThreadResponse;
+import com.example.emailapp.exception.BadRequestException;
+import com.example.emailapp.repository.ThreadRepository;
+import com.example.emailapp.repository.ThreadRepository.ThreadSummary;
+import com.example.emailapp.repository.ThreadRepository.UnthreadedEmail;
+import com.example.emailapp.sharding.ShardContext;
+import com.example.emailapp.sharding.ShardDataSources;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Groups each mailbox into conversations.
+ * <p>
+ * An email belongs to the thread keyed by its normalized subject (reply and forward prefixes
+ * stripped, whitespace collapsed, case ignored) and the set of its participants, so a reply and
+ * the message it answers land in the same thread. The key is looked up through the unique index
+ * on {@code threads}, and a thread is created on the first email with a new key. Sending assigns
+ * the thread in the transaction that inserts the email; the triggers on {@code emails} then keep
+ * the thread's message count, unread count and last-message time current. Emails inserted without
+ * a thread, such as those written before threading existed, are threaded by a background job.
+ */
+@Service
+public class ThreadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadService.class);
+
+    // Position after the last thread of a page, in the order threads are listed
+    private record Cursor(LocalDateTime lastMessageAt, long id) {
+    }
+
+    private static final Pattern REPLY_PREFIXES =
+            Pattern.compile("^(\\s*(re|fwd?|aw|sv|wg)(\\[\\d+])?\\s*:)+", Pattern.CASE_INSENSITIVE);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern ADDRESS_SEPARATORS = Pattern.compile("[,;]");
+    private static final int MAX_SUBJECT_LENGTH = 255;
+    private static final int MAX_PARTICIPANTS_LENGTH = 1024;
+
+    private final ThreadRepository threadRepository;
+    private final ShardDataSources shardDataSources;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter backfilledEmails;
+
+    @Value("${app.threads.backfill.batch-size:500}")
+    private int backfillBatchSize;
+
+    @Value("${app.threads.backfill.batch-pause-ms:100}")
+    private long backfillBatchPauseMs;
+
+    @Value("${app.threads.backfill.max-batches-per-run:200}")
+    private int backfillMaxBatchesPerRun;
+
+    public ThreadService(ThreadRepository threadRepository,
+                         ShardDataSources shardDataSources,
+                         PlatformTransactionManager transactionManager,
+                         MeterRegistry meterRegistry) {
+        this.threadRepository = threadRepository;
+        this.shardDataSources = shardDataSources;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.backfilledEmails = Counter.builder("emailapp.threads.backfilled")
+                .description("Emails assigned to a thread by the background job")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Id of the user's thread for an email with this subject between these addresses, creating the
+     * thread if needed. Call it from the transaction that inserts the email.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long assignThread(long userId, String fromEmail, String toEmail, String subject, LocalDateTime createdAt) {
+        return threadFor(userId, fromEmail, toEmail, subject, createdAt);
+    }
+
+    /**
+     * One page of the user's non-empty threads, most recent first. {@code cursor} is the
+     * {@code nextCursor} of the previous page, or null for the first page.
+     */
+    public ThreadPage getThreads(long userId, String cursor, int limit) {
+        Cursor after = cursor == null || cursor.isEmpty() ? null : decodeCursor(cursor);
+        List<ThreadSummary> threads = after == null
+                ? threadRepository.findPage(userId, null, null, limit)
+                : threadRepository.findPage(userId, after.lastMessageAt(), after.id(), limit);
+
+        String nextCursor = null;
+        if (threads.size() == limit) {
+            ThreadSummary last = threads.get(threads.size() - 1);
+            nextCursor = encodeCursor(new Cursor(last.lastMessageAt(), last.id()));
+        }
+        return ThreadPage.builder()
+                .threads(threads.stream().map(ThreadService::mapToThreadResponse).toList())
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    @Scheduled(fixedDelayString = "${app.threads.backfill.interval-ms:60000}",
+               initialDelayString = "${app.threads.backfill.initial-delay-ms:60000}")
+    public void backfill() {
+        long threaded = 0;
+        for (String shard : shardDataSources.names()) {
+            threaded += ShardContext.callOn(shard, this::backfillShard);
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+        if (threaded > 0) {
+            logger.info("Assigned {} emails to threads", threaded);
+        }
+    }
+
+    // Threads the shard selected in ShardContext, one batch per short transaction
+    private long backfillShard() {
+        long threaded = 0;
+        for (int batch = 0; batch < backfillMaxBatchesPerRun; batch++) {
+            int count = transactionTemplate.execute(status -> backfillBatch());
+            threaded += count;
+            if (count < backfillBatchSize || !pause()) {
+                break;
+            }
+        }
+        return threaded;
+    }
+
+    private int backfillBatch() {
+        List<UnthreadedEmail> emails = threadRepository.findUnthreadedEmails(backfillBatchSize);
+        if (emails.isEmpty()) {
+            return 0;
+        }
+        List<Object[]> assignments = new ArrayList<>(emails.size());
+        for (UnthreadedEmail email : emails) {
+            long threadId = threadFor(email.userId(), email.fromEmail(), email.toEmail(), email.subject(),
+                    email.createdAt());
+            assignments.add(new Object[]{threadId, email.id()});
+        }
+        threadRepository.assignThreads(assignments);
+        backfilledEmails.increment(emails.size());
+        return emails.size();
+    }
+
+    private long threadFor(long userId, String fromEmail, String toEmail, String subject, LocalDateTime createdAt) {
+        String normalizedSubject = normalizeSubject(subject);
+        String participants = participants(fromEmail, toEmail);
+        return threadRepository.findOrCreate(userId,
+                threadKey(normalizedSubject.toLowerCase(Locale.ROOT), participants),
+                truncate(normalizedSubject, MAX_SUBJECT_LENGTH),
+                truncate(participants, MAX_PARTICIPANTS_LENGTH),
+                createdAt);
+    }
+
+    // "Re: Fwd:  Quarterly   report" and "quarterly report" belong to the same conversation
+    private static String normalizeSubject(String subject) {
+        if (subject == null) {
+            return "";
+        }
+        String stripped = REPLY_PREFIXES.matcher(subject).replaceFirst("");
+        return WHITESPACE.matcher(stripped).replaceAll(" ").trim();
+    }
+
+    // Distinct lowercased addresses in alphabetical order, whoever sent the message
+    private static String participants(String fromEmail, String toEmail) {
+        TreeSet<String> addresses = new TreeSet<>();
+        for (String field : new String[]{fromEmail, toEmail}) {
+            if (field == null) {
+                continue;
+            }
+            for (String address : ADDRESS_SEPARATORS.split(field)) {
+                String trimmed = address.trim().toLowerCase(Locale.ROOT);
+                if (!trimmed.isEmpty()) {
+                    addresses.add(trimmed);
+                }
+            }
+        }
+        return String.join(", ", addresses);
+    }
+
+    private static String threadKey(String normalizedSubject, String participants) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(normalizedSubject.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(participants.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // Opaque to clients, which only hand it back for the next page
+    private static String encodeCursor(Cursor cursor) {
+        String position = cursor.lastMessageAt() + "/" + cursor.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Cursor decodeCursor(String cursor) {
+        try {
+            String[] position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("/");
+            if (position.length == 2) {
+                return new Cursor(LocalDateTime.parse(position[0]), Long.parseLong(position[1]));
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // Not a cursor this service handed out
+        }
+        throw new BadRequestException("Invalid thread cursor");
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() <= maxLength ? value : value.substring(0, maxLength);
+    }
+
+    private static ThreadResponse mapToThreadResponse(ThreadSummary thread) {
+        return ThreadResponse.builder()
+                .id(thread.id())
+                .subject(thread.subject())
+                .participants(thread.participants())
+                .messageCount(thread.messageCount())
+                .unreadCount(thread.unreadCount())
+                .lastMessageAt(thread.lastMessageAt())
+                .build();
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(backfillBatchPauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
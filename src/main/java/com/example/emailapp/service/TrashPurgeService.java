@@ -0,0 +1,175 @@
+package com.example.emailapp.service;
+
+import com.example.emailapp.model.PurgeCheckpoint;
+import com.example.emailapp.repository.EmailRepository;
+import com.example.emailapp.repository.PurgeCheckpointRepository;
+import com.example.emailapp.sharding.ShardContext;
+import com.example.emailapp.sharding.ShardDataSources;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Permanently deletes trash that has outlived its retention window.
+ * <p>
+ * Each run walks the {@code emails} table in id order from the last checkpoint, deleting
+ * small batches in their own short transactions and pausing between them so that the
+ * purge never holds long locks or produces a burst of dead tuples for autovacuum. With sharding
+ * enabled the shards are purged one after another, each with its own checkpoint.
+ */
+@Service
+public class TrashPurgeService {
+
+    private static final String JOB_NAME = "trash-purge";
+
+    private static final Logger logger = LoggerFactory.getLogger(TrashPurgeService.class);
+
+    private record ShardRun(long purged, long remaining) {
+    }
+
+    private final EmailRepository emailRepository;
+    private final PurgeCheckpointRepository checkpointRepository;
+    private final AttachmentService attachmentService;
+    private final ShardDataSources shardDataSources;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter purgedRows;
+    private final Timer batchTimer;
+    private final AtomicLong backlog = new AtomicLong();
+    private final AtomicLong lastRunRowsPerSecond = new AtomicLong();
+
+    @Value("${app.purge.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.purge.trash-retention-days:30}")
+    private int defaultRetentionDays;
+
+    @Value("${app.purge.batch-size:500}")
+    private int batchSize;
+
+    @Value("${app.purge.batch-pause-ms:200}")
+    private long batchPauseMs;
+
+    @Value("${app.purge.max-batches-per-run:200}")
+    private int maxBatchesPerRun;
+
+    public TrashPurgeService(EmailRepository emailRepository,
+                             PurgeCheckpointRepository checkpointRepository,
+                             AttachmentService attachmentService,
+                             ShardDataSources shardDataSources,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry) {
+        this.emailRepository = emailRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.attachmentService = attachmentService;
+        this.shardDataSources = shardDataSources;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.purgedRows = Counter.builder("emailapp.purge.rows")
+                .description("Trash rows permanently deleted by the retention purge")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("emailapp.purge.batch")
+                .description("Time spent deleting one purge batch")
+                .register(meterRegistry);
+        Gauge.builder("emailapp.purge.backlog", backlog, AtomicLong::get)
+                .description("Trash rows still past retention at the end of the last run")
+                .register(meterRegistry);
+        Gauge.builder("emailapp.purge.rows.per.second", lastRunRowsPerSecond, AtomicLong::get)
+                .description("Purge throughput of the last run")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.purge.interval-ms:300000}",
+               initialDelayString = "${app.purge.initial-delay-ms:60000}")
+    public void purgeExpiredTrash() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        long started = System.nanoTime();
+        long purged = 0;
+        long remaining = 0;
+        for (String shard : shardDataSources.names()) {
+            ShardRun run = ShardContext.callOn(shard, () -> purgeShard(now));
+            purged += run.purged();
+            remaining += run.remaining();
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+        }
+
+        long elapsedMs = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+        lastRunRowsPerSecond.set(purged * 1000 / elapsedMs);
+        backlog.set(remaining);
+        if (purged + remaining > 0) {
+            logger.info("Trash purge removed {} emails in {} ms, {} still past retention", purged, elapsedMs, remaining);
+        }
+    }
+
+    // Purges the shard selected in ShardContext
+    private ShardRun purgeShard(LocalDateTime now) {
+        long cursor = checkpointRepository.findById(JOB_NAME).map(PurgeCheckpoint::getLastId).orElse(0L);
+        long purged = 0;
+        boolean exhausted = false;
+
+        for (int batch = 0; batch < maxBatchesPerRun; batch++) {
+            long afterId = cursor;
+            List<Long> ids = batchTimer.record(() -> transactionTemplate.execute(status -> {
+                List<Long> batchIds = emailRepository.findPurgeableTrashIds(afterId, now, defaultRetentionDays, batchSize);
+                if (!batchIds.isEmpty()) {
+                    attachmentService.deleteForEmails(batchIds);
+                    emailRepository.deleteByIdIn(batchIds);
+                }
+                return batchIds;
+            }));
+
+            purged += ids.size();
+            purgedRows.increment(ids.size());
+
+            // A short batch means the end of the table was reached; the next run starts over
+            exhausted = ids.size() < batchSize;
+            cursor = exhausted ? 0L : ids.get(ids.size() - 1);
+            saveCheckpoint(cursor);
+            if (exhausted) {
+                break;
+            }
+
+            if (!pause()) {
+                break;
+            }
+        }
+
+        // Only counted when the run stopped early, so a purge that keeps up never scans all of the trash
+        long remaining = exhausted ? 0 : emailRepository.countPurgeableTrash(now, defaultRetentionDays);
+        return new ShardRun(purged, remaining);
+    }
+
+    private void saveCheckpoint(long lastId) {
+        PurgeCheckpoint checkpoint = checkpointRepository.findById(JOB_NAME)
+                .orElseGet(() -> PurgeCheckpoint.builder().jobName(JOB_NAME).build());
+        checkpoint.setLastId(lastId);
+        checkpointRepository.save(checkpoint);
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(batchPauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
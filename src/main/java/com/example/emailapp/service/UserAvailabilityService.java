@@ -0,0 +1,123 @@
+package com.example.emailapp.service;
+
+import com.example.emailapp.model.User;
+import com.example.emailapp.repository.UserRepository;
+import com.example.emailapp.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Answers "is this username / email still free?" for sign-up forms without a query per keystroke.
+ * <p>
+ * Every existing username and email is added to a {@link BloomFilter} when the node starts. A
+ * value the filter has never seen is reported as available straight away; only a possible hit,
+ * which is either a real one or a false positive at {@code app.auth.availability.false-positive-rate},
+ * is checked against the database through the user caches. Registrations on this node are added
+ * as they happen, and those on other nodes arrive through {@link CacheInvalidationService}, which
+ * replays every insert into {@code users}. Elements are never removed, so a deleted user's name
+ * costs a database check until the next restart. The answer is advisory; the unique constraints
+ * on {@code users} decide when the account is created.
+ */
+@Service
+public class UserAvailabilityService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserAvailabilityService.class);
+
+    private static final int LOAD_BATCH_SIZE = 10000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UserRepository userRepository;
+    private final BloomFilter usernames;
+    private final BloomFilter emails;
+    private final Counter filterAnswers;
+    private final Counter databaseAnswers;
+
+    public UserAvailabilityService(JdbcTemplate jdbcTemplate,
+                                   UserRepository userRepository,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${app.auth.availability.expected-users:1000000}") long expectedUsers,
+                                   @Value("${app.auth.availability.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.userRepository = userRepository;
+        this.usernames = BloomFilter.create(expectedUsers, falsePositiveRate);
+        this.emails = BloomFilter.create(expectedUsers, falsePositiveRate);
+        this.filterAnswers = Counter.builder("emailapp.availability.checks")
+                .tag("answered-by", "filter")
+                .description("Availability checks answered from the in-memory filter")
+                .register(meterRegistry);
+        this.databaseAnswers = Counter.builder("emailapp.availability.checks")
+                .tag("answered-by", "database")
+                .description("Availability checks that needed the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Adds every existing user. {@link CacheInvalidationService} calls it once it has taken its
+     * starting position, so a user inserted while this runs is replayed rather than missed.
+     */
+    void load() {
+        long started = System.currentTimeMillis();
+        long loaded = 0;
+        long afterId = 0;
+        while (true) {
+            List<Long> ids = jdbcTemplate.query("SELECT id, username, email FROM users WHERE id > ? ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> {
+                        usernames.put(rs.getString(2));
+                        emails.put(rs.getString(3));
+                        return rs.getLong(1);
+                    }, afterId, LOAD_BATCH_SIZE);
+            loaded += ids.size();
+            if (ids.size() < LOAD_BATCH_SIZE) {
+                break;
+            }
+            afterId = ids.get(ids.size() - 1);
+        }
+        logger.info("Loaded {} users into the availability filter in {} ms", loaded,
+                System.currentTimeMillis() - started);
+    }
+
+    // Users inserted or updated on any node, this one included
+    void addChanged(List<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        String placeholders = String.join(", ", Collections.nCopies(userIds.size(), "?"));
+        jdbcTemplate.query("SELECT username, email FROM users WHERE id IN (" + placeholders + ")",
+                (RowCallbackHandler) rs -> {
+                    usernames.put(rs.getString(1));
+                    emails.put(rs.getString(2));
+                }, userIds.toArray());
+    }
+
+    public void recordRegistered(User user) {
+        usernames.put(user.getUsername());
+        emails.put(user.getEmail());
+    }
+
+    public boolean isUsernameAvailable(String username) {
+        if (!usernames.mightContain(username)) {
+            filterAnswers.increment();
+            return true;
+        }
+        databaseAnswers.increment();
+        return !userRepository.existsByUsername(username);
+    }
+
+    public boolean isEmailAvailable(String email) {
+        if (!emails.mightContain(email)) {
+            filterAnswers.increment();
+            return true;
+        }
+        databaseAnswers.increment();
+        return !userRepository.existsByEmail(email);
+    }
+}
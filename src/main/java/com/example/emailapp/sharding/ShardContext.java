@@ -0,0 +1,58 @@
+package com.example.emailapp.sharding;
+
+import java.util.function.Supplier;
+
+/**
+ * The shard the current thread's database work goes to. Repositories marked
+ * {@link ShardedRepository} select it from the authenticated user on their own; code running
+ * outside a request (scheduled jobs, the rebalancer) selects a shard explicitly with
+ * {@link #callOn}.
+ * <p>
+ * The shard is picked when a transaction executes its first statement, so one transaction always
+ * stays on one database.
+ */
+public final class ShardContext {
+
+    public static final String MAIN = "main";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    // Null when no shard has been selected
+    public static String current() {
+        return CURRENT.get();
+    }
+
+    public static <T> T callOn(String shard, Supplier<T> work) {
+        String previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    public static void runOn(String shard, Runnable work) {
+        callOn(shard, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    static String enter(String shard) {
+        String previous = CURRENT.get();
+        CURRENT.set(shard);
+        return previous;
+    }
+
+    static void restore(String previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
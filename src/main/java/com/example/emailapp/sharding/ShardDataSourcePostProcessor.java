@@ -0,0 +1,38 @@
+package com.example.emailapp.sharding;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Hands the {@code dataSource} bean to {@link ShardDataSources} as the main pool and replaces it
+ * with the routing data source when sharding is enabled. Runs before the other post-processors so
+ * that wrappers such as the SQL observer see every shard's statements.
+ */
+@Component
+public class ShardDataSourcePostProcessor implements BeanPostProcessor, Ordered {
+
+    private static final String MAIN_DATA_SOURCE = "dataSource";
+
+    private final ObjectProvider<ShardDataSources> shardDataSources;
+
+    public ShardDataSourcePostProcessor(ObjectProvider<ShardDataSources> shardDataSources) {
+        this.shardDataSources = shardDataSources;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && MAIN_DATA_SOURCE.equals(beanName)) {
+            return shardDataSources.getObject().route(dataSource);
+        }
+        return bean;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.emailapp.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The connection pools of all shards, and the routing {@link DataSource} the application uses in
+ * their place.
+ * <p>
+ * With sharding enabled the {@code dataSource} bean becomes a lazy proxy over a routing data
+ * source: a connection is only taken from a pool when a transaction runs its first statement, by
+ * which time the repository being called has selected the shard. Before the application starts
+ * serving, every shard gets the mailbox tables ({@code db/shard-schema.sql}) and its id sequences
+ * are moved to the shard's residue class, which keeps email and attachment ids unique across
+ * shards and lets a mailbox be copied to another shard with its ids unchanged.
+ * <p>
+ * {@link #jdbcTemplate} and {@link #transactionTemplate} go straight to a shard's pool and never
+ * join the application's JPA transactions; they are meant for maintenance work.
+ */
+@Component
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardDataSources implements SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardDataSources.class);
+
+    // Tables whose ids have to be unique across shards
+    private static final List<String> SHARDED_SEQUENCE_TABLES = List.of("emails", "attachments", "idempotency_keys", "threads");
+    private static final long SEQUENCE_LOCK_KEY = 0x656d61696c736571L;
+
+    private final ShardingProperties properties;
+    private final Map<String, DataSource> pools = new LinkedHashMap<>();
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final Map<String, JdbcTemplate> jdbcTemplates = new HashMap<>();
+    private final Map<String, TransactionTemplate> transactionTemplates = new HashMap<>();
+
+    public ShardDataSources(ShardingProperties properties) {
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    // Main first, then the configured shards in order
+    public List<String> names() {
+        return new ArrayList<>(pools.keySet());
+    }
+
+    public boolean contains(String shard) {
+        return pools.containsKey(shard);
+    }
+
+    public JdbcTemplate jdbcTemplate(String shard) {
+        return jdbcTemplates.get(require(shard));
+    }
+
+    public TransactionTemplate transactionTemplate(String shard) {
+        return transactionTemplates.get(require(shard));
+    }
+
+    /**
+     * Registers the main pool and returns the data source the application should use instead.
+     */
+    synchronized DataSource route(DataSource main) {
+        register(ShardContext.MAIN, 0, main);
+        if (!properties.isEnabled()) {
+            return main;
+        }
+
+        for (ShardingProperties.Shard shard : properties.getShards()) {
+            validate(shard);
+            HikariDataSource pool = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(shard.getUrl())
+                    .username(shard.getUsername())
+                    .password(shard.getPassword())
+                    .build();
+            pool.setPoolName("shard-" + shard.getName());
+            pool.setMaximumPoolSize(shard.getMaximumPoolSize());
+            register(shard.getName(), shard.getIndex(), pool);
+        }
+
+        ShardRoutingDataSource routing = new ShardRoutingDataSource();
+        routing.setTargetDataSources(new HashMap<>(pools));
+        routing.setDefaultTargetDataSource(main);
+        // An unknown shard name is a bug, not a reason to quietly use the main database
+        routing.setLenientFallback(false);
+        routing.afterPropertiesSet();
+
+        LazyConnectionDataSourceProxy lazy = new LazyConnectionDataSourceProxy(routing);
+        lazy.setDefaultAutoCommit(true);
+        lazy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        logger.info("Sharding enabled across {}", pools.keySet());
+        return lazy;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        // The main database already has every table through spring.sql.init
+        ResourceDatabasePopulator shardSchema = new ResourceDatabasePopulator(new ClassPathResource("db/shard-schema.sql"));
+        for (String shard : pools.keySet()) {
+            if (!ShardContext.MAIN.equals(shard)) {
+                shardSchema.execute(pools.get(shard));
+            }
+            alignSequences(shard, indexes.get(shard));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        pools.forEach((name, pool) -> {
+            if (!ShardContext.MAIN.equals(name) && pool instanceof HikariDataSource hikari) {
+                hikari.close();
+            }
+        });
+    }
+
+    private void register(String name, int index, DataSource pool) {
+        pools.put(name, pool);
+        indexes.put(name, index);
+        jdbcTemplates.put(name, new JdbcTemplate(pool));
+        transactionTemplates.put(name, new TransactionTemplate(new DataSourceTransactionManager(pool)));
+    }
+
+    private void validate(ShardingProperties.Shard shard) {
+        if (shard.getName() == null || shard.getName().isBlank() || pools.containsKey(shard.getName())) {
+            throw new IllegalStateException("Shard names must be set and unique, and '" + ShardContext.MAIN + "' is reserved");
+        }
+        if (shard.getIndex() < 1 || shard.getIndex() >= properties.getIdStride() || indexes.containsValue(shard.getIndex())) {
+            throw new IllegalStateException("Shard " + shard.getName() + " needs a unique index between 1 and "
+                    + (properties.getIdStride() - 1));
+        }
+    }
+
+    private String require(String shard) {
+        if (!pools.containsKey(shard)) {
+            throw new IllegalArgumentException("Unknown shard: " + shard);
+        }
+        return shard;
+    }
+
+    // Makes the shard's sequences hand out ids congruent to its index modulo the stride
+    private void alignSequences(String shard, int index) {
+        int stride = properties.getIdStride();
+        JdbcTemplate jdbc = jdbcTemplate(shard);
+        transactionTemplate(shard).executeWithoutResult(status -> {
+            // Nodes starting together must not both move a sequence
+            jdbc.execute("SELECT pg_advisory_xact_lock(" + SEQUENCE_LOCK_KEY + ")");
+            for (String table : SHARDED_SEQUENCE_TABLES) {
+                String sequence = jdbc.queryForObject("SELECT pg_get_serial_sequence(?, 'id')", String.class, table);
+                long increment = jdbc.queryForObject(
+                        "SELECT seqincrement FROM pg_sequence WHERE seqrelid = CAST(? AS regclass)", Long.class, sequence);
+                long last = jdbc.queryForObject("SELECT last_value FROM " + sequence, Long.class);
+
+                if (increment == stride) {
+                    if (Math.floorMod(last - index, stride) != 0) {
+                        throw new IllegalStateException("Sequence " + sequence + " on shard " + shard
+                                + " belongs to another shard index; the index of a shard must never change");
+                    }
+                    continue;
+                }
+
+                long maxId = jdbc.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+                long floor = Math.max(last, maxId);
+                long base = floor + Math.floorMod(index - floor, stride);
+                jdbc.execute("ALTER SEQUENCE " + sequence + " INCREMENT BY " + stride);
+                jdbc.queryForObject("SELECT setval(?, ?)", Long.class, sequence, base);
+                logger.info("Sequence {} on shard {} now hands out ids {} mod {}", sequence, shard, index, stride);
+            }
+        });
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.emailapp.sharding;
+
+import com.example.emailapp.exception.MailboxUnavailableException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Which shard holds each user's mailbox.
+ * <p>
+ * The {@code user_shards} table on the main database is authoritative. New users are placed on the
+ * consistent-hash ring of {@code app.sharding.new-user-shards} when they register and the result
+ * is written down, so changing the ring never moves an existing mailbox; only the rebalancer does.
+ * Users without an entry registered before sharding was enabled and live on the main database.
+ * <p>
+ * Placements are cached; a trigger on {@code user_shards} feeds {@code cache_invalidations}, which
+ * every node polls, so a move is seen everywhere within one poll interval.
+ */
+@Service
+public class ShardDirectory {
+
+    public record Placement(String shard, boolean moving) {
+    }
+
+    private static final Placement MAIN_PLACEMENT = new Placement(ShardContext.MAIN, false);
+
+    private final ShardingProperties properties;
+    private final ShardDataSources shardDataSources;
+    private final ConsistentHashRing ring;
+    private final Cache<Long, Placement> placements;
+
+    public ShardDirectory(ShardingProperties properties, ShardDataSources shardDataSources) {
+        this.properties = properties;
+        this.shardDataSources = shardDataSources;
+        this.ring = properties.isEnabled() ? new ConsistentHashRing(newUserShards(properties), properties.getVirtualNodes()) : null;
+        this.placements = Caffeine.newBuilder()
+                .maximumSize(properties.getDirectoryCacheSize())
+                .expireAfterWrite(Duration.ofSeconds(properties.getDirectoryCacheTtlSeconds()))
+                .build();
+    }
+
+    public Placement placementOf(long userId) {
+        if (!properties.isEnabled()) {
+            return MAIN_PLACEMENT;
+        }
+        return placements.get(userId, this::load);
+    }
+
+    /**
+     * @throws MailboxUnavailableException if the rebalancer is moving the mailbox
+     */
+    public Placement requireAvailable(long userId) {
+        Placement placement = placementOf(userId);
+        if (placement.moving()) {
+            long retryAfter = Math.max(1, properties.getRebalance().getQuiesceMs() / 1000);
+            throw new MailboxUnavailableException("This mailbox is being moved; please try again shortly", retryAfter);
+        }
+        return placement;
+    }
+
+    public String shardOf(long userId) {
+        return placementOf(userId).shard();
+    }
+
+    // Called once for every new user
+    public void assign(long userId) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        main().update("INSERT INTO user_shards (user_id, shard) VALUES (?, ?) ON CONFLICT (user_id) DO NOTHING",
+                userId, ring.shardFor(userId));
+        placements.invalidate(userId);
+    }
+
+    public void evict(long userId) {
+        placements.invalidate(userId);
+    }
+
+    // Freezes the mailbox on its current shard; false if it is already being moved or has moved
+    boolean beginMove(long userId, String from) {
+        int updated = main().update("INSERT INTO user_shards (user_id, shard, moving) VALUES (?, ?, true) "
+                + "ON CONFLICT (user_id) DO UPDATE SET moving = true, updated_at = now() "
+                + "WHERE NOT user_shards.moving AND user_shards.shard = EXCLUDED.shard", userId, from);
+        placements.invalidate(userId);
+        return updated == 1;
+    }
+
+    void completeMove(long userId, String to) {
+        main().update("UPDATE user_shards SET shard = ?, moving = false, updated_at = now() WHERE user_id = ?", to, userId);
+        placements.invalidate(userId);
+    }
+
+    void abortMove(long userId) {
+        main().update("UPDATE user_shards SET moving = false, updated_at = now() WHERE user_id = ?", userId);
+        placements.invalidate(userId);
+    }
+
+    private Placement load(Long userId) {
+        List<Placement> rows = main().query("SELECT shard, moving FROM user_shards WHERE user_id = ?",
+                (rs, rowNum) -> new Placement(rs.getString("shard"), rs.getBoolean("moving")), userId);
+        return rows.isEmpty() ? MAIN_PLACEMENT : rows.get(0);
+    }
+
+    // Outside any application transaction, which may already be bound to a shard's connection
+    private JdbcTemplate main() {
+        return shardDataSources.jdbcTemplate(ShardContext.MAIN);
+    }
+
+    private static List<String> newUserShards(ShardingProperties properties) {
+        List<String> configured = new ArrayList<>();
+        configured.add(ShardContext.MAIN);
+        properties.getShards().forEach(shard -> configured.add(shard.getName()));
+        if (properties.getNewUserShards().isEmpty()) {
+            return configured;
+        }
+        for (String shard : properties.getNewUserShards()) {
+            if (!configured.contains(shard)) {
+                throw new IllegalStateException("app.sharding.new-user-shards names an unknown shard: " + shard);
+            }
+        }
+        return properties.getNewUserShards();
+    }
+}
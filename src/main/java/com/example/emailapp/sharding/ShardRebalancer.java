@@ -0,0 +1,186 @@
+package com.example.emailapp.sharding;
+
+import com.example.emailapp.exception.BadRequestException;
+import com.example.emailapp.service.EmailFlagBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves a user's mailbox from one shard to another while the application keeps serving.
+ * <p>
+ * The mailbox is frozen in the directory first, so that requests for this one user are answered
+ * with 503 while every other mailbox stays available. After waiting for all nodes to see the
+ * freeze, the rows are copied in keyset-ordered batches with their ids unchanged (ids are unique
+ * across shards), the row counts are compared, and the directory is switched to the new shard.
+ * Only then are the rows removed from the old shard. A failure before the switch leaves the
+ * mailbox where it was and removes the partial copy.
+ */
+@Service
+public class ShardRebalancer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    public record MoveResult(long userId, String from, String to, Map<String, Long> copiedRows) {
+    }
+
+    // Per-user tables in copy order; a table that belongs to a mailbox has to be listed here.
+    // mailbox_usage is not: the triggers on emails rebuild it on the target as rows are copied.
+    // threads comes after emails, so those triggers find no thread to count into and the copied
+    // thread rows keep the counts they had on the source.
+    private record MailboxTable(String name, String key, String ownerCondition) {
+    }
+
+    private static final List<MailboxTable> MAILBOX_TABLES = List.of(
+            new MailboxTable("emails", "id", "t.user_id = ?"),
+            new MailboxTable("threads", "id", "t.user_id = ?"),
+            new MailboxTable("attachments", "id", "t.email_id IN (SELECT id FROM emails WHERE user_id = ?)"),
+            new MailboxTable("retention_policies", "user_id", "t.user_id = ?"),
+            new MailboxTable("outbox", "email_id", "t.user_id = ?"),
+            new MailboxTable("idempotency_keys", "id", "t.user_id = ?"));
+
+    private final ShardDataSources shardDataSources;
+    private final ShardDirectory shardDirectory;
+    private final ShardingProperties properties;
+    private final EmailFlagBuffer emailFlagBuffer;
+
+    public ShardRebalancer(ShardDataSources shardDataSources,
+                           ShardDirectory shardDirectory,
+                           ShardingProperties properties,
+                           EmailFlagBuffer emailFlagBuffer) {
+        this.shardDataSources = shardDataSources;
+        this.shardDirectory = shardDirectory;
+        this.properties = properties;
+        this.emailFlagBuffer = emailFlagBuffer;
+    }
+
+    public MoveResult move(long userId, String target) {
+        if (!shardDataSources.isEnabled()) {
+            throw new BadRequestException("Sharding is not enabled");
+        }
+        if (!shardDataSources.contains(target)) {
+            throw new BadRequestException("Unknown shard: " + target);
+        }
+        shardDirectory.evict(userId);
+        ShardDirectory.Placement placement = shardDirectory.placementOf(userId);
+        String source = placement.shard();
+        if (source.equals(target)) {
+            throw new BadRequestException("The mailbox is already on shard " + target);
+        }
+
+        // Buffered flag updates of a frozen mailbox wait for the move, so write this node's now
+        emailFlagBuffer.flushUser(userId);
+        if (placement.moving() || !shardDirectory.beginMove(userId, source)) {
+            throw new BadRequestException("The mailbox is already being moved");
+        }
+        logger.info("Moving mailbox of user {} from shard {} to shard {}", userId, source, target);
+
+        Map<String, Long> copied = new LinkedHashMap<>();
+        try {
+            pause(properties.getRebalance().getQuiesceMs());
+            // Leftovers of an earlier attempt that failed half way
+            delete(target, userId);
+            for (MailboxTable table : MAILBOX_TABLES) {
+                long rows = copy(table, userId, source, target);
+                long expected = count(source, table, userId);
+                if (rows != expected || count(target, table, userId) != expected) {
+                    throw new IllegalStateException("Copied " + rows + " of " + expected + " rows of " + table.name());
+                }
+                copied.put(table.name(), rows);
+            }
+            shardDirectory.completeMove(userId, target);
+        } catch (RuntimeException e) {
+            shardDirectory.abortMove(userId);
+            try {
+                delete(target, userId);
+            } catch (RuntimeException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            logger.error("Moving mailbox of user {} to shard {} failed; it stays on shard {}", userId, target, source, e);
+            throw e;
+        }
+
+        delete(source, userId);
+        logger.info("Moved mailbox of user {} from shard {} to shard {}: {}", userId, source, target, copied);
+        return new MoveResult(userId, source, target, copied);
+    }
+
+    private long copy(MailboxTable table, long userId, String source, String target) {
+        int batchSize = properties.getRebalance().getBatchSize();
+        String select = "SELECT t.* FROM " + table.name() + " t WHERE " + table.ownerCondition()
+                + " AND t." + table.key() + " > ? ORDER BY t." + table.key() + " LIMIT ?";
+        JdbcTemplate from = shardDataSources.jdbcTemplate(source);
+        JdbcTemplate to = shardDataSources.jdbcTemplate(target);
+
+        long copied = 0;
+        long after = Long.MIN_VALUE;
+        while (true) {
+            List<String> columns = new ArrayList<>();
+            List<Object[]> rows = new ArrayList<>(batchSize);
+            from.query(select, (RowCallbackHandler) rs -> {
+                ResultSetMetaData metaData = rs.getMetaData();
+                if (columns.isEmpty()) {
+                    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                        columns.add(metaData.getColumnName(i));
+                    }
+                }
+                Object[] row = new Object[columns.size()];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = rs.getObject(i + 1);
+                }
+                rows.add(row);
+            }, userId, after, batchSize);
+            if (rows.isEmpty()) {
+                return copied;
+            }
+
+            String insert = "INSERT INTO " + table.name() + " (" + String.join(", ", columns) + ") VALUES ("
+                    + String.join(", ", columns.stream().map(column -> "?").toList()) + ")";
+            shardDataSources.transactionTemplate(target).executeWithoutResult(status -> to.batchUpdate(insert, rows));
+            copied += rows.size();
+
+            int keyIndex = columns.indexOf(table.key());
+            after = ((Number) rows.get(rows.size() - 1)[keyIndex]).longValue();
+            if (rows.size() < batchSize) {
+                return copied;
+            }
+        }
+    }
+
+    private long count(String shard, MailboxTable table, long userId) {
+        return shardDataSources.jdbcTemplate(shard).queryForObject(
+                "SELECT count(*) FROM " + table.name() + " t WHERE " + table.ownerCondition(), Long.class, userId);
+    }
+
+    // Removes the user's rows from one shard in short batches, children first
+    private void delete(String shard, long userId) {
+        int batchSize = properties.getRebalance().getBatchSize();
+        JdbcTemplate jdbc = shardDataSources.jdbcTemplate(shard);
+        for (int i = MAILBOX_TABLES.size() - 1; i >= 0; i--) {
+            MailboxTable table = MAILBOX_TABLES.get(i);
+            String delete = "DELETE FROM " + table.name() + " WHERE " + table.key() + " IN (SELECT t." + table.key()
+                    + " FROM " + table.name() + " t WHERE " + table.ownerCondition() + " LIMIT ?)";
+            int deleted;
+            do {
+                deleted = jdbc.update(delete, userId, batchSize);
+            } while (deleted > 0);
+        }
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for nodes to see the mailbox freeze", e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.emailapp.sharding;
+
+import com.example.emailapp.model.User;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.repository.Repository;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Routes repository calls to a shard. Calls on a {@link ShardedRepository} go to the shard of the
+ * authenticated user, unless the caller already selected one; calls on every other repository go
+ * to the main database. The routing advice runs in front of the repository's own transaction.
+ * <p>
+ * A mailbox that the rebalancer is moving is answered with 503 until the move completes.
+ */
+@Component
+@ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+public class ShardRoutingPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<ShardDirectory> shardDirectory;
+    private final MethodInterceptor ownerRouting = this::routeToOwner;
+    private final MethodInterceptor mainRouting = this::routeToMain;
+
+    public ShardRoutingPostProcessor(ObjectProvider<ShardDirectory> shardDirectory) {
+        this.shardDirectory = shardDirectory;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        MethodInterceptor routing;
+        if (bean instanceof ShardedRepository) {
+            routing = ownerRouting;
+        } else if (bean instanceof Repository<?, ?>) {
+            routing = mainRouting;
+        } else {
+            return bean;
+        }
+
+        if (bean instanceof Advised advised && !advised.isFrozen()) {
+            advised.addAdvice(0, routing);
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(routing);
+        return proxyFactory.getProxy();
+    }
+
+    private Object routeToOwner(MethodInvocation invocation) throws Throwable {
+        if (ShardContext.current() != null || ReflectionUtils.isObjectMethod(invocation.getMethod())) {
+            return invocation.proceed();
+        }
+
+        return proceedOn(shardDirectory.getObject().requireAvailable(currentUserId()).shard(), invocation);
+    }
+
+    private Object routeToMain(MethodInvocation invocation) throws Throwable {
+        return proceedOn(ShardContext.MAIN, invocation);
+    }
+
+    private static Object proceedOn(String shard, MethodInvocation invocation) throws Throwable {
+        String previous = ShardContext.enter(shard);
+        try {
+            return invocation.proceed();
+        } finally {
+            ShardContext.restore(previous);
+        }
+    }
+
+    private static long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof User user) {
+            return user.getId();
+        }
+        throw new IllegalStateException("Mailbox data accessed without an authenticated user; "
+                + "select a shard through ShardContext first");
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.emailapp.sharding;
+
+/**
+ * Marks a repository whose tables are part of a mailbox and live on the owner's shard. Calls are
+ * routed to the shard of the authenticated user unless the caller selected one through
+ * {@link ShardContext}.
+ */
+public interface ShardedRepository {
+}
@@ -0,0 +1,52 @@
+package com.example.emailapp.sharding;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@code app.sharding.*}: the shard databases and how users are placed on them. The database of
+ * {@code spring.datasource} is always present as the shard named {@value ShardContext#MAIN} with
+ * index 0; it also keeps every table that is not part of a mailbox.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.sharding")
+public class ShardingProperties {
+
+    private boolean enabled = false;
+
+    // Every shard draws ids from its own residue class modulo the stride, so ids never collide
+    private int idStride = 64;
+
+    // Shards that receive new users; empty means all of them
+    private List<String> newUserShards = new ArrayList<>();
+
+    private int virtualNodes = 128;
+
+    private long directoryCacheSize = 100_000;
+
+    private long directoryCacheTtlSeconds = 600;
+
+    private Rebalance rebalance = new Rebalance();
+
+    private List<Shard> shards = new ArrayList<>();
+
+    @Data
+    public static class Shard {
+        private String name;
+        private int index;
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+    }
+
+    @Data
+    public static class Rebalance {
+        // How long to wait after freezing a mailbox so every node has seen it before copying
+        private long quiesceMs = 3000;
+        private int batchSize = 500;
+    }
+}
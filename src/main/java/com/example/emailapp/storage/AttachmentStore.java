@@ -0,0 +1,37 @@
+package com.example.emailapp.storage;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Content-addressed storage for attachment bytes.
+ * <p>
+ * Content is keyed by its SHA-256 hash, so identical uploads are kept once. Implementations
+ * must stream: neither {@link #store} nor {@link #load} may buffer a whole file in memory.
+ */
+public interface AttachmentStore {
+
+    /**
+     * Streams the content aside and hashes it. Nothing is stored under the hash until the content
+     * is {@link #publish published}; staged content that is not published must be
+     * {@link #discard discarded}.
+     */
+    StagedContent stage(InputStream content, long maxBytes) throws IOException;
+
+    // Makes staged content available under its hash; identical content already there is kept
+    void publish(StagedContent staged) throws IOException;
+
+    // Removes staged content that was not published; does nothing once it has been
+    void discard(StagedContent staged);
+
+    Resource load(String hash);
+
+    // Local file backing the content, when the store has one; enables sendfile downloads
+    Optional<Path> localPath(String hash);
+
+    void delete(String hash) throws IOException;
+}
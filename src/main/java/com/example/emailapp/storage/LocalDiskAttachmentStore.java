@@ -0,0 +1,130 @@
+package com.example.emailapp.storage;
+
+import com.example.emailapp.exception.BadRequestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Stores attachments as files under {@code app.attachments.dir}, fanned out as {@code ab/cd/<hash>}.
+ * Uploads are copied through a fixed buffer into a temp file while being hashed, then moved into
+ * place atomically when published; when the target already exists the temp file is simply
+ * discarded.
+ */
+@Component
+@ConditionalOnProperty(name = "app.attachments.store", havingValue = "local", matchIfMissing = true)
+public class LocalDiskAttachmentStore implements AttachmentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalDiskAttachmentStore.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final Path tempDir;
+
+    public LocalDiskAttachmentStore(@Value("${app.attachments.dir:data/attachments}") String dir) throws IOException {
+        this.root = Paths.get(dir).toAbsolutePath().normalize();
+        this.tempDir = root.resolve("tmp");
+        Files.createDirectories(tempDir);
+    }
+
+    @Override
+    public StagedContent stage(InputStream content, long maxBytes) throws IOException {
+        MessageDigest digest = sha256();
+        Path temp = Files.createTempFile(tempDir, "upload-", ".part");
+        long size = 0;
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxBytes) {
+                        throw new BadRequestException("Attachment exceeds the maximum size of " + maxBytes + " bytes");
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            return new StagedContent(HexFormat.of().formatHex(digest.digest()), size, temp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    @Override
+    public void publish(StagedContent staged) throws IOException {
+        Path target = pathFor(staged.hash());
+        if (Files.exists(target)) {
+            Files.delete(staged.file());
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(staged.file(), target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Lost a race with an identical concurrent upload
+            if (!Files.exists(target)) {
+                throw e;
+            }
+            Files.deleteIfExists(staged.file());
+        }
+    }
+
+    @Override
+    public void discard(StagedContent staged) {
+        try {
+            Files.deleteIfExists(staged.file());
+        } catch (IOException e) {
+            logger.warn("Could not delete staged upload {}", staged.file(), e);
+        }
+    }
+
+    @Override
+    public Resource load(String hash) {
+        return new FileSystemResource(pathFor(hash));
+    }
+
+    @Override
+    public Optional<Path> localPath(String hash) {
+        Path path = pathFor(hash);
+        return Files.exists(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    @Override
+    public void delete(String hash) throws IOException {
+        Files.deleteIfExists(pathFor(hash));
+    }
+
+    private Path pathFor(String hash) {
+        if (!hash.matches("[0-9a-f]{64}")) {
+            throw new IllegalArgumentException("Invalid content hash: " + hash);
+        }
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
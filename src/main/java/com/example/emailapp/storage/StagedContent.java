@@ -0,0 +1,10 @@
+package com.example.emailapp.storage;
+
+import java.nio.file.Path;
+
+/**
+ * Result of staging a stream: the content address (SHA-256, hex), the number of bytes written and
+ * the file holding them until they are published.
+ */
+public record StagedContent(String hash, long size, Path file) {
+}
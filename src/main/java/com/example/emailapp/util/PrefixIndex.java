@@ -0,0 +1,196 @@
+package com.example.emailapp.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Immutable set of strings that answers "which values start with this prefix", ranked by how
+ * often and how recently each value was used.
+ * <p>
+ * Values are matched case-insensitively. They are kept in parallel arrays sorted by their lower-case
+ * key, so the matches for a prefix form one contiguous range found by binary search. A lookup costs
+ * O(log n) plus the size of that range, and allocates only the result. Adding a use copies the
+ * arrays; that is cheap at the sizes this is meant for (thousands of values) and lets readers
+ * use an index without any locking.
+ */
+public final class PrefixIndex {
+
+    public record Match(String value, int count, long lastUsedMillis) {
+    }
+
+    private static final PrefixIndex EMPTY = new PrefixIndex(new String[0], new String[0], new int[0], new long[0]);
+
+    private final String[] keys;
+    private final String[] values;
+    private final int[] counts;
+    private final long[] lastUsed;
+
+    private PrefixIndex(String[] keys, String[] values, int[] counts, long[] lastUsed) {
+        this.keys = keys;
+        this.values = values;
+        this.counts = counts;
+        this.lastUsed = lastUsed;
+    }
+
+    public static PrefixIndex empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Returns a copy with one more use of {@code value} at {@code atMillis}.
+     */
+    public PrefixIndex withUse(String value, long atMillis) {
+        String key = key(value);
+        int position = Arrays.binarySearch(keys, key);
+        if (position >= 0) {
+            int[] newCounts = counts.clone();
+            long[] newLastUsed = lastUsed.clone();
+            newCounts[position]++;
+            newLastUsed[position] = Math.max(newLastUsed[position], atMillis);
+            return new PrefixIndex(keys, values, newCounts, newLastUsed);
+        }
+
+        int insertAt = -position - 1;
+        return new PrefixIndex(insert(keys, insertAt, key), insert(values, insertAt, value),
+                insert(counts, insertAt, 1), insert(lastUsed, insertAt, atMillis));
+    }
+
+    /**
+     * Returns at most {@code limit} values starting with {@code prefix}, best first. A use counts
+     * fully when it is recent and half as much for every {@code halfLifeMillis} of age, so a
+     * correspondent written to often long ago gives way to one written to a few times lately.
+     */
+    public List<Match> search(String prefix, int limit, long nowMillis, long halfLifeMillis) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        String key = key(prefix);
+        int from = lowerBound(key);
+
+        // The best matches so far, in descending score order
+        int[] best = new int[limit];
+        double[] bestScores = new double[limit];
+        int found = 0;
+        for (int i = from; i < keys.length && keys[i].startsWith(key); i++) {
+            double age = Math.max(0, nowMillis - lastUsed[i]);
+            double score = counts[i] * Math.pow(0.5, age / halfLifeMillis);
+            if (found == limit && score <= bestScores[limit - 1]) {
+                continue;
+            }
+            int slot = found < limit ? found++ : limit - 1;
+            while (slot > 0 && bestScores[slot - 1] < score) {
+                best[slot] = best[slot - 1];
+                bestScores[slot] = bestScores[slot - 1];
+                slot--;
+            }
+            best[slot] = i;
+            bestScores[slot] = score;
+        }
+
+        List<Match> matches = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            int index = best[i];
+            matches.add(new Match(values[index], counts[index], lastUsed[index]));
+        }
+        return matches;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static String key(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    private static String[] insert(String[] array, int at, String element) {
+        String[] copy = new String[array.length + 1];
+        System.arraycopy(array, 0, copy, 0, at);
+        copy[at] = element;
+        System.arraycopy(array, at, copy, at + 1, array.length - at);
+        return copy;
+    }
+
+    private static int[] insert(int[] array, int at, int element) {
+        int[] copy = new int[array.length + 1];
+        System.arraycopy(array, 0, copy, 0, at);
+        copy[at] = element;
+        System.arraycopy(array, at, copy, at + 1, array.length - at);
+        return copy;
+    }
+
+    private static long[] insert(long[] array, int at, long element) {
+        long[] copy = new long[array.length + 1];
+        System.arraycopy(array, 0, copy, 0, at);
+        copy[at] = element;
+        System.arraycopy(array, at, copy, at + 1, array.length - at);
+        return copy;
+    }
+
+    /**
+     * Collects values with their use counts; values that differ only in case are merged.
+     */
+    public static final class Builder {
+
+        private record Entry(String key, String value, int count, long lastUsedMillis) {
+        }
+
+        private final List<Entry> entries = new ArrayList<>();
+
+        public Builder add(String value, int count, long lastUsedMillis) {
+            entries.add(new Entry(key(value), value, count, lastUsedMillis));
+            return this;
+        }
+
+        public PrefixIndex build() {
+            if (entries.isEmpty()) {
+                return EMPTY;
+            }
+            entries.sort(Comparator.comparing(Entry::key));
+            String[] keys = new String[entries.size()];
+            String[] values = new String[entries.size()];
+            int[] counts = new int[entries.size()];
+            long[] lastUsed = new long[entries.size()];
+            int size = 0;
+            for (Entry entry : entries) {
+                if (size > 0 && keys[size - 1].equals(entry.key())) {
+                    counts[size - 1] += entry.count();
+                    // The most recently used spelling is shown
+                    if (entry.lastUsedMillis() > lastUsed[size - 1]) {
+                        values[size - 1] = entry.value();
+                        lastUsed[size - 1] = entry.lastUsedMillis();
+                    }
+                    continue;
+                }
+                keys[size] = entry.key();
+                values[size] = entry.value();
+                counts[size] = entry.count();
+                lastUsed[size] = entry.lastUsedMillis();
+                size++;
+            }
+            return new PrefixIndex(Arrays.copyOf(keys, size), Arrays.copyOf(values, size),
+                    Arrays.copyOf(counts, size), Arrays.copyOf(lastUsed, size));
+        }
+    }
+}
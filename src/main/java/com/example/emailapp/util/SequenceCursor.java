@@ -0,0 +1,60 @@
+package com.example.emailapp.util;
+
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Position of a poller reading an append-only table keyed by a sequence.
+ * <p>
+ * Ids are allocated when a row is inserted but the row only becomes visible when its transaction
+ * commits, so rows can appear out of id order. Remembering only the highest id seen would skip a
+ * row that commits late. The cursor instead keeps polling from the first hole and remembers which
+ * ids above it were already handled. A hole that stays open longer than the timeout is treated as
+ * a rolled-back insert and skipped.
+ * <p>
+ * Not thread-safe; meant to be driven by a single scheduled job.
+ */
+public class SequenceCursor {
+
+    private final long gapTimeoutMillis;
+    private final NavigableSet<Long> processedAbove = new TreeSet<>();
+    private long processedUpTo;
+    private long gapSince;
+
+    public SequenceCursor(long start, long gapTimeoutMillis) {
+        this.processedUpTo = start;
+        this.gapTimeoutMillis = gapTimeoutMillis;
+    }
+
+    // Rows with an id greater than this may still need processing
+    public long position() {
+        return processedUpTo;
+    }
+
+    /**
+     * Records that a row is being processed.
+     *
+     * @return false if the row was already processed by an earlier poll
+     */
+    public boolean markProcessed(long id) {
+        return id > processedUpTo && processedAbove.add(id);
+    }
+
+    // Moves the position past every id that has been processed, and past holes that timed out
+    public void advance(long now) {
+        while (processedAbove.remove(processedUpTo + 1)) {
+            processedUpTo++;
+        }
+        if (processedAbove.isEmpty()) {
+            gapSince = 0;
+            return;
+        }
+        if (gapSince == 0) {
+            gapSince = now;
+        } else if (now - gapSince >= gapTimeoutMillis) {
+            processedUpTo = processedAbove.pollFirst();
+            gapSince = 0;
+            advance(now);
+        }
+    }
+}
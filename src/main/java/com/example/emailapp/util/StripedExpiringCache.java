@@ -0,0 +1,116 @@
+package com.example.emailapp.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded map whose entries expire a fixed time after they were written.
+ * <p>
+ * Keys are spread over a power-of-two number of stripes, each an insertion-ordered map behind
+ * its own lock, so threads working on different keys rarely wait for each other. Because every
+ * entry lives equally long, insertion order is also expiry order: a stripe drops its eldest
+ * entries when they have expired or when it is over its share of {@code maxEntries}.
+ */
+public final class StripedExpiringCache<K, V> {
+
+    private record Entry<V>(V value, long expiresAtNanos) {
+    }
+
+    private static final class Stripe<K, V> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>();
+    }
+
+    private final Stripe<K, V>[] stripes;
+    private final int mask;
+    private final int maxEntriesPerStripe;
+    private final long ttlNanos;
+
+    @SuppressWarnings("unchecked")
+    public StripedExpiringCache(int stripeCount, long maxEntries, long ttl, TimeUnit unit) {
+        int count = 1;
+        while (count < stripeCount) {
+            count <<= 1;
+        }
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>();
+        }
+        this.mask = count - 1;
+        this.maxEntriesPerStripe = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxEntries / count));
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    // Null when the key is absent or its entry has expired
+    public V get(K key) {
+        Stripe<K, V> stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            Entry<V> entry = stripe.entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAtNanos() - System.nanoTime() <= 0) {
+                stripe.entries.remove(key);
+                return null;
+            }
+            return entry.value();
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void put(K key, V value) {
+        Stripe<K, V> stripe = stripeFor(key);
+        long now = System.nanoTime();
+        stripe.lock.lock();
+        try {
+            // Re-inserted so that the entry moves to the young end
+            stripe.entries.remove(key);
+            stripe.entries.put(key, new Entry<>(value, now + ttlNanos));
+            Iterator<Map.Entry<K, Entry<V>>> eldest = stripe.entries.entrySet().iterator();
+            while (eldest.hasNext()) {
+                Entry<V> entry = eldest.next().getValue();
+                if (stripe.entries.size() <= maxEntriesPerStripe && entry.expiresAtNanos() - now > 0) {
+                    break;
+                }
+                eldest.remove();
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void remove(K key) {
+        Stripe<K, V> stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            stripe.entries.remove(key);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Approximate: stripes are counted one after another
+    public long size() {
+        long size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.entries.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private Stripe<K, V> stripeFor(K key) {
+        int hash = key.hashCode();
+        // Spread the high bits, as HashMap does, before masking
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+}
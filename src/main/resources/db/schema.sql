@@ -0,0 +1,320 @@
+-- Schema for the email app, applied on startup through spring.sql.init and validated by Hibernate
+-- (spring.jpa.hibernate.ddl-auto=validate). Every statement is idempotent so the script can run
+-- against an existing database; when an entity changes, add the matching statement here.
+
+CREATE TABLE IF NOT EXISTS users (
+    id bigserial PRIMARY KEY,
+    name varchar(255) NOT NULL,
+    username varchar(255) NOT NULL UNIQUE,
+    email varchar(255) NOT NULL UNIQUE,
+    password varchar(255) NOT NULL,
+    role varchar(255)
+);
+
+-- Databases created before this script by Hibernate's ddl-auto=update lack the later columns
+ALTER TABLE users ADD COLUMN IF NOT EXISTS role varchar(255);
+
+-- ddl-auto=update gave the unique constraints on users generated names; ConflictException tells a
+-- taken username from a taken email by the names PostgreSQL gives the ones declared above
+DO '
+DECLARE
+    c record;
+BEGIN
+    FOR c IN SELECT con.conname, att.attname FROM pg_constraint con
+            JOIN pg_attribute att ON att.attrelid = con.conrelid AND att.attnum = con.conkey[1]
+            WHERE con.conrelid = ''users''::regclass AND con.contype = ''u'' AND cardinality(con.conkey) = 1
+              AND att.attname IN (''username'', ''email'') LOOP
+        IF NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conrelid = ''users''::regclass
+                       AND conname = ''users_'' || c.attname || ''_key'') THEN
+            EXECUTE format(''ALTER TABLE users RENAME CONSTRAINT %I TO %I'', c.conname, ''users_'' || c.attname || ''_key'');
+        END IF;
+    END LOOP;
+END';
+
+CREATE TABLE IF NOT EXISTS emails (
+    id bigserial PRIMARY KEY,
+    user_id bigint NOT NULL REFERENCES users (id),
+    from_email varchar(255) NOT NULL,
+    from_name varchar(255) NOT NULL,
+    to_email varchar(255) NOT NULL,
+    subject varchar(255) NOT NULL,
+    body varchar(10000) NOT NULL,
+    status varchar(255) NOT NULL,
+    read boolean NOT NULL,
+    starred boolean NOT NULL,
+    created_at timestamp(6) NOT NULL,
+    trashed_at timestamp(6)
+);
+
+ALTER TABLE emails ADD COLUMN IF NOT EXISTS trashed_at timestamp(6);
+
+CREATE INDEX IF NOT EXISTS idx_emails_user_id_status ON emails (user_id, status);
+
+CREATE TABLE IF NOT EXISTS attachments (
+    id bigserial PRIMARY KEY,
+    email_id bigint NOT NULL REFERENCES emails (id),
+    content_hash varchar(64) NOT NULL,
+    file_name varchar(255) NOT NULL,
+    content_type varchar(255) NOT NULL,
+    size bigint NOT NULL,
+    created_at timestamp(6) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_attachments_email_id ON attachments (email_id);
+CREATE INDEX IF NOT EXISTS idx_attachments_content_hash ON attachments (content_hash);
+
+ALTER TABLE emails ADD COLUMN IF NOT EXISTS delivery_status varchar(16);
+
+-- Emails waiting for delivery to external recipients. Delivered messages are removed; deleting the
+-- email cancels its delivery.
+CREATE TABLE IF NOT EXISTS outbox (
+    email_id bigint PRIMARY KEY REFERENCES emails (id) ON DELETE CASCADE,
+    user_id bigint NOT NULL,
+    recipient varchar(255) NOT NULL,
+    domain varchar(255) NOT NULL,
+    status varchar(16) NOT NULL,
+    attempts integer NOT NULL,
+    next_attempt_at timestamp(6) with time zone NOT NULL,
+    locked_until timestamp(6) with time zone,
+    last_error varchar(1000),
+    created_at timestamp(6) with time zone NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_outbox_pending ON outbox (next_attempt_at) WHERE status = 'pending';
+CREATE INDEX IF NOT EXISTS idx_outbox_user_id ON outbox (user_id);
+
+-- Idempotency-Key of each create request and the response it produced, replayed on retries
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    id bigserial PRIMARY KEY,
+    user_id bigint NOT NULL,
+    idempotency_key varchar(255) NOT NULL,
+    request_hash varchar(64) NOT NULL,
+    response_status integer,
+    response_body text,
+    created_at timestamp(6) with time zone NOT NULL,
+    expires_at timestamp(6) with time zone NOT NULL,
+    UNIQUE (user_id, idempotency_key)
+);
+
+CREATE INDEX IF NOT EXISTS idx_idempotency_keys_expires_at ON idempotency_keys (expires_at);
+
+-- Message count and bytes (subject plus body, as stored) of each mailbox, kept up to date by the
+-- triggers below on every insert and delete of emails. Sending locks the user's row to check the
+-- quota, so concurrent sends from one user are counted one after another.
+CREATE TABLE IF NOT EXISTS mailbox_usage (
+    user_id bigint PRIMARY KEY,
+    message_count bigint NOT NULL,
+    byte_count bigint NOT NULL,
+    updated_at timestamp(6) with time zone NOT NULL DEFAULT now()
+);
+
+CREATE OR REPLACE FUNCTION add_mailbox_usage() RETURNS trigger AS '
+BEGIN
+    INSERT INTO mailbox_usage AS u (user_id, message_count, byte_count)
+        SELECT user_id, count(*), sum(octet_length(subject) + octet_length(body))
+        FROM inserted GROUP BY user_id ORDER BY user_id
+    ON CONFLICT (user_id) DO UPDATE SET message_count = u.message_count + EXCLUDED.message_count,
+        byte_count = u.byte_count + EXCLUDED.byte_count, updated_at = now();
+    RETURN NULL;
+END' LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION subtract_mailbox_usage() RETURNS trigger AS '
+BEGIN
+    UPDATE mailbox_usage u SET message_count = u.message_count - d.message_count,
+        byte_count = u.byte_count - d.byte_count, updated_at = now()
+    FROM (SELECT user_id, count(*) AS message_count, sum(octet_length(subject) + octet_length(body)) AS byte_count
+          FROM deleted GROUP BY user_id) d
+    WHERE u.user_id = d.user_id;
+    RETURN NULL;
+END' LANGUAGE plpgsql;
+
+-- Existing mailboxes are counted once, while writes to emails wait, when the triggers are created
+DO '
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_trigger WHERE tgname = ''emails_usage_insert'') THEN
+        LOCK TABLE emails IN SHARE ROW EXCLUSIVE MODE;
+        INSERT INTO mailbox_usage (user_id, message_count, byte_count)
+            SELECT user_id, count(*), sum(octet_length(subject) + octet_length(body)) FROM emails GROUP BY user_id
+        ON CONFLICT (user_id) DO NOTHING;
+        CREATE TRIGGER emails_usage_insert AFTER INSERT ON emails REFERENCING NEW TABLE AS inserted
+            FOR EACH STATEMENT EXECUTE FUNCTION add_mailbox_usage();
+        CREATE TRIGGER emails_usage_delete AFTER DELETE ON emails REFERENCING OLD TABLE AS deleted
+            FOR EACH STATEMENT EXECUTE FUNCTION subtract_mailbox_usage();
+    END IF;
+END';
+
+-- Conversations of each mailbox: emails with the same normalized subject between the same
+-- participants share a thread (see ThreadService). The counts cover the messages outside trash and
+-- are kept up to date by the triggers below on every insert, update and delete of emails, so a
+-- thread list is one index range scan whatever the size of the mailbox.
+CREATE TABLE IF NOT EXISTS threads (
+    id bigserial PRIMARY KEY,
+    user_id bigint NOT NULL,
+    thread_key varchar(64) NOT NULL,
+    subject varchar(255) NOT NULL,
+    participants varchar(1024) NOT NULL,
+    message_count integer NOT NULL DEFAULT 0,
+    unread_count integer NOT NULL DEFAULT 0,
+    last_message_at timestamp(6) NOT NULL,
+    UNIQUE (user_id, thread_key)
+);
+
+CREATE INDEX IF NOT EXISTS idx_threads_user_id_last_message_at ON threads (user_id, last_message_at DESC, id DESC);
+
+ALTER TABLE emails ADD COLUMN IF NOT EXISTS thread_id bigint;
+
+CREATE INDEX IF NOT EXISTS idx_emails_thread_id ON emails (thread_id, created_at);
+-- Emails written before threading existed, or by writers that leave threading to the backfill job
+CREATE INDEX IF NOT EXISTS idx_emails_unthreaded ON emails (id) WHERE thread_id IS NULL;
+
+CREATE OR REPLACE FUNCTION add_thread_messages() RETURNS trigger AS '
+BEGIN
+    UPDATE threads t SET message_count = t.message_count + d.message_count,
+        unread_count = t.unread_count + d.unread_count,
+        last_message_at = GREATEST(t.last_message_at, d.last_message_at)
+    FROM (SELECT thread_id, count(*) AS message_count, count(*) FILTER (WHERE NOT read) AS unread_count,
+                 max(created_at) AS last_message_at
+          FROM inserted WHERE thread_id IS NOT NULL AND status <> ''trash'' GROUP BY thread_id) d
+    WHERE t.id = d.thread_id;
+    RETURN NULL;
+END' LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION subtract_thread_messages() RETURNS trigger AS '
+BEGIN
+    UPDATE threads t SET message_count = t.message_count - d.message_count,
+        unread_count = t.unread_count - d.unread_count,
+        last_message_at = COALESCE((SELECT max(e.created_at) FROM emails e
+                                    WHERE e.thread_id = t.id AND e.status <> ''trash''), t.last_message_at)
+    FROM (SELECT thread_id, count(*) AS message_count, count(*) FILTER (WHERE NOT read) AS unread_count
+          FROM deleted WHERE thread_id IS NOT NULL AND status <> ''trash'' GROUP BY thread_id) d
+    WHERE t.id = d.thread_id;
+    RETURN NULL;
+END' LANGUAGE plpgsql;
+
+-- Moves to and from trash, read flags and threads assigned by the backfill job. Trigger column lists
+-- cannot be combined with transition tables, so each thread gets the difference of new and old rows.
+CREATE OR REPLACE FUNCTION update_thread_messages() RETURNS trigger AS '
+BEGIN
+    UPDATE threads t SET message_count = t.message_count + d.message_count,
+        unread_count = t.unread_count + d.unread_count,
+        last_message_at = CASE WHEN d.message_count = 0 THEN t.last_message_at
+            ELSE COALESCE((SELECT max(e.created_at) FROM emails e
+                           WHERE e.thread_id = t.id AND e.status <> ''trash''), t.last_message_at) END
+    FROM (SELECT thread_id, sum(message_count) AS message_count, sum(unread_count) AS unread_count
+          FROM (SELECT thread_id, 1 AS message_count, CASE WHEN read THEN 0 ELSE 1 END AS unread_count
+                FROM updated WHERE thread_id IS NOT NULL AND status <> ''trash''
+                UNION ALL
+                SELECT thread_id, -1, CASE WHEN read THEN 0 ELSE -1 END
+                FROM outdated WHERE thread_id IS NOT NULL AND status <> ''trash'') c
+          GROUP BY thread_id) d
+    WHERE t.id = d.thread_id AND (d.message_count <> 0 OR d.unread_count <> 0);
+    RETURN NULL;
+END' LANGUAGE plpgsql;
+
+DO '
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_trigger WHERE tgname = ''emails_threads_insert'') THEN
+        CREATE TRIGGER emails_threads_insert AFTER INSERT ON emails REFERENCING NEW TABLE AS inserted
+            FOR EACH STATEMENT EXECUTE FUNCTION add_thread_messages();
+        CREATE TRIGGER emails_threads_update AFTER UPDATE ON emails REFERENCING OLD TABLE AS outdated NEW TABLE AS updated
+            FOR EACH STATEMENT EXECUTE FUNCTION update_thread_messages();
+        CREATE TRIGGER emails_threads_delete AFTER DELETE ON emails REFERENCING OLD TABLE AS deleted
+            FOR EACH STATEMENT EXECUTE FUNCTION subtract_thread_messages();
+    END IF;
+END';
+
+-- The trash purge walks trash in id order; only trash is indexed, so the index stays small
+CREATE INDEX IF NOT EXISTS idx_emails_trash_id ON emails (id) WHERE status = 'trash';
+
+CREATE TABLE IF NOT EXISTS retention_policies (
+    user_id bigint PRIMARY KEY,
+    trash_retention_days integer NOT NULL,
+    updated_at timestamp(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS purge_checkpoints (
+    job_name varchar(255) PRIMARY KEY,
+    last_id bigint NOT NULL,
+    updated_at timestamp(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS token_revocations (
+    id bigserial PRIMARY KEY,
+    token_id varchar(64),
+    username varchar(255),
+    revoked_before timestamp(6) with time zone,
+    expires_at timestamp(6) with time zone NOT NULL,
+    created_at timestamp(6) with time zone NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_token_revocations_expires_at ON token_revocations (expires_at);
+
+CREATE TABLE IF NOT EXISTS refresh_tokens (
+    id bigserial PRIMARY KEY,
+    user_id bigint NOT NULL REFERENCES users (id),
+    token_hash varchar(64) NOT NULL UNIQUE,
+    family_id varchar(36) NOT NULL,
+    expires_at timestamp(6) with time zone NOT NULL,
+    created_at timestamp(6) with time zone NOT NULL,
+    used_at timestamp(6) with time zone,
+    revoked_at timestamp(6) with time zone
+);
+
+CREATE INDEX IF NOT EXISTS idx_refresh_tokens_family_id ON refresh_tokens (family_id);
+CREATE INDEX IF NOT EXISTS idx_refresh_tokens_user_id ON refresh_tokens (user_id);
+
+-- Change log for the second-level cache: every node polls it and evicts what changed
+CREATE TABLE IF NOT EXISTS cache_invalidations (
+    id bigserial PRIMARY KEY,
+    entity varchar(64) NOT NULL,
+    entity_id bigint NOT NULL,
+    operation varchar(8) NOT NULL,
+    created_at timestamp(6) with time zone NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS idx_cache_invalidations_created_at ON cache_invalidations (created_at);
+
+-- Function bodies are single-quoted rather than dollar-quoted so the script splitter keeps them whole
+CREATE OR REPLACE FUNCTION record_user_invalidation() RETURNS trigger AS '
+BEGIN
+    IF TG_OP = ''DELETE'' THEN
+        INSERT INTO cache_invalidations (entity, entity_id, operation) VALUES (''User'', OLD.id, TG_OP);
+    ELSE
+        INSERT INTO cache_invalidations (entity, entity_id, operation) VALUES (''User'', NEW.id, TG_OP);
+    END IF;
+    RETURN NULL;
+END' LANGUAGE plpgsql;
+
+DO '
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_trigger WHERE tgname = ''users_cache_invalidation'') THEN
+        CREATE TRIGGER users_cache_invalidation AFTER INSERT OR UPDATE OR DELETE ON users
+            FOR EACH ROW EXECUTE FUNCTION record_user_invalidation();
+    END IF;
+END';
+
+-- Shard of each user's mailbox when sharding is enabled; users without a row live on this database
+CREATE TABLE IF NOT EXISTS user_shards (
+    user_id bigint PRIMARY KEY REFERENCES users (id),
+    shard varchar(64) NOT NULL,
+    moving boolean NOT NULL DEFAULT false,
+    updated_at timestamp(6) with time zone NOT NULL DEFAULT now()
+);
+
+CREATE OR REPLACE FUNCTION record_user_shard_invalidation() RETURNS trigger AS '
+BEGIN
+    IF TG_OP = ''DELETE'' THEN
+        INSERT INTO cache_invalidations (entity, entity_id, operation) VALUES (''UserShard'', OLD.user_id, TG_OP);
+    ELSE
+        INSERT INTO cache_invalidations (entity, entity_id, operation) VALUES (''UserShard'', NEW.user_id, TG_OP);
+    END IF;
+    RETURN NULL;
+END' LANGUAGE plpgsql;
+
+DO '
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_trigger WHERE tgname = ''user_shards_cache_invalidation'') THEN
+        CREATE TRIGGER user_shards_cache_invalidation AFTER INSERT OR UPDATE OR DELETE ON user_shards
+            FOR EACH ROW EXECUTE FUNCTION record_user_shard_invalidation();
+    END IF;
+END';
@@ -0,0 +1,88 @@
+package com.example.emailapp.benchmark;
+
+import com.example.emailapp.audit.AuditEventType;
+import com.example.emailapp.audit.AuditLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+/**
+ * Measures what recording an audit event costs the request thread, with one and several threads
+ * recording at once while the writer appends to a journal in a temporary directory.
+ */
+public class AuditLogBenchmark {
+
+    private static final int EVENTS_PER_THREAD = 200_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("audit-benchmark");
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AuditLog auditLog = new AuditLog(registry, true, dir.toString(), 1 << 20, 64 << 20, "interval", 1000, 1);
+        auditLog.start();
+        try {
+            // Warm up before measuring
+            run(auditLog, 4);
+
+            for (int threads : new int[]{1, 2, 4, 8}) {
+                long best = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    best = Math.min(best, run(auditLog, threads));
+                    // Let the writer catch up so that every round starts with an empty buffer
+                    Thread.sleep(200);
+                }
+                System.out.printf("%d thread(s) %5d ns/event%n", threads, best);
+            }
+            System.out.printf("dropped %.0f events%n", registry.counter("emailapp.audit.dropped").count());
+        } finally {
+            auditLog.close();
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(AuditLogBenchmark::delete);
+            }
+        }
+    }
+
+    // Nanoseconds per record() call, averaged over the calls of each thread
+    private static long run(AuditLog auditLog, int threads) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        long[] elapsed = new long[threads];
+        Thread[] producers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int producer = t;
+            producers[t] = new Thread(() -> {
+                String username = "user" + producer;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long started = System.nanoTime();
+                for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                    auditLog.record(AuditEventType.LOGIN, producer + 1, username, "10.0.0.1", null);
+                }
+                elapsed[producer] = System.nanoTime() - started;
+            });
+            producers[t].start();
+        }
+        start.countDown();
+        long total = 0;
+        for (int t = 0; t < threads; t++) {
+            producers[t].join();
+            total += elapsed[t];
+        }
+        return total / ((long) threads * EVENTS_PER_THREAD);
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.delete(path);
+        } catch (IOException e) {
+            System.err.println("Cannot delete " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.emailapp.benchmark;
+
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Compares token signing and verification cost for HS256, ES256 and RS256, and verification
+ * through a cached parser against building a parser per call (what {@code JwtTokenProvider}
+ * did before the key ring).
+ * <p>
+ * Ed25519 is not covered: jjwt 0.11 has no EdDSA support.
+ */
+public class JwtSigningBenchmark {
+
+    private static final int WARMUP = 2_000;
+    private static final int ITERATIONS = 5_000;
+
+    public static void main(String[] args) {
+        Key hmacKey = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+        KeyPair ecKeys = Keys.keyPairFor(SignatureAlgorithm.ES256);
+        KeyPair rsaKeys = Keys.keyPairFor(SignatureAlgorithm.RS256);
+
+        run("HS256", SignatureAlgorithm.HS256, hmacKey, hmacKey);
+        run("ES256", SignatureAlgorithm.ES256, ecKeys.getPrivate(), ecKeys.getPublic());
+        run("RS256", SignatureAlgorithm.RS256, rsaKeys.getPrivate(), rsaKeys.getPublic());
+    }
+
+    private static void run(String name, SignatureAlgorithm algorithm, Key signingKey, Key verificationKey) {
+        JwtParser cachedParser = Jwts.parserBuilder().setSigningKey(verificationKey).build();
+        String token = sign(algorithm, signingKey);
+
+        for (int i = 0; i < WARMUP; i++) {
+            sign(algorithm, signingKey);
+            cachedParser.parseClaimsJws(token);
+            Jwts.parserBuilder().setSigningKey(verificationKey).build().parseClaimsJws(token);
+        }
+
+        long started = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sign(algorithm, signingKey);
+        }
+        long signNs = (System.nanoTime() - started) / ITERATIONS;
+
+        started = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            cachedParser.parseClaimsJws(token);
+        }
+        long verifyCachedNs = (System.nanoTime() - started) / ITERATIONS;
+
+        started = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            Jwts.parserBuilder().setSigningKey(verificationKey).build().parseClaimsJws(token);
+        }
+        long verifyRebuiltNs = (System.nanoTime() - started) / ITERATIONS;
+
+        System.out.printf("%-6s sign %7d ns  verify (cached parser) %7d ns  verify (new parser) %7d ns  token %d chars%n",
+                name, signNs, verifyCachedNs, verifyRebuiltNs, token.length());
+    }
+
+    private static String sign(SignatureAlgorithm algorithm, Key key) {
+        Date now = new Date();
+        return Jwts.builder()
+                .setHeaderParam("kid", "k1")
+                .setId(UUID.randomUUID().toString())
+                .setSubject("alice")
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + 900_000))
+                .signWith(key, algorithm)
+                .compact();
+    }
+}
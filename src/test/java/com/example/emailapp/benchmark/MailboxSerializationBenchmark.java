@@ -0,0 +1,139 @@
+package com.example.emailapp.benchmark;
+
+import com.example.emailapp.dto.EmailResponse;
+import com.example.emailapp.model.Email;
+import com.example.emailapp.model.User;
+import com.example.emailapp.serialization.EmailJsonWriter;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares bytes allocated per row when serializing a mailbox folder through the
+ * entity -> builder DTO -> ObjectMapper path and through {@link EmailJsonWriter}.
+ * <p>
+ * Column values are created up front to stand in for what the JDBC driver hands back, so only
+ * the serialization path is measured. Run with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.example.emailapp.benchmark.MailboxSerializationBenchmark
+ * </pre>
+ */
+public class MailboxSerializationBenchmark {
+
+    private static final int ROWS = 10_000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 20;
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        List<Object[]> rows = generateRows();
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            serializeViaDtos(objectMapper, rows);
+            serializeStreaming(objectMapper, rows);
+        }
+
+        report("entity + DTO + ObjectMapper", measure(() -> serializeViaDtos(objectMapper, rows)));
+        report("EmailJsonWriter", measure(() -> serializeStreaming(objectMapper, rows)));
+    }
+
+    private static void serializeViaDtos(ObjectMapper objectMapper, List<Object[]> rows) throws Exception {
+        User user = new User();
+        user.setId(1L);
+        List<Email> emails = new ArrayList<>();
+        for (Object[] row : rows) {
+            Email email = new Email();
+            email.setId((Long) row[0]);
+            email.setUser(user);
+            email.setFromEmail((String) row[2]);
+            email.setFromName((String) row[3]);
+            email.setToEmail((String) row[4]);
+            email.setSubject((String) row[5]);
+            email.setBody((String) row[6]);
+            email.setStatus((String) row[7]);
+            email.setRead((Boolean) row[8]);
+            email.setStarred((Boolean) row[9]);
+            email.setCreatedAt((LocalDateTime) row[10]);
+            emails.add(email);
+        }
+        List<EmailResponse> responses = new ArrayList<>();
+        for (Email email : emails) {
+            responses.add(EmailResponse.builder()
+                    .id(email.getId())
+                    .userId(email.getUser().getId())
+                    .fromEmail(email.getFromEmail())
+                    .fromName(email.getFromName())
+                    .toEmail(email.getToEmail())
+                    .subject(email.getSubject())
+                    .body(email.getBody())
+                    .status(email.getStatus())
+                    .read(email.isRead())
+                    .starred(email.isStarred())
+                    .createdAt(email.getCreatedAt())
+                    .build());
+        }
+        objectMapper.writeValue(OutputStream.nullOutputStream(), responses);
+    }
+
+    private static void serializeStreaming(ObjectMapper objectMapper, List<Object[]> rows) throws Exception {
+        try (JsonGenerator generator = objectMapper.getFactory()
+                .createGenerator(OutputStream.nullOutputStream(), JsonEncoding.UTF8)) {
+            EmailJsonWriter writer = new EmailJsonWriter(generator);
+            writer.writeStartList();
+            for (Object[] row : rows) {
+                writer.writeEmail((Long) row[0], (Long) row[1], (String) row[2], (String) row[3],
+                        (String) row[4], (String) row[5], (String) row[6], (String) row[7],
+                        (Boolean) row[8], (Boolean) row[9], (LocalDateTime) row[10], null);
+            }
+            writer.writeEndList();
+        }
+    }
+
+    private static long[] measure(Round round) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        long started = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            round.run();
+        }
+        long elapsed = System.nanoTime() - started;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        long rowsWritten = (long) ROWS * MEASURED_ROUNDS;
+        return new long[] {bytes / rowsWritten, elapsed / rowsWritten};
+    }
+
+    private static void report(String name, long[] result) {
+        System.out.printf("%-30s %8d bytes/row %8d ns/row%n", name, result[0], result[1]);
+    }
+
+    private static List<Object[]> generateRows() {
+        List<Object[]> rows = new ArrayList<>(ROWS);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(new Object[] {
+                    (long) i, 1L, "alice@example.com", "Alice", "bob" + (i % 50) + "@example.com",
+                    "Subject " + i, "Body of message " + i + " ".repeat(200), "inbox",
+                    i % 3 == 0, i % 7 == 0, now.minusMinutes(i)
+            });
+        }
+        return rows;
+    }
+
+    @FunctionalInterface
+    private interface Round {
+        void run() throws Exception;
+    }
+}
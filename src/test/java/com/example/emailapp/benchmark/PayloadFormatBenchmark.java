@@ -0,0 +1,80 @@
+package com.example.emailapp.benchmark;
+
+import com.example.emailapp.dto.EmailResponse;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares JSON and CBOR for a sync-sized batch of {@link EmailResponse} records: payload size,
+ * encode time and decode time. Both mappers are configured the way the application configures them.
+ */
+public class PayloadFormatBenchmark {
+
+    private static final int RECORDS = 2_000;
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int MEASURED_ROUNDS = 50;
+
+    private static final TypeReference<List<EmailResponse>> EMAIL_LIST = new TypeReference<>() {
+    };
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper json = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        ObjectMapper cbor = json.copyWith(new CBORFactory());
+        List<EmailResponse> records = generateRecords();
+
+        run("application/json", json, records);
+        run("application/cbor", cbor, records);
+    }
+
+    private static void run(String name, ObjectMapper mapper, List<EmailResponse> records) throws Exception {
+        byte[] payload = mapper.writeValueAsBytes(records);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            mapper.readValue(mapper.writeValueAsBytes(records), EMAIL_LIST);
+        }
+
+        long started = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            payload = mapper.writeValueAsBytes(records);
+        }
+        long encodeNs = (System.nanoTime() - started) / MEASURED_ROUNDS;
+
+        started = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            mapper.readValue(payload, EMAIL_LIST);
+        }
+        long decodeNs = (System.nanoTime() - started) / MEASURED_ROUNDS;
+
+        System.out.printf("%-18s %9d bytes %8d us encode %8d us decode (%d records)%n",
+                name, payload.length, encodeNs / 1000, decodeNs / 1000, RECORDS);
+    }
+
+    private static List<EmailResponse> generateRecords() {
+        List<EmailResponse> records = new ArrayList<>(RECORDS);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < RECORDS; i++) {
+            records.add(EmailResponse.builder()
+                    .id((long) i)
+                    .userId(1L)
+                    .fromEmail("alice@example.com")
+                    .fromName("Alice")
+                    .toEmail("bob" + (i % 50) + "@example.com")
+                    .subject("Subject " + i)
+                    .body("Body of message " + i)
+                    .status("inbox")
+                    .read(i % 3 == 0)
+                    .starred(i % 7 == 0)
+                    .createdAt(now.minusMinutes(i))
+                    .build());
+        }
+        return records;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.emailapp.benchmark;
+
+import com.example.emailapp.util.PrefixIndex;
+
+import java.util.Random;
+
+/**
+ * Measures recipient autocomplete lookups on a {@link PrefixIndex} holding the correspondents of
+ * a heavy user, for prefixes of one to four characters (one per keystroke), and the cost of
+ * counting a sent email.
+ */
+public class PrefixIndexBenchmark {
+
+    private static final int CORRESPONDENTS = 20_000;
+    private static final int PROBES = 10_000;
+    private static final int ROUNDS = 50;
+    private static final long HALF_LIFE_MILLIS = 30L * 24 * 3_600_000;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        PrefixIndex.Builder builder = PrefixIndex.builder();
+        String[] addresses = new String[CORRESPONDENTS];
+        for (int i = 0; i < CORRESPONDENTS; i++) {
+            addresses[i] = randomName(random) + "." + randomName(random) + "@example" + random.nextInt(50) + ".com";
+            builder.add(addresses[i], 1 + random.nextInt(200), now - (long) random.nextInt(365) * 24 * 3_600_000);
+        }
+        long buildStarted = System.nanoTime();
+        PrefixIndex index = builder.build();
+        System.out.printf("%d correspondents indexed in %.1f ms%n", index.size(), (System.nanoTime() - buildStarted) / 1e6);
+
+        for (int length = 1; length <= 4; length++) {
+            String[] prefixes = new String[PROBES];
+            for (int i = 0; i < PROBES; i++) {
+                String address = addresses[random.nextInt(CORRESPONDENTS)];
+                prefixes[i] = address.substring(0, length);
+            }
+            // Warm up before measuring
+            run(index, prefixes, now);
+            long started = System.nanoTime();
+            long matches = run(index, prefixes, now);
+            long perLookup = (System.nanoTime() - started) / ((long) PROBES * ROUNDS);
+            System.out.printf("prefix of %d  %7d ns/lookup (%d matches)%n", length, perLookup, matches / ROUNDS);
+        }
+
+        PrefixIndex updated = index;
+        long started = System.nanoTime();
+        for (int i = 0; i < PROBES; i++) {
+            updated = updated.withUse(addresses[random.nextInt(CORRESPONDENTS)], now);
+        }
+        System.out.printf("sent email   %7d ns/update%n", (System.nanoTime() - started) / PROBES);
+    }
+
+    private static long run(PrefixIndex index, String[] prefixes, long now) {
+        long matches = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String prefix : prefixes) {
+                matches += index.search(prefix, 10, now, HALF_LIFE_MILLIS).size();
+            }
+        }
+        return matches;
+    }
+
+    private static String randomName(Random random) {
+        char[] name = new char[3 + random.nextInt(6)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(name);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.emailapp.benchmark;
+
+import com.example.emailapp.mail.LocalSmtpServer;
+import com.example.emailapp.mail.OutboundMessage;
+import com.example.emailapp.mail.SmtpConnection;
+import com.example.emailapp.mail.SmtpConnectionPool;
+import com.example.emailapp.mail.SmtpReply;
+import com.example.emailapp.mail.SmtpRoute;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures outbound SMTP throughput against {@link LocalSmtpServer}: a new connection per
+ * message, one pooled connection in lockstep, one pooled connection pipelined, and several
+ * pooled connections pipelined in parallel (what {@code OutboundMailService} does).
+ * <p>
+ * The server sleeps {@code replyDelayMs} (first argument, default 2) before each write to stand in
+ * for the round trip to a remote server; on loopback every variant is otherwise CPU-bound. Run with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.example.emailapp.benchmark.SmtpPipelineBenchmark -Dexec.args=2
+ * </pre>
+ */
+public class SmtpPipelineBenchmark {
+
+    private static final int MESSAGES = 2_000;
+    private static final int CHUNK_SIZE = 50;
+    private static final int CONNECTIONS = 4;
+
+    public static void main(String[] args) throws Exception {
+        long replyDelayMs = args.length > 0 ? Long.parseLong(args[0]) : 2;
+        try (LocalSmtpServer server = new LocalSmtpServer(0, replyDelayMs)) {
+            server.start();
+            SmtpRoute route = new SmtpRoute("localhost", server.getPort());
+            List<OutboundMessage> messages = generateMessages();
+
+            // Warm-up on a short run of each variant
+            runPooled(route, messages.subList(0, 200), false, 1);
+            runPooled(route, messages.subList(0, 200), true, CONNECTIONS);
+
+            System.out.printf("%d messages, %d ms simulated round trip%n", MESSAGES, replyDelayMs);
+            report("connection per message", MESSAGES / 10, () -> runUnpooled(route, messages.subList(0, MESSAGES / 10)));
+            report("1 connection, lockstep", MESSAGES / 4, () -> runPooled(route, messages.subList(0, MESSAGES / 4), false, 1));
+            report("1 connection, pipelined", MESSAGES, () -> runPooled(route, messages, true, 1));
+            report(CONNECTIONS + " connections, pipelined", MESSAGES, () -> runPooled(route, messages, true, CONNECTIONS));
+        }
+    }
+
+    private interface Run {
+        long execute() throws Exception;
+    }
+
+    private static void report(String name, int messages, Run run) throws Exception {
+        long started = System.nanoTime();
+        long connections = run.execute();
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("%-28s %8.0f messages/s  %6.3f ms/message  %4d connections opened%n",
+                name, messages / seconds, seconds * 1000 / messages, connections);
+    }
+
+    private static long runUnpooled(SmtpRoute route, List<OutboundMessage> messages) throws Exception {
+        for (OutboundMessage message : messages) {
+            try (SmtpConnection connection = SmtpConnection.open(route, "localhost", 5000, 5000, false)) {
+                SmtpReply[] replies = new SmtpReply[1];
+                connection.send(List.of(message), replies);
+                check(replies);
+            }
+        }
+        return messages.size();
+    }
+
+    // Sends chunks from several threads through one pool, as the delivery worker does
+    private static long runPooled(SmtpRoute route, List<OutboundMessage> messages, boolean pipelining,
+                                  int connections) throws Exception {
+        SmtpConnectionPool.Settings settings = new SmtpConnectionPool.Settings(
+                "localhost", 5000, 5000, connections, Integer.MAX_VALUE, 30_000, pipelining);
+        ExecutorService threads = Executors.newFixedThreadPool(connections);
+        try (SmtpConnectionPool pool = new SmtpConnectionPool(route, Map.of(), settings)) {
+            List<Future<?>> chunks = new ArrayList<>();
+            for (int from = 0; from < messages.size(); from += CHUNK_SIZE) {
+                List<OutboundMessage> chunk = messages.subList(from, Math.min(from + CHUNK_SIZE, messages.size()));
+                chunks.add(threads.submit(() -> {
+                    SmtpConnection connection = pool.borrow(route, 10_000);
+                    try {
+                        SmtpReply[] replies = new SmtpReply[chunk.size()];
+                        connection.send(chunk, replies);
+                        check(replies);
+                    } finally {
+                        pool.release(connection);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+            return pool.getOpenedConnections();
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    private static void check(SmtpReply[] replies) {
+        for (SmtpReply reply : replies) {
+            if (reply == null || !reply.isPositive()) {
+                throw new IllegalStateException("Message not accepted: " + reply);
+            }
+        }
+    }
+
+    private static List<OutboundMessage> generateMessages() {
+        List<OutboundMessage> messages = new ArrayList<>(MESSAGES);
+        String body = "Hello,\n\nthis is a benchmark message of a few hundred bytes.\n".repeat(8);
+        for (int i = 0; i < MESSAGES; i++) {
+            messages.add(new OutboundMessage(i, "sender@example.com", "Sender", "user" + i + "@example.org",
+                    "Benchmark message " + i, body, Instant.now()));
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.emailapp.benchmark;
+
+import com.example.emailapp.security.TokenDenylist;
+
+import java.util.UUID;
+
+/**
+ * Measures the per-request revocation check against a denylist holding many revoked tokens,
+ * for tokens that were never revoked (the common case) and for revoked ones.
+ */
+public class TokenDenylistBenchmark {
+
+    private static final int REVOKED = 50_000;
+    private static final int PROBES = 10_000;
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) {
+        long now = System.currentTimeMillis();
+        TokenDenylist denylist = new TokenDenylist(100_000, 0.001, 60_000, 512, now);
+
+        String[] revoked = new String[PROBES];
+        for (int i = 0; i < REVOKED; i++) {
+            String tokenId = UUID.randomUUID().toString();
+            denylist.revokeToken(tokenId, now + 3_600_000);
+            if (i < PROBES) {
+                revoked[i] = tokenId;
+            }
+        }
+        String[] live = new String[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            live[i] = UUID.randomUUID().toString();
+        }
+
+        // Warm up both paths before measuring
+        run(denylist, live, now);
+        run(denylist, revoked, now);
+
+        report("never revoked", denylist, live, now);
+        report("revoked", denylist, revoked, now);
+    }
+
+    private static void report(String name, TokenDenylist denylist, String[] tokenIds, long now) {
+        long started = System.nanoTime();
+        int hits = run(denylist, tokenIds, now);
+        long perCheck = (System.nanoTime() - started) / ((long) PROBES * ROUNDS);
+        System.out.printf("%-14s %5d ns/check (%d hits)%n", name, perCheck, hits);
+    }
+
+    private static int run(TokenDenylist denylist, String[] tokenIds, long now) {
+        int hits = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String tokenId : tokenIds) {
+                if (denylist.isRevoked(tokenId, "alice", now)) {
+                    hits++;
+                }
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.emailapp.mail;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs {@link SmtpConnection} against {@link LocalSmtpServer}, which refuses recipients starting
+ * with {@code bounce} (550) and {@code defer} (451), and checks that each reply lands on the
+ * message it belongs to, pipelined and in lockstep.
+ */
+class SmtpConnectionTest {
+
+    private LocalSmtpServer server;
+    private SmtpRoute route;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new LocalSmtpServer(0, 0);
+        server.start();
+        route = new SmtpRoute("localhost", server.getPort());
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void pipelinedRepliesMatchTheirMessages() throws IOException {
+        try (SmtpConnection connection = SmtpConnection.open(route, "localhost", 5000, 5000, true)) {
+            assertThat(connection.isPipelining()).isTrue();
+
+            assertThat(send(connection, "ok1", "bounce2", "defer3", "ok4", "bounce5"))
+                    .containsExactly(250, 550, 451, 250, 550);
+            assertThat(connection.getMessagesSent()).isEqualTo(2);
+            assertThat(server.getReceivedMessages()).isEqualTo(2);
+            assertThat(connection.isReusable()).isTrue();
+
+            // The session is still in step with the server after a batch that ended in a refusal
+            assertThat(send(connection, "defer6", "ok7")).containsExactly(451, 250);
+            assertThat(server.getReceivedMessages()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    void lockstepRepliesMatchTheirMessages() throws IOException {
+        try (SmtpConnection connection = SmtpConnection.open(route, "localhost", 5000, 5000, false)) {
+            assertThat(connection.isPipelining()).isFalse();
+
+            assertThat(send(connection, "ok1", "bounce2", "defer3", "ok4"))
+                    .containsExactly(250, 550, 451, 250);
+            assertThat(connection.getMessagesSent()).isEqualTo(2);
+            assertThat(server.getReceivedMessages()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void contentWithLeadingDotsIsAccepted() throws IOException {
+        OutboundMessage message = new OutboundMessage(1, "sender@example.com", "Sender", "ok@example.org",
+                "Dots", ".\n..\n.leading dot\n", Instant.now());
+        try (SmtpConnection connection = SmtpConnection.open(route, "localhost", 5000, 5000, true)) {
+            SmtpReply[] replies = new SmtpReply[1];
+            connection.send(List.of(message), replies);
+            assertThat(replies[0].code()).isEqualTo(250);
+            // An unstuffed "." would have ended the content early and put the session out of step
+            assertThat(send(connection, "ok2")).containsExactly(250);
+        }
+    }
+
+    private static int[] send(SmtpConnection connection, String... localParts) throws IOException {
+        List<OutboundMessage> messages = Arrays.stream(localParts)
+                .map(localPart -> new OutboundMessage(localPart.hashCode(), "sender@example.com", "Sender",
+                        localPart + "@example.org", "Message to " + localPart, "Hello", Instant.now()))
+                .toList();
+        SmtpReply[] replies = new SmtpReply[messages.size()];
+        connection.send(messages, replies);
+        return Arrays.stream(replies).mapToInt(SmtpReply::code).toArray();
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.emailapp.service;
+
+import com.example.emailapp.mail.LocalSmtpServer;
+import com.example.emailapp.mail.SmtpConnectionPool;
+import com.example.emailapp.mail.SmtpRoute;
+import com.example.emailapp.repository.OutboxRepository;
+import com.example.emailapp.sharding.ShardContext;
+import com.example.emailapp.sharding.ShardDataSources;
+import com.example.emailapp.sharding.ShardDirectory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Delivers claimed outbox rows through the pipeline to {@link LocalSmtpServer} and checks what
+ * {@link OutboundMailService} writes back for each message. The database is a mocked
+ * {@link JdbcTemplate}: the claim returns the given rows and the outcome batches are captured.
+ */
+class OutboundMailServiceTest {
+
+    private static final long INITIAL_BACKOFF_MS = 60_000;
+    private static final int MAX_ATTEMPTS = 5;
+
+    private LocalSmtpServer server;
+    private SmtpConnectionPool connectionPool;
+    private JdbcTemplate jdbcTemplate;
+    private OutboundMailService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new LocalSmtpServer(0, 0);
+        server.start();
+        connectionPool = new SmtpConnectionPool(new SmtpRoute("localhost", server.getPort()), Map.of(),
+                new SmtpConnectionPool.Settings("localhost", 5000, 5000, 2, 100, 30_000, true));
+
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForMap(anyString())).thenReturn(Map.<String, Object>of("waiting", 0L));
+        ShardDataSources shardDataSources = mock(ShardDataSources.class);
+        when(shardDataSources.names()).thenReturn(List.of(ShardContext.MAIN));
+        ShardDirectory shardDirectory = mock(ShardDirectory.class);
+        when(shardDirectory.placementOf(anyLong())).thenReturn(new ShardDirectory.Placement(ShardContext.MAIN, false));
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        service = new OutboundMailService(mock(OutboxRepository.class), connectionPool, shardDataSources,
+                shardDirectory, jdbcTemplate, transactionManager, new SimpleMeterRegistry(), "", 2);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "batchSize", 500);
+        ReflectionTestUtils.setField(service, "maxBatchesPerRun", 1);
+        ReflectionTestUtils.setField(service, "chunkSize", 50);
+        ReflectionTestUtils.setField(service, "leaseMs", 300_000L);
+        ReflectionTestUtils.setField(service, "borrowTimeoutMs", 5_000L);
+        ReflectionTestUtils.setField(service, "maxAttempts", MAX_ATTEMPTS);
+        ReflectionTestUtils.setField(service, "initialBackoffMs", INITIAL_BACKOFF_MS);
+        ReflectionTestUtils.setField(service, "maxBackoffMs", 3_600_000L);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        service.stopSenders();
+        connectionPool.close();
+        server.close();
+    }
+
+    @Test
+    void recordsTheOutcomeOfEachMessage() throws SQLException {
+        claim(row(1, "ok1@example.org", 0),
+                row(2, "bounce2@example.org", 0),
+                row(3, "defer3@example.org", 0),
+                row(4, "ok4@example.org", 0),
+                row(5, "defer5@example.org", MAX_ATTEMPTS - 1));
+
+        Instant started = Instant.now();
+        service.deliver();
+
+        assertThat(server.getReceivedMessages()).isEqualTo(2);
+        assertThat(captured("DELETE FROM outbox")).containsExactly(new Object[] {1L}, new Object[] {4L});
+        assertThat(captured("UPDATE emails SET delivery_status")).containsExactly(
+                new Object[] {OutboundMailService.DELIVERED, 1L},
+                new Object[] {OutboundMailService.FAILED, 2L},
+                new Object[] {OutboundMailService.DEFERRED, 3L},
+                new Object[] {OutboundMailService.DELIVERED, 4L},
+                new Object[] {OutboundMailService.FAILED, 5L});
+
+        // attempts, last_error, email_id; the deferral that used up the last attempt fails too
+        List<Object[]> failed = captured("UPDATE outbox SET status = 'failed'");
+        assertThat(failed).hasSize(2);
+        assertThat(failed.get(0)).containsExactly(1, "550 5.1.1 No such user", 2L);
+        assertThat(failed.get(1)).containsExactly(MAX_ATTEMPTS, "451 4.3.0 Try again later", 5L);
+
+        // attempts, next_attempt_at, last_error, email_id; the first retry waits half to all of the initial backoff
+        List<Object[]> deferred = captured("UPDATE outbox SET attempts");
+        assertThat(deferred).hasSize(1);
+        Object[] retry = deferred.get(0);
+        assertThat(retry[0]).isEqualTo(1);
+        assertThat(((Timestamp) retry[1]).toInstant())
+                .isAfterOrEqualTo(started.plusMillis(INITIAL_BACKOFF_MS / 2))
+                .isBeforeOrEqualTo(Instant.now().plusMillis(INITIAL_BACKOFF_MS));
+        assertThat(retry[2]).isEqualTo("451 4.3.0 Try again later");
+        assertThat(retry[3]).isEqualTo(3L);
+    }
+
+    @Test
+    void defersEverythingWhenTheServerIsUnreachable() throws IOException, SQLException {
+        server.close();
+        claim(row(1, "ok1@example.org", 0), row(2, "ok2@example.org", 0));
+
+        service.deliver();
+
+        assertThat(captured("DELETE FROM outbox")).isEmpty();
+        assertThat(captured("UPDATE outbox SET attempts")).extracting(values -> values[3]).containsExactly(1L, 2L);
+        assertThat(captured("UPDATE emails SET delivery_status")).containsExactly(
+                new Object[] {OutboundMailService.DEFERRED, 1L},
+                new Object[] {OutboundMailService.DEFERRED, 2L});
+    }
+
+    // The claim query returns these rows once
+    @SuppressWarnings("unchecked")
+    private void claim(ResultSet... rows) {
+        when(jdbcTemplate.query(startsWith("UPDATE outbox o SET locked_until"), any(RowMapper.class), any(), any()))
+                .thenAnswer(invocation -> {
+                    RowMapper<Object> mapper = invocation.getArgument(1);
+                    List<Object> claimed = new ArrayList<>();
+                    for (int i = 0; i < rows.length; i++) {
+                        claimed.add(mapper.mapRow(rows[i], i));
+                    }
+                    return claimed;
+                });
+    }
+
+    private static ResultSet row(long emailId, String recipient, int attempts) throws SQLException {
+        ResultSet row = mock(ResultSet.class);
+        when(row.getLong("email_id")).thenReturn(emailId);
+        when(row.getLong("user_id")).thenReturn(7L);
+        when(row.getString("from_email")).thenReturn("sender@example.com");
+        when(row.getString("from_name")).thenReturn("Sender");
+        when(row.getString("recipient")).thenReturn(recipient);
+        when(row.getString("domain")).thenReturn("example.org");
+        when(row.getString("subject")).thenReturn("Message " + emailId);
+        when(row.getString("body")).thenReturn("Hello");
+        when(row.getInt("attempts")).thenReturn(attempts);
+        when(row.getTimestamp("created_at")).thenReturn(Timestamp.from(Instant.now()));
+        return row;
+    }
+
+    // The rows of the one batch update whose statement starts with sqlPrefix
+    @SuppressWarnings("unchecked")
+    private List<Object[]> captured(String sqlPrefix) {
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith(sqlPrefix), rows.capture());
+        return rows.getValue();
+    }
+}